@@ -1,6 +1,9 @@
 package com.chatapp.admin;
 
 import com.chatapp.database.DatabaseConfig;
+import com.chatapp.database.PasswordHasher;
+import com.chatapp.database.PresenceDAO;
+import com.chatapp.database.SessionDAO;
 import com.chatapp.database.UserDAO;
 import com.chatapp.model.User;
 
@@ -14,12 +17,22 @@ public class DatabaseManager {
 
     private static final Scanner scanner = new Scanner(System.in);
     private static final UserDAO userDAO = new UserDAO();
+    private static final SessionDAO sessionDAO = new SessionDAO();
+
+    // users with status and last_seen taken from user_presence, which the server keeps current
+    private static final String USERS_WITH_PRESENCE =
+            "(SELECT u.username, u.email, u.avatar_color, u.created_at, " +
+            "COALESCE(p.status, 'OFFLINE') AS status, COALESCE(p.last_seen, u.last_seen) AS last_seen " +
+            "FROM users u LEFT JOIN user_presence p ON p.username = u.username) users";
 
     public static void main(String[] args) {
         System.out.println("\n╔════════════════════════════════════════════════════════╗");
         System.out.println("║          ChatHub Database Manager                      ║");
         System.out.println("╚════════════════════════════════════════════════════════╝\n");
 
+        new PresenceDAO().createTables();
+        sessionDAO.createTable();
+
         boolean running = true;
         while (running) {
             showMenu();
@@ -36,6 +49,7 @@ public class DatabaseManager {
                 case "8" -> exportData();
                 case "9" -> viewOnlineUsers();
                 case "10" -> blockUser();
+                case "11" -> revokeSessions();
                 case "0" -> {
                     System.out.println("\n👋 Goodbye!");
                     running = false;
@@ -61,6 +75,7 @@ public class DatabaseManager {
         System.out.println("│ 8. Export Data                       │");
         System.out.println("│ 9. View Online Users                 │");
         System.out.println("│ 10. Block/Unblock User               │");
+        System.out.println("│ 11. Revoke User Sessions             │");
         System.out.println("│ 0. Exit                              │");
         System.out.println("└──────────────────────────────────────┘");
         System.out.print("\nEnter your choice: ");
@@ -70,7 +85,7 @@ public class DatabaseManager {
         System.out.println("\n📋 ALL USERS");
         System.out.println("═══════════════════════════════════════════════════════════════");
 
-        String sql = "SELECT username, email, status, created_at, last_seen FROM users ORDER BY created_at DESC";
+        String sql = "SELECT username, email, status, created_at, last_seen FROM " + USERS_WITH_PRESENCE + " ORDER BY created_at DESC";
 
         try (Connection conn = DatabaseConfig.getConnection();
              Statement stmt = conn.createStatement();
@@ -104,7 +119,7 @@ public class DatabaseManager {
         System.out.print("\n🔍 Enter username to search: ");
         String username = scanner.nextLine().trim();
 
-        String sql = "SELECT * FROM users WHERE username = ?";
+        String sql = "SELECT * FROM " + USERS_WITH_PRESENCE + " WHERE username = ?";
 
         try (Connection conn = DatabaseConfig.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -146,6 +161,7 @@ public class DatabaseManager {
             boolean deleted = userDAO.deleteUser(username);
 
             if (deleted) {
+                sessionDAO.revoke(username); // Or they would carry over to a new user of that name
                 System.out.println("✅ User deleted successfully!");
             } else {
                 System.out.println("❌ Failed to delete user. User may not exist.");
@@ -173,7 +189,7 @@ public class DatabaseManager {
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             // Hash the new password
-            String hashedPassword = org.mindrot.jbcrypt.BCrypt.hashpw(newPassword, org.mindrot.jbcrypt.BCrypt.gensalt(12));
+            String hashedPassword = PasswordHasher.hash(newPassword);
 
             stmt.setString(1, hashedPassword);
             stmt.setString(2, username);
@@ -181,6 +197,7 @@ public class DatabaseManager {
             int rowsAffected = stmt.executeUpdate();
 
             if (rowsAffected > 0) {
+                sessionDAO.revoke(username); // Logged-in devices must use the new password
                 System.out.println("✅ Password updated successfully!");
             } else {
                 System.out.println("❌ User not found!");
@@ -205,7 +222,7 @@ public class DatabaseManager {
             }
 
             // Online users
-            rs = stmt.executeQuery("SELECT COUNT(*) as count FROM users WHERE status = 'ONLINE'");
+            rs = stmt.executeQuery("SELECT COUNT(*) as count FROM user_presence WHERE status = 'ONLINE'");
             if (rs.next()) {
                 System.out.println("Online Users: " + rs.getInt("count"));
             }
@@ -314,7 +331,9 @@ public class DatabaseManager {
                 }
                 case "3" -> {
                     rowsAffected = stmt.executeUpdate(
-                            "DELETE FROM users WHERE last_seen < DATE_SUB(NOW(), INTERVAL 180 DAY) AND status = 'OFFLINE'"
+                            "DELETE u FROM users u LEFT JOIN user_presence p ON p.username = u.username " +
+                            "WHERE COALESCE(p.last_seen, u.last_seen) < DATE_SUB(NOW(), INTERVAL 180 DAY) " +
+                            "AND COALESCE(p.status, 'OFFLINE') = 'OFFLINE'"
                     );
                     System.out.println("✅ Deleted " + rowsAffected + " inactive users");
                 }
@@ -333,7 +352,7 @@ public class DatabaseManager {
         System.out.print("Enter filename (without .csv): ");
         String filename = scanner.nextLine().trim() + ".csv";
 
-        String sql = "SELECT username, email, status, created_at, last_seen FROM users";
+        String sql = "SELECT username, email, status, created_at, last_seen FROM " + USERS_WITH_PRESENCE;
 
         try (Connection conn = DatabaseConfig.getConnection();
              Statement stmt = conn.createStatement();
@@ -365,7 +384,7 @@ public class DatabaseManager {
         System.out.println("\n🟢 ONLINE USERS");
         System.out.println("═══════════════════════════════════════════════════════════════");
 
-        String sql = "SELECT username, email, last_seen FROM users WHERE status = 'ONLINE'";
+        String sql = "SELECT username, email, last_seen FROM " + USERS_WITH_PRESENCE + " WHERE status = 'ONLINE'";
 
         try (Connection conn = DatabaseConfig.getConnection();
              Statement stmt = conn.createStatement();
@@ -403,6 +422,18 @@ public class DatabaseManager {
         System.out.println("ALTER TABLE users ADD COLUMN blocked BOOLEAN DEFAULT FALSE;");
     }
 
+    private static void revokeSessions() {
+        System.out.print("\n🔒 Enter username to log out everywhere: ");
+        String username = scanner.nextLine().trim();
+
+        if (sessionDAO.revoke(username)) {
+            System.out.println("✅ Sessions revoked. Servers stop accepting them within "
+                    + "SESSION_REVOCATION_REFRESH_SECONDS; connected clients stay connected.");
+        } else {
+            System.out.println("❌ Failed to revoke sessions.");
+        }
+    }
+
     private static int getMessageCount(String username) {
         String sql = "SELECT COUNT(*) as count FROM chat_history WHERE sender_username = ?";
 
@@ -0,0 +1,109 @@
+package com.chatapp.admin;
+
+import com.chatapp.database.PasswordHasher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures BCrypt on this machine and picks BCRYPT_COST for a target login latency.
+ *
+ * For each cost it times password checks on one thread (ms per login, logins/s per
+ * core) and on --threads threads at once (what the auth pool can do in total; by
+ * default half the cores, like AUTH_THREADS). The recommended cost is the highest one
+ * whose single check stays within --target-ms. Changing the cost needs no migration:
+ * existing hashes keep working and are replaced as their users log in.
+ *
+ * Usage: PasswordCalibration [--target-ms=250] [--min-cost=8] [--max-cost=14]
+ *                            [--threads=N] [--seconds=2]
+ */
+public class PasswordCalibration {
+    private static final String PASSWORD = "correct horse battery staple";
+
+    public static void main(String[] args) throws InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        long targetMs = 250;
+        int minCost = 8;
+        int maxCost = 14;
+        int threads = Math.max(1, cores / 2);
+        long seconds = 2;
+
+        for (String arg : args) {
+            if (arg.startsWith("--target-ms=")) {
+                targetMs = Long.parseLong(arg.substring("--target-ms=".length()));
+            } else if (arg.startsWith("--min-cost=")) {
+                minCost = Integer.parseInt(arg.substring("--min-cost=".length()));
+            } else if (arg.startsWith("--max-cost=")) {
+                maxCost = Integer.parseInt(arg.substring("--max-cost=".length()));
+            } else if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(arg.substring("--threads=".length()));
+            } else if (arg.startsWith("--seconds=")) {
+                seconds = Long.parseLong(arg.substring("--seconds=".length()));
+            } else {
+                System.err.println("⚠️  Unknown argument: " + arg);
+            }
+        }
+        minCost = Math.max(minCost, PasswordHasher.MIN_COST);
+        maxCost = Math.min(maxCost, PasswordHasher.MAX_COST);
+
+        System.out.println("🔐 BCrypt calibration: " + cores + " cores, " + threads + " threads, target "
+                + targetMs + " ms per login (current BCRYPT_COST=" + PasswordHasher.COST + ")");
+        System.out.printf("%6s %10s %16s %18s%n", "cost", "ms/login", "logins/s/core", "logins/s (" + threads + " thr)");
+
+        int recommended = -1;
+        for (int cost = minCost; cost <= maxCost; cost++) {
+            String hash = PasswordHasher.hash(PASSWORD, cost);
+            double single = run(hash, 1, seconds);
+            double parallel = threads > 1 ? run(hash, threads, seconds) : single;
+            double msPerLogin = 1000 / single;
+            System.out.printf("%6d %10.1f %16.1f %18.1f%n", cost, msPerLogin, single, parallel);
+
+            if (msPerLogin <= targetMs) {
+                recommended = cost;
+            } else if (msPerLogin > targetMs * 4) {
+                break; // Higher costs only take longer to measure
+            }
+        }
+
+        if (recommended < 0) {
+            System.out.println("⚠️  Even cost " + minCost + " is slower than " + targetMs + " ms on this machine");
+        } else {
+            System.out.println("✅ Recommended: BCRYPT_COST=" + recommended);
+        }
+    }
+
+    /** @return password checks per second over all threads */
+    private static double run(String hash, int threads, long seconds) throws InterruptedException {
+        LongAdder checks = new LongAdder();
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    // At least one check each, however slow the cost
+                    do {
+                        PasswordHasher.verify(PASSWORD, hash);
+                        checks.increment();
+                    } while (running.get());
+                } finally {
+                    done.countDown();
+                }
+            }, "calibration-" + t);
+            thread.setDaemon(true);
+            workers.add(thread);
+        }
+
+        long start = System.nanoTime();
+        workers.forEach(Thread::start);
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        running.set(false);
+        done.await();
+        return checks.sum() / ((System.nanoTime() - start) / 1e9);
+    }
+}
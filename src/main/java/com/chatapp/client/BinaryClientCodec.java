@@ -0,0 +1,189 @@
+package com.chatapp.client;
+
+import com.chatapp.model.Message;
+import com.chatapp.protocol.AuthRequest;
+import com.chatapp.protocol.AuthResult;
+import com.chatapp.protocol.BinaryCodec;
+import com.chatapp.protocol.DirectorySync;
+import com.chatapp.protocol.Frame;
+import com.chatapp.protocol.Opcode;
+import com.chatapp.protocol.PresenceSubscription;
+import com.chatapp.protocol.Protocol;
+import com.chatapp.protocol.ProtocolException;
+import com.chatapp.protocol.UsernameCheck;
+import com.chatapp.protocol.UsernameStatus;
+import com.chatapp.util.ServerConfig;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+
+/**
+ * Length-prefixed binary frames, see {@link Protocol}.
+ */
+class BinaryClientCodec implements ClientCodec {
+    private final DataInputStream in;
+    private final OutputStream out;
+    private final int version;
+
+    /**
+     * Send our preamble and wait for the server's.
+     *
+     * @throws ProtocolException if the server answered with something else, i.e. it
+     *                           only speaks the legacy protocol
+     */
+    BinaryClientCodec(Socket socket, int handshakeTimeoutMs) throws IOException {
+        this.out = new BufferedOutputStream(socket.getOutputStream());
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+        out.write(Protocol.preamble(Protocol.VERSION));
+        out.flush();
+
+        byte[] reply = new byte[Protocol.PREAMBLE_SIZE];
+        int previousTimeout = socket.getSoTimeout();
+        try {
+            socket.setSoTimeout(handshakeTimeoutMs);
+            readReply(reply);
+        } catch (SocketException | SocketTimeoutException e) {
+            throw new ProtocolException("No binary handshake from server: " + e.getMessage());
+        } finally {
+            if (!socket.isClosed()) {
+                socket.setSoTimeout(previousTimeout);
+            }
+        }
+
+        int serverVersion = Protocol.readPreamble(reply);
+        if (serverVersion < 1) {
+            throw new ProtocolException("Server does not speak the binary protocol");
+        }
+        this.version = Math.min(serverVersion, Protocol.VERSION);
+
+        // The server pings every so often, so a silent socket means it is gone
+        if (version >= 2) {
+            socket.setSoTimeout(ServerConfig.getHeartbeatTimeout());
+        }
+    }
+
+    // Byte by byte, so an older server is recognized by what it does send: its
+    // ObjectStream header, then a close (it cannot read our preamble), or nothing
+    private void readReply(byte[] reply) throws IOException {
+        for (int i = 0; i < reply.length; i++) {
+            int b = in.read();
+            if (b < 0) {
+                throw new ProtocolException("Server closed the connection during the binary handshake");
+            }
+            reply[i] = (byte) b;
+            if (i == 1 && (reply[0] & 0xFF) == 0xAC && (reply[1] & 0xFF) == 0xED) {
+                throw new ProtocolException("Server answered with an ObjectStream header");
+            }
+        }
+    }
+
+    @Override
+    public synchronized void writeAuth(AuthRequest request) throws IOException {
+        out.write(BinaryCodec.encodeAuthRequest(request));
+        out.flush();
+    }
+
+    @Override
+    public AuthResult readAuthResult() throws IOException {
+        return BinaryCodec.decodeAuthResult(readReply(Opcode.AUTH_RESULT));
+    }
+
+    @Override
+    public boolean supportsUsernameCheck() {
+        return version >= 8;
+    }
+
+    @Override
+    public UsernameStatus checkUsername(String username) throws IOException {
+        synchronized (this) {
+            out.write(BinaryCodec.encodeUsernameCheck(new UsernameCheck(username)));
+            out.flush();
+        }
+        return BinaryCodec.decodeUsernameStatus(readReply(Opcode.USERNAME_STATUS));
+    }
+
+    // Before login, when nothing but pings arrives unasked
+    private Frame readReply(Opcode expected) throws IOException {
+        Frame frame = Frame.read(in);
+        while (frame.getOpcode() == Opcode.PING) {
+            writePong(frame);
+            frame = Frame.read(in);
+        }
+        if (frame.getOpcode() == Opcode.BUSY) {
+            throw BinaryCodec.decodeBusy(frame);
+        }
+        if (frame.getOpcode() != expected) {
+            throw new ProtocolException("Expected " + expected + ", got " + frame.getOpcode());
+        }
+        return frame;
+    }
+
+    @Override
+    public synchronized void writeMessage(Message message) throws IOException {
+        out.write(BinaryCodec.encodeMessage(message));
+        out.flush();
+    }
+
+    @Override
+    public boolean supportsPresenceDeltas() {
+        return version >= 4;
+    }
+
+    @Override
+    public boolean supportsDirectorySync() {
+        return version >= 5;
+    }
+
+    @Override
+    public synchronized void writeDirectorySync(DirectorySync request) throws IOException {
+        out.write(BinaryCodec.encodeDirectorySync(request));
+        out.flush();
+    }
+
+    @Override
+    public boolean supportsPresenceSubscriptions() {
+        return version >= 6;
+    }
+
+    @Override
+    public boolean supportsSessionResumption() {
+        return version >= 7;
+    }
+
+    @Override
+    public synchronized void writeSubscription(PresenceSubscription subscription) throws IOException {
+        out.write(BinaryCodec.encodeSubscription(subscription));
+        out.flush();
+    }
+
+    @Override
+    public void readEvent(EventHandler handler) throws IOException {
+        Frame frame = Frame.read(in);
+        switch (frame.getOpcode()) {
+            case MESSAGE -> handler.onMessage(BinaryCodec.decodeMessage(frame));
+            case USERS_LIST -> handler.onUserList(BinaryCodec.decodeUserList(frame));
+            case PRESENCE -> handler.onPresence(BinaryCodec.decodePresence(frame));
+            case USERS_SNAPSHOT -> handler.onPresence(BinaryCodec.decodeSnapshot(frame));
+            case DIRECTORY_PAGE -> handler.onDirectoryPage(BinaryCodec.decodeDirectoryPage(frame));
+            case PING -> writePong(frame);
+            default -> System.err.println("⚠️ Unexpected frame: " + frame.getOpcode());
+        }
+    }
+
+    private synchronized void writePong(Frame ping) throws IOException {
+        out.write(BinaryCodec.encodePong(ping));
+        out.flush();
+    }
+
+    @Override
+    public String name() {
+        return "binary v" + version;
+    }
+}
@@ -2,24 +2,43 @@ package com.chatapp.client;
 
 import com.chatapp.model.Message;
 import com.chatapp.model.User;
-import com.chatapp.util.NetworkUtil;
+import com.chatapp.protocol.AuthRequest;
+import com.chatapp.protocol.AuthResult;
+import com.chatapp.protocol.DirectoryPage;
+import com.chatapp.protocol.DirectorySync;
+import com.chatapp.protocol.PresenceSubscription;
+import com.chatapp.protocol.PresenceUpdate;
+import com.chatapp.protocol.ProtocolException;
+import com.chatapp.protocol.ServerBusyException;
+import com.chatapp.util.ServerConfig;
 
 import java.io.*;
 import java.net.Socket;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javafx.application.Platform;
 
 public class ChatClient {
     private static ChatClient instance;
     private Socket socket;
-    private ObjectOutputStream out;
-    private ObjectInputStream in;
+    private volatile ClientCodec codec; // null while disconnected
+    private DirectoryCache cache;
+    private SessionStore sessions;
+    private String host;
+    private int port;
     private String username;
+    private volatile String sessionToken; // from the last login; null after logout
     private volatile boolean connected;
+    private final AtomicBoolean reconnecting = new AtomicBoolean(false); // at most one reconnect thread
     private Thread listenerThread;
+    private final PresenceDirectory directory = new PresenceDirectory();
+    private volatile List<String> presenceInterest = List.of(); // last subscription sent
+
+    // Tries to resume the session after losing the connection, 1 s apart and doubling
+    private static final int RECONNECT_ATTEMPTS = 5;
 
     private List<MessageListener> messageListeners;
     private List<UserStatusListener> userStatusListeners;
@@ -35,6 +54,21 @@ public class ChatClient {
         void onUserJoined(String username);
 
         void onUserLeft(String username);
+
+        /**
+         * Some users' status changed, batched per server window. Only servers that send
+         * presence deltas call this; everything else arrives as a whole list through
+         * {@link #onUserListUpdated}.
+         */
+        default void onUsersPresenceChanged(List<User> users) {
+        }
+
+        /**
+         * Another page of users from a paged directory sync, to add to (or update in)
+         * what is shown. See {@link #requestMoreUsers()}.
+         */
+        default void onUsersLoaded(List<User> users) {
+        }
     }
 
     private ChatClient() {
@@ -52,110 +86,201 @@ public class ChatClient {
 
     // Connection Management
     public boolean connect(String host, int port) {
+        String protocol = ServerConfig.getProtocol();
+        codec = null;
         try {
-            socket = new Socket(host, port);
-            out = new ObjectOutputStream(socket.getOutputStream());
-            out.flush();
-            in = new ObjectInputStream(socket.getInputStream());
+            if (!"legacy".equals(protocol)) {
+                try {
+                    socket = new Socket(host, port);
+                    codec = new BinaryClientCodec(socket, ServerConfig.getConnectionTimeout());
+                } catch (ProtocolException e) {
+                    closeSocket();
+                    if ("binary".equals(protocol)) {
+                        throw e;
+                    }
+                    // Older server, it only understands ObjectStreams
+                    System.out.println("ℹ️  " + e.getMessage() + ", falling back to legacy protocol");
+                }
+            }
+            if (codec == null) {
+                socket = new Socket(host, port);
+                codec = new LegacyClientCodec(socket);
+            }
+            cache = new DirectoryCache(host, port);
+            sessions = new SessionStore(host, port);
+            this.host = host;
+            this.port = port;
 
             connected = true;
-            System.out.println("✅ Connected to server: " + host + ":" + port);
+            System.out.println("✅ Connected to server: " + host + ":" + port + " (" + codec.name() + ")");
             return true;
 
         } catch (IOException e) {
             System.err.println("❌ Failed to connect to server: " + e.getMessage());
+            closeSocket();
+            codec = null;
             return false;
         }
     }
 
     // Authentication
     public boolean login(String username, String password) throws IOException, ClassNotFoundException {
-        out.writeObject("LOGIN");
-        out.writeObject(username);
-        out.writeObject(password);
-        out.flush();
-
-        boolean success = (boolean) in.readObject();
-        String message = (String) in.readObject();
+        codec.writeAuth(new AuthRequest(AuthRequest.Type.LOGIN, username, password, null));
+        AuthResult result = readAuthResult();
 
-        if (success) {
+        if (result.isSuccess()) {
             this.username = username;
             System.out.println("✅ Login successful: " + username);
+            rememberSession(result);
             startMessageListener();
         } else {
-            System.out.println("❌ Login failed: " + message);
+            System.out.println("❌ Login failed: " + result.getMessage());
         }
 
-        return success;
+        return result.isSuccess();
     }
 
-    public boolean register(String username, String password, String email)
+    public synchronized boolean register(String username, String password, String email)
             throws IOException, ClassNotFoundException {
-        out.writeObject("REGISTER");
-        out.writeObject(username);
-        out.writeObject(password);
-        out.writeObject(email);
-        out.flush();
+        codec.writeAuth(new AuthRequest(AuthRequest.Type.REGISTER, username, password, email));
+        AuthResult result = readAuthResult();
 
-        boolean success = (boolean) in.readObject();
-        String message = (String) in.readObject();
-
-        if (success) {
+        if (result.isSuccess()) {
             this.username = username;
             System.out.println("✅ Registration successful: " + username);
+            rememberSession(result);
             startMessageListener();
         } else {
-            System.out.println("❌ Registration failed: " + message);
+            System.out.println("❌ Registration failed: " + result.getMessage());
+        }
+
+        return result.isSuccess();
+    }
+
+    /**
+     * Ask the server whether a username is still free, e.g. while a registration form
+     * is filled in. Call after {@link #connect}, before registering.
+     *
+     * @return null if the server cannot tell (older server, or not connected)
+     */
+    public synchronized Boolean isUsernameAvailable(String username) throws IOException {
+        if (codec == null || !codec.supportsUsernameCheck()) {
+            return null;
         }
+        try {
+            return codec.checkUsername(username).isAvailable();
+        } catch (ServerBusyException e) {
+            disconnect(); // Server closes its end too
+            throw e;
+        }
+    }
 
-        return success;
+    /** True if an earlier login on this machine left a session to resume. */
+    public boolean hasSavedSession(String host, int port) {
+        return new SessionStore(host, port).load() != null;
+    }
+
+    /**
+     * Log in with the session saved by an earlier login instead of a password. Call
+     * after {@link #connect}.
+     *
+     * @return false if there was nothing to resume or the server refused; the connection
+     *         is closed then, connect again to log in with a password
+     */
+    public boolean resumeSession() throws IOException {
+        SessionStore.Session saved = sessions.load();
+        if (saved == null || !codec.supportsSessionResumption()) {
+            disconnect();
+            return false;
+        }
+        return resume(saved.username(), saved.token());
+    }
+
+    private boolean resume(String username, String token) throws IOException {
+        codec.writeAuth(AuthRequest.resume(token));
+        AuthResult result = readAuthResult();
+
+        if (!result.isSuccess()) {
+            System.out.println("❌ Resume failed: " + result.getMessage());
+            sessionToken = null;
+            sessions.clear();
+            disconnect(); // The server closes its end after a failed attempt
+            return false;
+        }
+
+        this.username = username;
+        System.out.println("✅ Session resumed: " + username);
+        rememberSession(result);
+        startMessageListener();
+        return true;
+    }
+
+    private void rememberSession(AuthResult result) {
+        sessionToken = result.getSessionToken();
+        if (sessionToken != null) {
+            sessions.save(new SessionStore.Session(username, sessionToken));
+        }
+    }
+
+    private AuthResult readAuthResult() throws IOException {
+        try {
+            return codec.readAuthResult();
+        } catch (ServerBusyException e) {
+            System.out.println("🚦 " + e.getMessage());
+            disconnect(); // Server closes its end too; reconnect to retry
+            throw e;
+        }
     }
 
     // Start listening for messages from server
     private void startMessageListener() {
         System.out.println("🎧 Starting message listener for: " + username);
-        listenerThread = new Thread(new ClientHandler());
+        directory.clear();
+        presenceInterest = List.of();
+        if (codec.supportsDirectorySync()) {
+            DirectoryCache.State cached = cache.load();
+            if (cached != null) {
+                directory.restore(cached);
+            }
+        }
+        if (codec.supportsPresenceDeltas()) {
+            directory.expectSnapshot(); // Sent right after login, or asked for just below
+        }
+        listenerThread = new Thread(new ClientHandler(codec));
         listenerThread.setDaemon(true);
         listenerThread.start();
+        if (codec.supportsDirectorySync()) {
+            sendDirectorySync(directory.startSync());
+        }
     }
 
 
-    private class ClientHandler implements Runnable {
+    private class ClientHandler implements Runnable, ClientCodec.EventHandler {
+        // The connection this listener reads; after a reconnect another listener reads the new one
+        private final ClientCodec source;
+
+        ClientHandler(ClientCodec source) {
+            this.source = source;
+        }
+
         @Override
         public void run() {
             System.out.println("🟢 ClientHandler thread started for: " + username);
 
             try {
-                while (connected) {
+                while (connected && codec == source) {
                     try {
-                        String command = (String) in.readObject();
-                        System.out.println("📨 Command received: " + command);
-
-                        if ("USERS_LIST".equals(command)) {
-                            @SuppressWarnings("unchecked")
-                            List<User> users = (List<User>) in.readObject();
-                            System.out.println("✅ Received user list: " + users.size() + " users");
-                            for (User user : users) {
-                                System.out.println("   👤 " + user.getUsername() + " [" + user.getStatus() + "]");
-                            }
-                            notifyUserListUpdated(users);
-                        } else if ("MESSAGE".equals(command)) {
-                            Message message = (Message) in.readObject();
-                            System.out.println("📩 Received message: " + message.getType() + " from " + message.getSender());
-                            handleIncomingMessage(message);
-                        } else {
-                            System.err.println("⚠️ Unknown command: " + command);
-                        }
-
+                        source.readEvent(this);
                     } catch (EOFException e) {
                         System.out.println("🔌 Server closed connection");
+                        if (connected && codec == source) {
+                            handleDisconnection();
+                        }
                         break;
-                    } catch (ClassNotFoundException e) {
-                        System.err.println("❌ Class not found: " + e.getMessage());
                     }
                 }
             } catch (IOException e) {
-                if (connected) {
+                if (connected && codec == source) {
                     System.err.println("❌ Connection error: " + e.getMessage());
                     handleDisconnection();
                 }
@@ -164,6 +289,56 @@ public class ChatClient {
             }
         }
 
+        @Override
+        public void onUserList(List<User> users) {
+            System.out.println("✅ Received user list: " + users.size() + " users");
+            for (User user : users) {
+                System.out.println("   👤 " + user.getUsername() + " [" + user.getStatus() + "]");
+            }
+            notifyUserListUpdated(users);
+        }
+
+        @Override
+        public void onPresence(PresenceUpdate update) {
+            if (update.isSnapshot()) {
+                List<User> users = directory.applySnapshot(update);
+                if (users != null) {
+                    System.out.println("✅ Received user snapshot: " + users.size() + " users (v" + update.getVersion() + ")");
+                    notifyUserListUpdated(users);
+                }
+            } else {
+                List<User> changed = directory.applyDelta(update);
+                if (changed != null) {
+                    notifyUsersPresenceChanged(changed);
+                }
+            }
+            for (int i = directory.takeResyncs(); i > 0; i--) {
+                sendUserListRequest(source);
+            }
+        }
+
+        @Override
+        public void onDirectoryPage(DirectoryPage page) {
+            if (directory.applyPage(page)) {
+                List<User> users = directory.getUsers();
+                System.out.println("✅ Synced user directory: " + users.size() + " of " + page.getTotal()
+                        + " users (v" + page.getVersion() + ")");
+                notifyUserListUpdated(users);
+            } else if (!page.getUsers().isEmpty()) {
+                notifyUsersLoaded(page.getUsers());
+            }
+            sendDirectorySync(directory.takeFollowUp());
+            for (int i = directory.takeResyncs(); i > 0; i--) {
+                sendUserListRequest(source);
+            }
+        }
+
+        @Override
+        public void onMessage(Message message) {
+            System.out.println("📩 Received message: " + message.getType() + " from " + message.getSender());
+            handleIncomingMessage(message);
+        }
+
         private void handleIncomingMessage(Message message) {
             System.out.println("📩 Processing message: " + message.getType() + " from " + message.getSender());
 
@@ -181,9 +356,13 @@ public class ChatClient {
 
     // Message Sending
     public void sendMessage(String content) {
+        ClientCodec out = sendCodec("message");
+        if (out == null) {
+            return;
+        }
         try {
             Message message = new Message(username, content, Message.MessageType.TEXT);
-            NetworkUtil.sendMessage(out, message);
+            out.writeMessage(message);
             System.out.println("📤 Sent message: " + content);
         } catch (IOException e) {
             System.err.println("❌ Failed to send message: " + e.getMessage());
@@ -192,9 +371,13 @@ public class ChatClient {
     }
 
     public void sendPrivateMessage(String receiver, String content) {
+        ClientCodec out = sendCodec("private message");
+        if (out == null) {
+            return;
+        }
         try {
             Message message = new Message(username, receiver, content);
-            NetworkUtil.sendMessage(out, message);
+            out.writeMessage(message);
             System.out.println("📤 Sent private message to " + receiver);
         } catch (IOException e) {
             System.err.println("❌ Failed to send private message: " + e.getMessage());
@@ -203,12 +386,16 @@ public class ChatClient {
     }
 
     public void sendFile(String fileName, byte[] fileData, String receiver) {
+        ClientCodec out = sendCodec("file");
+        if (out == null) {
+            return;
+        }
         try {
             Message message = new Message(username, fileName, fileData);
             if (receiver != null && !receiver.isEmpty()) {
                 message.setReceiver(receiver);
             }
-            NetworkUtil.sendMessage(out, message);
+            out.writeMessage(message);
             System.out.println("📤 Sent file: " + fileName);
         } catch (IOException e) {
             System.err.println("❌ Failed to send file: " + e.getMessage());
@@ -216,10 +403,19 @@ public class ChatClient {
         }
     }
 
-    public void sendTypingIndicator() {
+    /**
+     * Tell one conversation peer we started or stopped typing. The server forwards at
+     * most one "typing" per conversation every couple of seconds.
+     */
+    public void sendTypingIndicator(String receiver, boolean typing) {
+        ClientCodec out = reconnecting.get() ? null : codec;
+        if (out == null) {
+            return; // Disconnected while the idle timer was running
+        }
         try {
-            Message message = new Message(username, "", Message.MessageType.TYPING);
-            NetworkUtil.sendMessage(out, message);
+            Message message = new Message(username, typing ? "" : Message.TYPING_STOPPED, Message.MessageType.TYPING);
+            message.setReceiver(receiver);
+            out.writeMessage(message);
         } catch (IOException e) {
             // Silently fail for typing indicators
         }
@@ -263,15 +459,84 @@ public class ChatClient {
      * Request updated user list from server
      */
     public void requestUserList() {
+        ClientCodec out = reconnecting.get() ? null : codec;
+        if (out == null) {
+            return; // A reconnect fetches the list anyway
+        }
+        if (out.supportsPresenceDeltas()) {
+            directory.expectSnapshot();
+        }
+        sendUserListRequest(out);
+    }
+
+    /**
+     * Fetch the next page of users, if the server pages its directory and not all of
+     * it is here yet. Call when the user list is scrolled near its end.
+     */
+    public void requestMoreUsers() {
+        ClientCodec out = reconnecting.get() ? null : codec;
+        if (out != null && out.supportsDirectorySync()) {
+            sendDirectorySync(directory.nextListingPage(false));
+        }
+    }
+
+    /** Fetch every user not loaded yet, e.g. so a search sees all of them. */
+    public void requestAllUsers() {
+        ClientCodec out = reconnecting.get() ? null : codec;
+        if (out != null && out.supportsDirectorySync()) {
+            sendDirectorySync(directory.nextListingPage(true));
+        }
+    }
+
+    /**
+     * Users whose presence matters right now, most important first. Servers with
+     * subscriptions then send presence for these users only; the status of anyone
+     * else in the list may be out of date until they are back in this set.
+     */
+    public synchronized void setPresenceInterest(List<String> usernames) {
+        ClientCodec out = reconnecting.get() ? null : codec;
+        if (out == null || !out.supportsPresenceSubscriptions() || usernames.equals(presenceInterest)) {
+            return;
+        }
+        try {
+            out.writeSubscription(new PresenceSubscription(usernames));
+            presenceInterest = List.copyOf(usernames);
+        } catch (IOException e) {
+            System.err.println("❌ Failed to update presence subscription: " + e.getMessage());
+        }
+    }
+
+    /** Registered users on the server, loaded or not; 0 if unknown. */
+    public int getUserTotal() {
+        return directory.getTotal();
+    }
+
+    private void sendUserListRequest(ClientCodec out) {
+        if (out.supportsDirectorySync()) {
+            sendDirectorySync(directory.startSync());
+            return;
+        }
         try {
             System.out.println("📤 Requesting user list from server...");
             Message request = new Message(username, "REQUEST_USERS", Message.MessageType.SYSTEM);
-            NetworkUtil.sendMessage(out, request);
+            out.writeMessage(request);
             System.out.println("✅ User list request sent");
         } catch (IOException e) {
             System.err.println("❌ Failed to request user list: " + e.getMessage());
         }
     }
+    private void sendDirectorySync(DirectorySync request) {
+        ClientCodec out = codec;
+        if (request == null || out == null) {
+            return;
+        }
+        try {
+            out.writeDirectorySync(request);
+        } catch (IOException e) {
+            System.err.println("❌ Failed to request users: " + e.getMessage());
+        }
+    }
+
     private void notifyUserListUpdated(List<User> users) {
         System.out.println("🔔 Notifying " + userStatusListeners.size() + " listeners about user list update");
         List<UserStatusListener> snapshot = new ArrayList<>(userStatusListeners);
@@ -288,6 +553,34 @@ public class ChatClient {
         }
     }
 
+    private void notifyUsersPresenceChanged(List<User> users) {
+        List<UserStatusListener> snapshot = new ArrayList<>(userStatusListeners);
+        for (UserStatusListener listener : snapshot) {
+            Platform.runLater(() -> {
+                try {
+                    listener.onUsersPresenceChanged(users);
+                } catch (Exception e) {
+                    System.err.println("❌ Error in presence listener: " + e.getMessage());
+                    e.printStackTrace();
+                }
+            });
+        }
+    }
+
+    private void notifyUsersLoaded(List<User> users) {
+        List<UserStatusListener> snapshot = new ArrayList<>(userStatusListeners);
+        for (UserStatusListener listener : snapshot) {
+            Platform.runLater(() -> {
+                try {
+                    listener.onUsersLoaded(users);
+                } catch (Exception e) {
+                    System.err.println("❌ Error in user list listener: " + e.getMessage());
+                    e.printStackTrace();
+                }
+            });
+        }
+    }
+
     private void notifyUserJoined(String username) {
         List<UserStatusListener> snapshot = new ArrayList<>(userStatusListeners);
         for (UserStatusListener listener : snapshot) {
@@ -302,17 +595,88 @@ public class ChatClient {
         }
     }
 
+    // A failed send and the listener can both get here for the same lost connection
     private void handleDisconnection() {
+        if (reconnecting.get()) {
+            return; // Already on it
+        }
         connected = false;
         System.out.println("🔌 Disconnected from server");
+        saveDirectory();
+        closeSocket(); // Stops the listener if it is still blocked reading
+
+        if (sessionToken != null) {
+            if (!reconnecting.compareAndSet(false, true)) {
+                return;
+            }
+            notifySystemMessage("Connection lost. Reconnecting...");
+            Thread reconnect = new Thread(this::reconnect, "reconnect");
+            reconnect.setDaemon(true);
+            reconnect.start();
+            return;
+        }
+        notifySystemMessage("Connection lost. Please restart the application.");
+    }
 
-        // Notify about disconnection with a system message
-        Message disconnectMsg = new Message("SYSTEM",
-                "Connection lost. Please restart the application.",
-                Message.MessageType.SYSTEM);
+    /**
+     * Where a user action may write, or null after telling the user it was not sent:
+     * while reconnecting the new connection is not logged in yet, and nothing is queued
+     * for a session that may not come back.
+     */
+    private ClientCodec sendCodec(String what) {
+        ClientCodec out = reconnecting.get() ? null : codec;
+        if (out == null) {
+            System.err.println("❌ Not connected, " + what + " not sent");
+            notifySystemMessage(reconnecting.get()
+                    ? "Reconnecting, your " + what + " was not sent. Please try again in a moment."
+                    : "Not connected, your " + what + " was not sent.");
+        }
+        return out;
+    }
+
+    // A token check on the server, not a password one, so a flapping network or a
+    // restarting server costs every client a cheap reconnect
+    private void reconnect() {
+        List<String> interest = presenceInterest;
+        long delayMs = 1000;
+        try {
+            for (int attempt = 1; attempt <= RECONNECT_ATTEMPTS; attempt++) {
+                try {
+                    Thread.sleep(delayMs);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                delayMs *= 2;
+
+                String token = sessionToken;
+                if (token == null) {
+                    return; // Logged out meanwhile
+                }
+                try {
+                    if (connect(host, port) && resume(username, token)) {
+                        reconnecting.set(false); // Sends go out again from here
+                        setPresenceInterest(interest);
+                        notifySystemMessage("🔄 Reconnected");
+                        return;
+                    }
+                } catch (IOException e) {
+                    System.err.println("❌ Reconnect attempt " + attempt + " failed: " + e.getMessage());
+                    disconnect();
+                }
+                if (sessionToken == null) {
+                    break; // Token refused, only a password will do
+                }
+            }
+            notifySystemMessage("Connection lost. Please restart the application.");
+        } finally {
+            reconnecting.set(false);
+        }
+    }
 
+    private void notifySystemMessage(String text) {
+        Message message = new Message("SYSTEM", text, Message.MessageType.SYSTEM);
         for (MessageListener listener : messageListeners) {
-            listener.onMessageReceived(disconnectMsg);
+            listener.onMessageReceived(message);
         }
     }
 
@@ -325,18 +689,42 @@ public class ChatClient {
         return username;
     }
 
+    /** Disconnect and forget the saved session, so the next start asks for a password. */
+    public void logout() {
+        sessionToken = null;
+        if (sessions != null) {
+            sessions.clear();
+        }
+        disconnect();
+    }
+
     // Disconnect
     public void disconnect() {
+        if (connected) {
+            saveDirectory();
+        }
         connected = false;
 
+        closeSocket();
+        codec = null;
+
+        System.out.println("Client disconnected");
+    }
+
+    // Next login then only fetches what changed
+    private void saveDirectory() {
+        DirectoryCache.State state = directory.exportState();
+        if (state != null && cache != null) {
+            cache.save(state);
+        }
+    }
+
+    private void closeSocket() {
         try {
-            if (in != null) in.close();
-            if (out != null) out.close();
             if (socket != null) socket.close();
         } catch (IOException e) {
             System.err.println("Error during disconnect: " + e.getMessage());
         }
-
-        System.out.println("Client disconnected");
+        socket = null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,81 @@
+package com.chatapp.client;
+
+import com.chatapp.model.Message;
+import com.chatapp.model.User;
+import com.chatapp.protocol.AuthRequest;
+import com.chatapp.protocol.AuthResult;
+import com.chatapp.protocol.DirectoryPage;
+import com.chatapp.protocol.DirectorySync;
+import com.chatapp.protocol.PresenceSubscription;
+import com.chatapp.protocol.PresenceUpdate;
+import com.chatapp.protocol.ProtocolException;
+import com.chatapp.protocol.UsernameStatus;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Client side of one wire protocol. {@link ChatClient} talks to the server only
+ * through this, so the binary and legacy ObjectStream formats are interchangeable.
+ */
+interface ClientCodec {
+
+    interface EventHandler {
+        void onMessage(Message message);
+
+        void onUserList(List<User> users);
+
+        void onPresence(PresenceUpdate update);
+
+        void onDirectoryPage(DirectoryPage page);
+    }
+
+    void writeAuth(AuthRequest request) throws IOException;
+
+    AuthResult readAuthResult() throws IOException;
+
+    void writeMessage(Message message) throws IOException;
+
+    /** True if the server sends presence deltas and versioned snapshots instead of user lists. */
+    default boolean supportsPresenceDeltas() {
+        return false;
+    }
+
+    /** True if the server expects the client to page through the directory itself. */
+    default boolean supportsDirectorySync() {
+        return false;
+    }
+
+    default void writeDirectorySync(DirectorySync request) throws IOException {
+        throw new ProtocolException(name() + " does not support directory sync");
+    }
+
+    /** True if the server sends presence only for users the client subscribed to. */
+    default boolean supportsPresenceSubscriptions() {
+        return false;
+    }
+
+    default void writeSubscription(PresenceSubscription subscription) throws IOException {
+        throw new ProtocolException(name() + " does not support presence subscriptions");
+    }
+
+    /** True if the server issues session tokens and accepts them instead of a password. */
+    default boolean supportsSessionResumption() {
+        return false;
+    }
+
+    /** True if the server answers "username available?" before login. */
+    default boolean supportsUsernameCheck() {
+        return false;
+    }
+
+    /** Ask and wait for the answer. Only before login, while nothing else reads. */
+    default UsernameStatus checkUsername(String username) throws IOException {
+        throw new ProtocolException(name() + " does not support username checks");
+    }
+
+    /** Block until the next server event and hand it to the handler. */
+    void readEvent(EventHandler handler) throws IOException;
+
+    String name();
+}
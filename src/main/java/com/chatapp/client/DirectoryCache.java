@@ -0,0 +1,63 @@
+package com.chatapp.client;
+
+import com.chatapp.model.User;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+
+/**
+ * The user directory as of the last sync, kept on disk between sessions so the next
+ * login asks only for what changed since (binary protocol v5).
+ *
+ * One file per server in ~/.chathub. A missing or unreadable file just means a full
+ * sync; nothing in it is trusted beyond the epoch check the server does anyway.
+ */
+class DirectoryCache {
+
+    /** What {@link PresenceDirectory} needs to resume: see its fields of the same names. */
+    record State(long epoch, long syncedVersion, int listCursor, ArrayList<User> users) implements Serializable {
+    }
+
+    private final File file;
+
+    DirectoryCache(String host, int port) {
+        File dir = new File(System.getProperty("user.home"), ".chathub");
+        this.file = new File(dir, "directory-" + host.replaceAll("[^A-Za-z0-9.-]", "_") + "-" + port + ".cache");
+    }
+
+    /** @return null if there is no usable cache */
+    State load() {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            State state = (State) in.readObject();
+            System.out.println("📇 Loaded " + state.users().size() + " cached users");
+            return state;
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            System.err.println("⚠️ Ignoring user cache: " + e.getMessage());
+            return null;
+        }
+    }
+
+    void save(State state) {
+        File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            System.err.println("⚠️ Cannot create " + dir);
+            return;
+        }
+        // Write aside and rename, so a crash mid-write leaves the old cache intact
+        File tmp = new File(dir, file.getName() + ".tmp");
+        try {
+            try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeObject(state);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("⚠️ Failed to save user cache: " + e.getMessage());
+            tmp.delete();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.chatapp.client;
+
+import com.chatapp.model.Message;
+import com.chatapp.model.User;
+import com.chatapp.protocol.AuthRequest;
+import com.chatapp.protocol.AuthResult;
+import com.chatapp.util.NetworkUtil;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.net.Socket;
+import java.util.List;
+
+/**
+ * The original ObjectStream protocol, kept for servers that predate the binary one.
+ */
+class LegacyClientCodec implements ClientCodec {
+    private final ObjectOutputStream out;
+    private final ObjectInputStream in;
+
+    LegacyClientCodec(Socket socket) throws IOException {
+        out = new ObjectOutputStream(socket.getOutputStream());
+        out.flush();
+        in = new ObjectInputStream(socket.getInputStream());
+    }
+
+    @Override
+    public synchronized void writeAuth(AuthRequest request) throws IOException {
+        out.writeObject(request.getType().name());
+        out.writeObject(request.getUsername());
+        out.writeObject(request.getPassword());
+        if (request.getType() == AuthRequest.Type.REGISTER) {
+            out.writeObject(request.getEmail());
+        }
+        out.reset();
+        out.flush();
+    }
+
+    @Override
+    public AuthResult readAuthResult() throws IOException {
+        boolean success = (boolean) readObject();
+        String message = (String) readObject();
+        return new AuthResult(success, message);
+    }
+
+    @Override
+    public synchronized void writeMessage(Message message) throws IOException {
+        NetworkUtil.sendMessage(out, message);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void readEvent(EventHandler handler) throws IOException {
+        String command = (String) readObject();
+
+        if ("USERS_LIST".equals(command)) {
+            handler.onUserList((List<User>) readObject());
+        } else if ("MESSAGE".equals(command)) {
+            handler.onMessage((Message) readObject());
+        } else {
+            System.err.println("⚠️ Unknown command: " + command);
+        }
+    }
+
+    private Object readObject() throws IOException {
+        try {
+            return in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new StreamCorruptedException("Class not found: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String name() {
+        return "legacy";
+    }
+}
@@ -0,0 +1,283 @@
+package com.chatapp.client;
+
+import com.chatapp.model.User;
+import com.chatapp.protocol.DirectoryPage;
+import com.chatapp.protocol.DirectorySync;
+import com.chatapp.protocol.PresenceUpdate;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Client copy of the user directory, kept current from the server's versioned
+ * presence deltas (binary protocol v4).
+ *
+ * Deltas that arrive while a snapshot is on its way are held back and replayed on
+ * top of it, minus those the snapshot already covers. A delta that skips a version
+ * means one was lost, so the directory asks for a fresh snapshot instead of guessing.
+ *
+ * From v5 there are no snapshots: the directory pages through the server's instead
+ * (see {@link DirectorySync}). With nothing cached, the first page is shown right
+ * away and the rest of the listing is fetched as the list scrolls. With a cache from
+ * an earlier session, a sync fetches only users changed since, all pages at once. The
+ * first page of a sync takes the place of the snapshot for presence versions.
+ */
+class PresenceDirectory {
+    // Past this many held-back deltas, a newer snapshot is cheaper than replaying them
+    private static final int MAX_PENDING = 4096;
+
+    // Users per directory page; the server caps it too
+    private static final int PAGE_SIZE = 200;
+
+    private final Map<String, User> users = new LinkedHashMap<>();
+    private final Deque<PresenceUpdate> pending = new ArrayDeque<>();
+    private long version = -1;
+    private int snapshotsExpected;
+    private int resyncsNeeded;
+
+    // Paged sync. A request that starts a sync is the one that counts as a snapshot.
+    private record Request(DirectorySync sync, boolean start) {
+    }
+
+    private final Deque<Request> outstanding = new ArrayDeque<>(); // answered in order
+    private long epoch;          // server directory the cache belongs to; 0 = none
+    private long syncedVersion;  // users before listCursor are current as of this
+    private long chainVersion;   // first page of the "changed since" sync in progress
+    private int listCursor = -1; // next page of the full listing, -1 when complete
+    private boolean listingRequested;
+    private boolean loadAll;     // fetch the rest of the listing without waiting for scrolling
+    private int total;
+    private DirectorySync followUp;
+
+    /** A snapshot has been requested, or will be sent anyway (right after login). */
+    synchronized void expectSnapshot() {
+        snapshotsExpected++;
+    }
+
+    /**
+     * @return the whole directory, or null while another requested snapshot is still
+     *         coming and would replace it
+     */
+    synchronized List<User> applySnapshot(PresenceUpdate snapshot) {
+        if (snapshotsExpected > 0) {
+            snapshotsExpected--;
+        }
+        users.clear();
+        for (User user : snapshot.getUsers()) {
+            users.put(user.getUsername(), user);
+        }
+        version = snapshot.getVersion();
+        return replayPending() ? getUsers() : null;
+    }
+
+    // Catch up on deltas held back for a snapshot (or first page) that just arrived
+    private boolean replayPending() {
+        if (snapshotsExpected > 0) {
+            pending.removeIf(delta -> delta.getVersion() <= version);
+            return false;
+        }
+        while (!pending.isEmpty() && snapshotsExpected == 0) {
+            applyDelta(pending.poll());
+        }
+        return true;
+    }
+
+    /**
+     * @return the changed users, or null if the delta was held back, already applied
+     *         or revealed a gap (see {@link #takeResyncs()})
+     */
+    synchronized List<User> applyDelta(PresenceUpdate delta) {
+        if (snapshotsExpected > 0) {
+            pending.add(delta);
+            if (pending.size() > MAX_PENDING) {
+                pending.clear();
+                requestResync();
+            }
+            return null;
+        }
+        if (delta.getVersion() <= version) {
+            return null;
+        }
+        if (delta.getVersion() != version + 1) {
+            System.out.println("⚠️ Presence gap: have v" + version + ", got v" + delta.getVersion() + ", resyncing");
+            pending.add(delta);
+            requestResync();
+            return null;
+        }
+
+        version = delta.getVersion();
+        for (User change : delta.getUsers()) {
+            User previous = users.get(change.getUsername());
+            if (previous != null) {
+                // New object rather than an update in place, the UI may still be showing the old one
+                change.setEmail(previous.getEmail());
+            }
+            users.put(change.getUsername(), change); // Also adds users registered since the snapshot
+        }
+        return delta.getUsers();
+    }
+
+    private void requestResync() {
+        snapshotsExpected++;
+        resyncsNeeded++;
+    }
+
+    /** Snapshots the directory is now waiting for that the caller still has to request. */
+    synchronized int takeResyncs() {
+        int needed = resyncsNeeded;
+        resyncsNeeded = 0;
+        return needed;
+    }
+
+    // ==================== Paged sync (v5) ====================
+
+    /**
+     * First request of a sync, to send in place of a snapshot request: everything
+     * changed since the cache, or the first page of a full listing without one.
+     */
+    synchronized DirectorySync startSync() {
+        DirectorySync sync = epoch == 0
+                ? new DirectorySync(0, 0, 0, PAGE_SIZE)
+                : new DirectorySync(epoch, syncedVersion, 0, PAGE_SIZE);
+        if (sync.getSince() == 0) {
+            listingRequested = true;
+        }
+        outstanding.add(new Request(sync, true));
+        return sync;
+    }
+
+    /**
+     * Next page of the full listing, if there is one and it is not already on its way.
+     *
+     * @param all keep fetching until the listing is complete (e.g. to search it)
+     * @return the request to send, or null
+     */
+    synchronized DirectorySync nextListingPage(boolean all) {
+        loadAll |= all;
+        if (epoch == 0 || listCursor < 0 || listingRequested) {
+            return null;
+        }
+        listingRequested = true;
+        DirectorySync sync = new DirectorySync(epoch, 0, listCursor, PAGE_SIZE);
+        outstanding.add(new Request(sync, false));
+        return sync;
+    }
+
+    /**
+     * @return true if the caller should show the whole directory again ({@link #getUsers()}),
+     *         false if adding the page's users to what is shown is enough
+     */
+    synchronized boolean applyPage(DirectoryPage page) {
+        Request request = outstanding.poll();
+        if (request == null) {
+            System.err.println("⚠️ Directory page nobody asked for, ignored");
+            return false;
+        }
+        DirectorySync sync = request.sync();
+        boolean listing = page.isReset() || sync.getSince() == 0;
+        boolean replaced = false;
+        total = page.getTotal();
+
+        if (listing && (page.isReset() || sync.getCursor() == 0)) {
+            if (page.isReset()) {
+                System.out.println("📇 User cache is out of date, reloading");
+            }
+            users.clear();
+            epoch = page.getEpoch();
+            syncedVersion = page.getVersion();
+            replaced = true;
+        }
+        for (String username : page.getDeleted()) {
+            replaced |= users.remove(username) != null;
+        }
+        for (User user : page.getUsers()) {
+            users.put(user.getUsername(), user);
+        }
+
+        if (listing) {
+            listingRequested = false;
+            listCursor = page.getNextCursor();
+            if (loadAll && page.hasMore()) {
+                listingRequested = true;
+                followUp = new DirectorySync(epoch, 0, listCursor, PAGE_SIZE);
+            }
+        } else {
+            if (sync.getCursor() == 0) {
+                chainVersion = page.getVersion();
+            }
+            if (page.hasMore()) {
+                followUp = new DirectorySync(epoch, sync.getSince(), page.getNextCursor(), PAGE_SIZE);
+            } else {
+                syncedVersion = chainVersion;
+            }
+        }
+        if (followUp != null) {
+            outstanding.add(new Request(followUp, false));
+        }
+
+        if (!request.start()) {
+            return replaced;
+        }
+        if (snapshotsExpected > 0) {
+            snapshotsExpected--;
+        }
+        version = page.getPresenceVersion();
+        return replayPending();
+    }
+
+    /** The next page the last one asked for, to send right away; null if none. */
+    synchronized DirectorySync takeFollowUp() {
+        DirectorySync next = followUp;
+        followUp = null;
+        return next;
+    }
+
+    /** Registered users on the server, as of the last page; 0 before the first. */
+    synchronized int getTotal() {
+        return total;
+    }
+
+    synchronized List<User> getUsers() {
+        return new ArrayList<>(users.values());
+    }
+
+    /** What to save for the next session, or null if there is nothing worth keeping. */
+    synchronized DirectoryCache.State exportState() {
+        if (epoch == 0) {
+            return null;
+        }
+        return new DirectoryCache.State(epoch, syncedVersion, listCursor, new ArrayList<>(users.values()));
+    }
+
+    /** Start from a saved state. Call before the first sync. */
+    synchronized void restore(DirectoryCache.State state) {
+        users.clear();
+        for (User user : state.users()) {
+            users.put(user.getUsername(), user);
+        }
+        epoch = state.epoch();
+        syncedVersion = state.syncedVersion();
+        listCursor = state.listCursor();
+    }
+
+    synchronized void clear() {
+        users.clear();
+        pending.clear();
+        version = -1;
+        snapshotsExpected = 0;
+        resyncsNeeded = 0;
+        outstanding.clear();
+        epoch = 0;
+        syncedVersion = 0;
+        chainVersion = 0;
+        listCursor = -1;
+        listingRequested = false;
+        loadAll = false;
+        total = 0;
+        followUp = null;
+    }
+}
@@ -0,0 +1,81 @@
+package com.chatapp.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+
+/**
+ * The session token from the last login (binary protocol v7), kept on disk so the
+ * app can log straight in after a restart. Logging out deletes it.
+ *
+ * One file per server in ~/.chathub, next to the directory cache: the username on the
+ * first line, the token on the second. Whoever can read it can log in as that user
+ * until the token expires, like a browser cookie.
+ */
+class SessionStore {
+
+    record Session(String username, String token) {
+    }
+
+    private final File file;
+
+    SessionStore(String host, int port) {
+        File dir = new File(System.getProperty("user.home"), ".chathub");
+        this.file = new File(dir, "session-" + host.replaceAll("[^A-Za-z0-9.-]", "_") + "-" + port);
+    }
+
+    /** @return null if there is no saved session */
+    Session load() {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            return lines.size() >= 2 ? new Session(lines.get(0), lines.get(1)) : null;
+        } catch (IOException e) {
+            System.err.println("⚠️ Ignoring saved session: " + e.getMessage());
+            return null;
+        }
+    }
+
+    void save(Session session) {
+        File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            System.err.println("⚠️ Cannot create " + dir);
+            return;
+        }
+        File tmp = new File(dir, file.getName() + ".tmp");
+        try {
+            createOwnerOnly(tmp.toPath());
+            Files.writeString(tmp.toPath(), session.username() + "\n" + session.token() + "\n", StandardCharsets.UTF_8);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("⚠️ Failed to save session: " + e.getMessage());
+            tmp.delete();
+        }
+    }
+
+    // Restricted before the token is written, so it is never readable by others
+    private static void createOwnerOnly(Path path) throws IOException {
+        Files.deleteIfExists(path); // A leftover from a failed save may have other permissions
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            File created = Files.createFile(path).toFile();
+            created.setReadable(false, false);
+            created.setReadable(true, true);
+            created.setWritable(false, false);
+            created.setWritable(true, true);
+        }
+    }
+
+    void clear() {
+        file.delete();
+    }
+}
@@ -76,10 +76,29 @@ public class ChatController {
     private Circle chatHeaderStatusIndicator;
 
     private ChatClient chatClient;
-    private Timer typingTimer;
-    private boolean isTyping = false;
+    // Conversation we last told we are typing in, null when we are not
+    private String typingTarget;
+    private long typingSentAt;
+    // Typing counts as stopped after this long without a keystroke
+    private final PauseTransition typingIdle = new PauseTransition(Duration.seconds(3));
+    // Re-announce typing this often while it lasts; the server forwards no more than that
+    private static final long TYPING_REFRESH_MS = 2000;
+    // The peer's indicator hides when this runs out without a refresh
+    private final PauseTransition typingShown = new PauseTransition(Duration.seconds(5));
+    private String typingShownFor;
     private String selectedUser = null;
+    // Everyone but us, unfiltered; usersList shows the part that matches the search
+    private final List<User> allUsers = new ArrayList<>();
+    private boolean updatingUsers = false; // Selection events from refreshing the list are not clicks
     private static final int MAX_MESSAGES_DISPLAYED = 100;
+    // Fetch the next page of users once the list is scrolled this close to its end
+    private static final int USER_PREFETCH_ROWS = 30;
+    // Only rows that can be on screen are worth a fade-in
+    private static final int ANIMATED_ROWS = 20;
+    // Users shown by list cells, with how many cells show them (briefly two while scrolling)
+    private final Map<String, Integer> visibleRows = new HashMap<>();
+    // Presence subscription goes out once scrolling or switching conversations settles
+    private final PauseTransition interestUpdate = new PauseTransition(Duration.millis(250));
     private MessageDAO messageDAO = new MessageDAO();
 
     // Store messages per user - Map<username, List of messages with that user>
@@ -104,6 +123,7 @@ public class ChatController {
 
         // Setup user list
         setupUsersList();
+        interestUpdate.setOnFinished(e -> chatClient.setPresenceInterest(presenceInterest()));
 
         // Setup message input
         setupMessageInput();
@@ -150,6 +170,16 @@ public class ChatController {
                 });
             }
 
+            @Override
+            public void onUsersPresenceChanged(List<User> users) {
+                applyPresenceChanges(users); // Already on the FX thread
+            }
+
+            @Override
+            public void onUsersLoaded(List<User> users) {
+                applyPresenceChanges(users); // Already on the FX thread
+            }
+
             @Override
             public void onUserJoined(String username) {
                 System.out.println("🎯 User joined: " + username);
@@ -207,6 +237,7 @@ public class ChatController {
             private final Label nameLabel = new Label();
             private final Label statusLabel = new Label();
             private final Circle statusIndicator = new Circle(4);
+            private String shownUser;
 
             {
                 // Setup avatar
@@ -232,10 +263,18 @@ public class ChatController {
             @Override
             protected void updateItem(User user, boolean empty) {
                 super.updateItem(user, empty);
+                String username = empty || user == null ? null : user.getUsername();
+                if (!Objects.equals(username, shownUser)) {
+                    trackVisibleRow(shownUser, username);
+                    shownUser = username;
+                }
 
                 if (empty || user == null) {
                     setGraphic(null);
                 } else {
+                    if (getIndex() >= getListView().getItems().size() - USER_PREFETCH_ROWS) {
+                        chatClient.requestMoreUsers(); // No-op once everyone is loaded
+                    }
                     nameLabel.setText(user.getUsername());
                     avatarLabel.setText(getInitials(user.getUsername()));
                     avatarPane.setStyle("-fx-background-color: " + generateAvatarColor(user.getUsername()) + ";");
@@ -269,6 +308,12 @@ public class ChatController {
 
         // Handle user selection - same as before
         usersList.getSelectionModel().selectedItemProperty().addListener((obs, oldVal, newVal) -> {
+            if (updatingUsers) {
+                return;
+            }
+            interestUpdate.playFromStart();
+            stopTyping();
+            hideTypingIndicator();
             if (newVal != null) {
                 selectedUser = newVal.getUsername();
                 messageInput.setPromptText("Message to " + selectedUser + "...");
@@ -483,64 +528,57 @@ public class ChatController {
 
     private void setupMessageInput() {
         // Auto-resize text area
-        messageInput.textProperty().addListener((obs, oldText, newText) -> {
-            // Send typing indicator
-            if (!newText.isEmpty() && !isTyping) {
-                isTyping = true;
-                chatClient.sendTypingIndicator();
-
-                // Reset typing after 3 seconds
-                if (typingTimer != null) {
-                    typingTimer.cancel();
-                }
-                typingTimer = new Timer();
-                typingTimer.schedule(new TimerTask() {
-                    @Override
-                    public void run() {
-                        isTyping = false;
-                    }
-                }, 3000);
-            }
-        });
+        typingIdle.setOnFinished(e -> stopTyping());
+        typingShown.setOnFinished(e -> hideTypingIndicator());
+        messageInput.textProperty().addListener((obs, oldText, newText) -> onInputChanged(newText));
 
         // Limit height
         messageInput.setPrefRowCount(1);
         messageInput.setWrapText(true);
     }
 
-    private void setupSearch() {
-        searchField.textProperty().addListener((obs, oldVal, newVal) -> {
-            if (newVal == null || newVal.isEmpty()) {
-                // Show all users
-                updateUsersList(usersList.getItems());
-            } else {
-                // Filter users
-                List<User> allUsers = new ArrayList<>(usersList.getItems());
-                List<User> filtered = allUsers.stream()
-                        .filter(user -> user.getUsername().toLowerCase().contains(newVal.toLowerCase()))
-                        .collect(Collectors.toList());
-
-                usersList.getItems().setAll(filtered);
-
-                // Update count
-                long onlineCount = filtered.stream()
-                        .filter(u -> u.getStatus() == User.Status.ONLINE)
-                        .count();
+    // Runs on the FX thread, like the timers above: no thread per burst of typing
+    private void onInputChanged(String text) {
+        if (text.isEmpty() || selectedUser == null) {
+            stopTyping();
+            return;
+        }
+        if (!selectedUser.equals(typingTarget)) {
+            stopTyping(); // Switched conversations mid-sentence
+        }
+        long now = System.currentTimeMillis();
+        if (typingTarget == null || now - typingSentAt >= TYPING_REFRESH_MS) {
+            chatClient.sendTypingIndicator(selectedUser, true);
+            typingTarget = selectedUser;
+            typingSentAt = now;
+        }
+        typingIdle.playFromStart();
+    }
 
-                onlineCountLabel.setText("(" + onlineCount + ")");
+    private void stopTyping() {
+        typingIdle.stop();
+        if (typingTarget != null) {
+            chatClient.sendTypingIndicator(typingTarget, false);
+            typingTarget = null;
+        }
+    }
 
-                if (filtered.isEmpty()) {
-                    // Show "no results" message
-                    Platform.runLater(() -> {
-                        if (usersList.getItems().isEmpty()) {
-                            // You could add an empty state label here
-                        }
-                    });
-                }
+    private void setupSearch() {
+        searchField.textProperty().addListener((obs, oldVal, newVal) -> {
+            if (newVal != null && !newVal.isEmpty()) {
+                chatClient.requestAllUsers(); // Matches may not be loaded yet
             }
+            showUsers(allUsers.stream().filter(this::matchesSearch).collect(Collectors.toList()));
+            updateUserCounts();
         });
     }
 
+    private boolean matchesSearch(User user) {
+        String query = searchField.getText();
+        return query == null || query.isEmpty()
+                || user.getUsername().toLowerCase().contains(query.toLowerCase());
+    }
+
     @FXML
     private void handleSendMessage() {
         String text = messageInput.getText().trim();
@@ -888,7 +926,7 @@ public class ChatController {
 
         alert.showAndWait().ifPresent(response -> {
             if (response == ButtonType.OK) {
-                chatClient.disconnect();
+                chatClient.logout();
 
                 // Go back to login screen
                 try {
@@ -932,7 +970,13 @@ public class ChatController {
                     addSystemMessage(message.getContent());
                     break;
                 case TYPING:
-                    showTypingIndicator(message.getSender());
+                    if (Message.TYPING_STOPPED.equals(message.getContent())) {
+                        if (message.getSender().equals(typingShownFor)) {
+                            hideTypingIndicator();
+                        }
+                    } else {
+                        showTypingIndicator(message.getSender());
+                    }
                     break;
             }
         });
@@ -1145,29 +1189,16 @@ public class ChatController {
 
     private void updateUsersList(List<User> users) {
         // Filter out current user from the list
-        List<User> otherUsers = users.stream()
+        allUsers.clear();
+        users.stream()
                 .filter(u -> !u.getUsername().equals(chatClient.getUsername()))
-                .collect(Collectors.toList());
+                .forEach(allUsers::add);
 
-        usersList.getItems().setAll(otherUsers);
-
-        // Count only ONLINE users
-        long onlineCount = otherUsers.stream()
-                .filter(u -> u.getStatus() == User.Status.ONLINE)
-                .count();
-
-        onlineCountLabel.setText("(" + onlineCount + ")");
-
-        if (onlineUsersCountLabel != null) {
-            if (otherUsers.isEmpty()) {
-                onlineUsersCountLabel.setText("No other users yet");
-            } else {
-                onlineUsersCountLabel.setText(onlineCount + " / " + otherUsers.size() + " users online");
-            }
-        }
+        showUsers(allUsers.stream().filter(this::matchesSearch).collect(Collectors.toList()));
+        updateUserCounts();
 
         // Animate list update
-        for (int i = 0; i < usersList.getItems().size(); i++) {
+        for (int i = 0; i < Math.min(usersList.getItems().size(), ANIMATED_ROWS); i++) {
             final int index = i;
             Platform.runLater(() -> {
                 javafx.scene.Node cell = usersList.lookup(".list-cell:nth-child(" + (index + 1) + ")");
@@ -1182,6 +1213,150 @@ public class ChatController {
         }
     }
 
+    /**
+     * Some users' status changed, or another page of users was loaded: update just
+     * those rows instead of rebuilding the list
+     */
+    private void applyPresenceChanges(List<User> changed) {
+        List<User> shown = usersList.getItems();
+        boolean selectedChanged = false;
+        // Positions looked up once per batch, not once per user: the lists can be long
+        Map<String, Integer> allIndex = indexByName(allUsers);
+        Map<String, Integer> shownIndex = indexByName(shown);
+
+        updatingUsers = true;
+        try {
+            for (User user : changed) {
+                if (user.getUsername().equals(chatClient.getUsername())) {
+                    continue;
+                }
+
+                Integer index = allIndex.get(user.getUsername());
+                if (index != null) {
+                    allUsers.set(index, user);
+                } else {
+                    allIndex.put(user.getUsername(), allUsers.size());
+                    allUsers.add(user);
+                }
+
+                Integer shownAt = shownIndex.get(user.getUsername());
+                boolean matches = matchesSearch(user);
+                if (shownAt != null && matches) {
+                    shown.set(shownAt, user);
+                } else if (shownAt != null) {
+                    shown.remove((int) shownAt);
+                    shownIndex = indexByName(shown); // Rows after it moved up
+                } else if (matches) {
+                    shownIndex.put(user.getUsername(), shown.size());
+                    shown.add(user);
+                }
+                selectedChanged |= user.getUsername().equals(selectedUser);
+            }
+        } finally {
+            updatingUsers = false;
+        }
+        restoreSelection();
+        updateUserCounts();
+
+        if (selectedChanged) {
+            updateChatHeader(selectedUser);
+        }
+    }
+
+    private void showUsers(List<User> users) {
+        updatingUsers = true;
+        try {
+            usersList.getItems().setAll(users);
+        } finally {
+            updatingUsers = false;
+        }
+        restoreSelection();
+    }
+
+    // Replacing items drops the selection; put it back without reloading the conversation
+    private void restoreSelection() {
+        if (selectedUser == null) {
+            return;
+        }
+        User selected = usersList.getSelectionModel().getSelectedItem();
+        if (selected != null && selected.getUsername().equals(selectedUser)) {
+            return;
+        }
+        int index = indexOfUser(usersList.getItems(), selectedUser);
+        if (index >= 0) {
+            updatingUsers = true;
+            try {
+                usersList.getSelectionModel().select(index);
+            } finally {
+                updatingUsers = false;
+            }
+        }
+    }
+
+    // A cell stopped showing one user and/or started showing another
+    private void trackVisibleRow(String previous, String username) {
+        if (previous != null) {
+            visibleRows.computeIfPresent(previous, (name, cells) -> cells > 1 ? cells - 1 : null);
+        }
+        if (username != null) {
+            visibleRows.merge(username, 1, Integer::sum);
+        }
+        interestUpdate.playFromStart();
+    }
+
+    // Open conversation first, then the other conversations, then whoever is on screen
+    private List<String> presenceInterest() {
+        Set<String> interest = new LinkedHashSet<>();
+        if (selectedUser != null) {
+            interest.add(selectedUser);
+        }
+        interest.addAll(userMessages.keySet());
+        interest.addAll(visibleRows.keySet());
+        interest.remove(chatClient.getUsername());
+        return new ArrayList<>(interest);
+    }
+
+    private static Map<String, Integer> indexByName(List<User> users) {
+        Map<String, Integer> index = new HashMap<>(users.size() * 2);
+        for (int i = 0; i < users.size(); i++) {
+            index.put(users.get(i).getUsername(), i);
+        }
+        return index;
+    }
+
+    private static int indexOfUser(List<User> users, String username) {
+        for (int i = 0; i < users.size(); i++) {
+            if (users.get(i).getUsername().equals(username)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void updateUserCounts() {
+        // Count only ONLINE users
+        long onlineCount = usersList.getItems().stream()
+                .filter(u -> u.getStatus() == User.Status.ONLINE)
+                .count();
+
+        onlineCountLabel.setText("(" + onlineCount + ")");
+
+        if (onlineUsersCountLabel != null) {
+            long totalOnline = allUsers.stream()
+                    .filter(u -> u.getStatus() == User.Status.ONLINE)
+                    .count();
+            int notLoaded = chatClient.getUserTotal() - 1 - allUsers.size(); // Total includes us
+            if (allUsers.isEmpty()) {
+                onlineUsersCountLabel.setText("No other users yet");
+            } else if (notLoaded > 0) {
+                onlineUsersCountLabel.setText(totalOnline + " online, " + allUsers.size() + " of "
+                        + (allUsers.size() + notLoaded) + " users loaded");
+            } else {
+                onlineUsersCountLabel.setText(totalOnline + " / " + allUsers.size() + " users online");
+            }
+        }
+    }
+
     /**
      * Update the chat header with selected user info
      */
@@ -1245,6 +1420,9 @@ public class ChatController {
      * Store a message node for a specific user
      */
     private void storeMessageForUser(String otherUsername, javafx.scene.Node messageNode) {
+        if (!userMessages.containsKey(otherUsername)) {
+            interestUpdate.playFromStart(); // A new conversation partner
+        }
         userMessages.computeIfAbsent(otherUsername, k -> new java.util.ArrayList<>())
                 .add(messageNode);
 
@@ -1256,15 +1434,25 @@ public class ChatController {
     }
 
     private void showTypingIndicator(String username) {
+        if (!username.equals(selectedUser)) {
+            return; // Typing in a conversation that is not open
+        }
+        for (Node child : typingIndicatorBox.getChildren()) {
+            if (child instanceof Label label) {
+                label.setText(username + " is typing...");
+            }
+        }
+        typingShownFor = username;
         typingIndicatorBox.setVisible(true);
         typingIndicatorBox.setManaged(true);
+        typingShown.playFromStart();
+    }
 
-        // Hide after 3 seconds
-        Timeline timeline = new Timeline(new KeyFrame(Duration.seconds(3), e -> {
-            typingIndicatorBox.setVisible(false);
-            typingIndicatorBox.setManaged(false);
-        }));
-        timeline.play();
+    private void hideTypingIndicator() {
+        typingShown.stop();
+        typingShownFor = null;
+        typingIndicatorBox.setVisible(false);
+        typingIndicatorBox.setManaged(false);
     }
 
     private void animateMessage(javafx.scene.Node message) {
@@ -58,6 +58,37 @@ public class LoginController {
 
         // Play entrance animation
         playEntranceAnimation();
+
+        // Log straight back in if the last session on this machine is still valid
+        if (chatClient.hasSavedSession(SERVER_HOST, SERVER_PORT)) {
+            resumeSavedSession();
+        }
+    }
+
+    private void resumeSavedSession() {
+        setInputsDisabled(true);
+        showSuccess("Resuming your last session...", errorLabel);
+
+        new Thread(() -> {
+            boolean resumed = false;
+            try {
+                resumed = chatClient.connect(SERVER_HOST, SERVER_PORT) && chatClient.resumeSession();
+            } catch (Exception e) {
+                System.err.println("⚠️ Could not resume session: " + e.getMessage());
+                chatClient.disconnect();
+            }
+
+            boolean success = resumed;
+            Platform.runLater(() -> {
+                if (success) {
+                    fadeOutAndLoadChat();
+                } else {
+                    // Expired, revoked or server unreachable: ask for the password as usual
+                    clearErrors();
+                    setInputsDisabled(false);
+                }
+            });
+        }).start();
     }
 
 
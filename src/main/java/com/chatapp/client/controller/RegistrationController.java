@@ -36,6 +36,9 @@ public class RegistrationController {
     private final String SERVER_HOST = ServerConfig.getServerHost();
     private final int SERVER_PORT = ServerConfig.getServerPort();
 
+    // Ask the server whether the username is free once typing pauses this long
+    private final PauseTransition usernameCheck = new PauseTransition(Duration.millis(400));
+
     // Email validation pattern
     private static final Pattern EMAIL_PATTERN =
             Pattern.compile("^[A-Za-z0-9+_.-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}$");
@@ -97,8 +100,8 @@ public class RegistrationController {
         // Attempt connection and registration
         new Thread(() -> {
             try {
-                // Connect to server
-                boolean connected = chatClient.connect(SERVER_HOST, SERVER_PORT);
+                // Connect to server, unless the username check already has
+                boolean connected = ensureConnected();
 
                 if (!connected) {
                     Platform.runLater(() -> {
@@ -130,6 +133,7 @@ public class RegistrationController {
                 });
 
             } catch (Exception e) {
+                chatClient.disconnect(); // Start over with a fresh connection next time
                 Platform.runLater(() -> {
                     showMessage("❌ Registration failed: " + e.getMessage(),
                             MessageType.ERROR);
@@ -142,6 +146,10 @@ public class RegistrationController {
 
     @FXML
     private void handleBackToLogin() {
+        usernameCheck.stop();
+        if (chatClient.isConnected()) {
+            chatClient.disconnect(); // Only opened for username checks
+        }
         try {
             Stage stage = (Stage) usernameField.getScene().getWindow();
 
@@ -279,8 +287,11 @@ public class RegistrationController {
         usernameField.textProperty().addListener((obs, oldVal, newVal) -> {
             if (!newVal.isEmpty() && !newVal.matches("[a-zA-Z0-9_]*")) {
                 usernameField.setText(oldVal);
+                return;
             }
+            usernameCheck.playFromStart();
         });
+        usernameCheck.setOnFinished(e -> checkUsernameAvailable(usernameField.getText().trim()));
 
         // Real-time password match indicator
         confirmPasswordField.textProperty().addListener((obs, oldVal, newVal) -> {
@@ -296,6 +307,41 @@ public class RegistrationController {
         });
     }
 
+    // One connection for username checks and the registration itself
+    private synchronized boolean ensureConnected() {
+        return chatClient.isConnected() || chatClient.connect(SERVER_HOST, SERVER_PORT);
+    }
+
+    // Answered from the server's memory, no database; silent if the server cannot tell
+    private void checkUsernameAvailable(String username) {
+        if (username.length() < 3 || username.length() > 20) {
+            return;
+        }
+        new Thread(() -> {
+            Boolean available;
+            try {
+                boolean connected = ensureConnected();
+                available = connected ? chatClient.isUsernameAvailable(username) : null;
+            } catch (IOException e) {
+                System.err.println("⚠️ Username check failed: " + e.getMessage());
+                chatClient.disconnect();
+                available = null;
+            }
+
+            Boolean result = available;
+            Platform.runLater(() -> {
+                if (result == null || !username.equals(usernameField.getText().trim())) {
+                    return; // Unknown, or the name has changed since
+                }
+                if (result) {
+                    showMessage("✅ " + username + " is available", MessageType.SUCCESS);
+                } else {
+                    showMessage("❌ " + username + " is taken", MessageType.ERROR);
+                }
+            });
+        }).start();
+    }
+
     private void loadChatScene() {
         try {
             Stage stage = (Stage) usernameField.getScene().getWindow();
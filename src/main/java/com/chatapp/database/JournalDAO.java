@@ -0,0 +1,108 @@
+package com.chatapp.database;
+
+import com.chatapp.model.Message;
+
+import java.sql.*;
+import java.util.List;
+
+/**
+ * Progress of each server's local message journal. A journal numbers its entries;
+ * journal_progress holds the highest number already in chat_history and
+ * offline_messages. Entries are applied in the same transaction that moves it, so a
+ * journal replayed after a crash skips exactly what was committed before.
+ */
+public class JournalDAO {
+
+    // Create the table if this database predates it
+    public boolean createTable() {
+        String sql = "CREATE TABLE IF NOT EXISTS journal_progress (" +
+                "journal_id VARCHAR(64) PRIMARY KEY, " +
+                "applied_seq BIGINT NOT NULL)";
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             Statement stmt = conn.createStatement()) {
+
+            stmt.executeUpdate(sql);
+            return true;
+
+        } catch (SQLException e) {
+            System.err.println("❌ Error creating journal table: " + e.getMessage());
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the highest entry of the journal already applied, 0 for a new journal,
+     *         or -1 on error
+     */
+    public long getAppliedSeq(String journalId) {
+        String insert = "INSERT IGNORE INTO journal_progress (journal_id, applied_seq) VALUES (?, 0)";
+        String select = "SELECT applied_seq FROM journal_progress WHERE journal_id = ?";
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement insertStmt = conn.prepareStatement(insert);
+             PreparedStatement selectStmt = conn.prepareStatement(select)) {
+
+            insertStmt.setString(1, journalId);
+            insertStmt.executeUpdate();
+
+            selectStmt.setString(1, journalId);
+            try (ResultSet rs = selectStmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getLong("applied_seq");
+                }
+            }
+
+        } catch (SQLException e) {
+            System.err.println("❌ Error reading journal progress: " + e.getMessage());
+        }
+
+        return -1;
+    }
+
+    /**
+     * Write a run of journal entries and move the journal from appliedSeq to lastSeq,
+     * all in one transaction.
+     *
+     * @return false, with nothing written, on error or if the journal is no longer at
+     *         appliedSeq (another process applied it)
+     */
+    public boolean apply(String journalId, long appliedSeq, long lastSeq,
+                         List<Message> history, List<Message> offline) {
+        String advance = "UPDATE journal_progress SET applied_seq = ? WHERE journal_id = ? AND applied_seq = ?";
+
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(advance)) {
+                stmt.setLong(1, lastSeq);
+                stmt.setString(2, journalId);
+                stmt.setLong(3, appliedSeq);
+                if (stmt.executeUpdate() == 0) {
+                    conn.rollback();
+                    System.err.println("❌ Journal " + journalId + " is no longer at entry " + appliedSeq);
+                    return false;
+                }
+                if (!history.isEmpty()) {
+                    MessageDAO.insertHistory(conn, history);
+                }
+                if (!offline.isEmpty()) {
+                    MessageDAO.insertOffline(conn, offline);
+                }
+                conn.commit();
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit); // Back to the pool as we found it
+            }
+
+        } catch (SQLException e) {
+            System.err.println("❌ Error applying journal entries: " + e.getMessage());
+        }
+
+        return false;
+    }
+}
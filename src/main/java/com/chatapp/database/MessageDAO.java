@@ -9,35 +9,41 @@ import java.util.List;
 
 public class MessageDAO {
 
+    private static final String INSERT_HISTORY =
+            "INSERT INTO chat_history (sender_username, receiver_username, content, message_type, file_name) " +
+            "VALUES (?, ?, ?, ?, ?)";
+    private static final String INSERT_OFFLINE =
+            "INSERT INTO offline_messages (sender_username, receiver_username, content, message_type, file_name, file_data) " +
+            "VALUES (?, ?, ?, ?, ?, ?)";
+
     /**
-     * Save message to chat history
+     * Whether a message is kept in chat history: not system, typing or join/leave
+     * notices, and not broadcast text.
      */
-    public boolean saveToChatHistory(Message message) {
+    public static boolean belongsInHistory(Message message) {
         if (message.getType() == Message.MessageType.SYSTEM ||
                 message.getType() == Message.MessageType.TYPING ||
                 message.getType() == Message.MessageType.USER_JOIN ||
                 message.getType() == Message.MessageType.USER_LEAVE) {
-            // Don't save these to history
-            return true;
+            return false;
         }
-        if (message.getType() == Message.MessageType.TEXT &&
-                (message.getReceiver() == null || message.getReceiver().isEmpty())) {
-            // Don't save broadcast messages
+        return message.getType() != Message.MessageType.TEXT ||
+                (message.getReceiver() != null && !message.getReceiver().isEmpty());
+    }
+
+    /**
+     * Save message to chat history
+     */
+    public boolean saveToChatHistory(Message message) {
+        if (!belongsInHistory(message)) {
+            // Don't save these to history
             return true;
         }
 
-        String sql = "INSERT INTO chat_history (sender_username, receiver_username, content, message_type, file_name) " +
-                "VALUES (?, ?, ?, ?, ?)";
-
         try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, message.getSender());
-            stmt.setString(2, message.getReceiver());
-            stmt.setString(3, message.getContent());
-            stmt.setString(4, message.getType().name());
-            stmt.setString(5, message.getFileName());
+             PreparedStatement stmt = conn.prepareStatement(INSERT_HISTORY)) {
 
+            bindHistory(stmt, message);
             return stmt.executeUpdate() > 0;
 
         } catch (SQLException e) {
@@ -48,6 +54,55 @@ public class MessageDAO {
         return false;
     }
 
+    /**
+     * Save messages to chat history as one JDBC batch in one transaction: all of them
+     * or none. With rewriteBatchedStatements the driver sends the batch as multi-row
+     * INSERTs, a round trip or two instead of one per message. Messages that do not
+     * belong in history are skipped.
+     */
+    public boolean saveToChatHistory(List<Message> messages) {
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                insertHistory(conn, messages);
+                conn.commit();
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit); // Back to the pool as we found it
+            }
+
+        } catch (SQLException e) {
+            System.err.println("❌ Error saving " + messages.size() + " messages to chat history: " + e.getMessage());
+        }
+
+        return false;
+    }
+
+    // One JDBC batch on the caller's connection and transaction
+    static void insertHistory(Connection conn, List<Message> messages) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_HISTORY)) {
+            for (Message message : messages) {
+                if (belongsInHistory(message)) {
+                    bindHistory(stmt, message);
+                    stmt.addBatch();
+                }
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    private static void bindHistory(PreparedStatement stmt, Message message) throws SQLException {
+        stmt.setString(1, message.getSender());
+        stmt.setString(2, message.getReceiver());
+        stmt.setString(3, message.getContent());
+        stmt.setString(4, message.getType().name());
+        stmt.setString(5, message.getFileName());
+    }
+
     /**
      * Get chat history between two users
      */
@@ -151,19 +206,10 @@ public class MessageDAO {
      * Save offline message
      */
     public boolean saveOfflineMessage(Message message) {
-        String sql = "INSERT INTO offline_messages (sender_username, receiver_username, content, message_type, file_name, file_data) " +
-                "VALUES (?, ?, ?, ?, ?, ?)";
-
         try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, message.getSender());
-            stmt.setString(2, message.getReceiver());
-            stmt.setString(3, message.getContent());
-            stmt.setString(4, message.getType().name());
-            stmt.setString(5, message.getFileName());
-            stmt.setBytes(6, message.getFileData());
+             PreparedStatement stmt = conn.prepareStatement(INSERT_OFFLINE)) {
 
+            bindOffline(stmt, message);
             return stmt.executeUpdate() > 0;
 
         } catch (SQLException e) {
@@ -173,6 +219,26 @@ public class MessageDAO {
         return false;
     }
 
+    // One JDBC batch on the caller's connection and transaction
+    static void insertOffline(Connection conn, List<Message> messages) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_OFFLINE)) {
+            for (Message message : messages) {
+                bindOffline(stmt, message);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    private static void bindOffline(PreparedStatement stmt, Message message) throws SQLException {
+        stmt.setString(1, message.getSender());
+        stmt.setString(2, message.getReceiver());
+        stmt.setString(3, message.getContent());
+        stmt.setString(4, message.getType().name());
+        stmt.setString(5, message.getFileName());
+        stmt.setBytes(6, message.getFileData());
+    }
+
     /**
      * Get offline messages for user
      */
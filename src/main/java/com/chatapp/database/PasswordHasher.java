@@ -0,0 +1,61 @@
+package com.chatapp.database;
+
+import com.chatapp.util.EnvConfig;
+import org.mindrot.jbcrypt.BCrypt;
+
+/**
+ * Password hashing policy: BCrypt at BCRYPT_COST (default 12). Each step of cost
+ * doubles the time a hash takes, and with it what a login costs the server; run
+ * {@link com.chatapp.admin.PasswordCalibration} to pick one for the hardware.
+ *
+ * A BCrypt hash carries its own cost ("$2a$12$..."), so verifying works whatever the
+ * policy was when it was made. Hashes made under another cost are replaced the next
+ * time their owner logs in, see {@link #needsRehash}.
+ */
+public final class PasswordHasher {
+    public static final int MIN_COST = 4;
+    public static final int MAX_COST = 30; // jBCrypt rejects 31
+    public static final int COST = clamp(EnvConfig.getInt("BCRYPT_COST", 12));
+
+    private PasswordHasher() {
+    }
+
+    private static int clamp(int cost) {
+        if (cost < MIN_COST || cost > MAX_COST) {
+            System.err.println("⚠️  BCRYPT_COST " + cost + " out of range, using 12");
+            return 12;
+        }
+        return cost;
+    }
+
+    public static String hash(String password) {
+        return hash(password, COST);
+    }
+
+    public static String hash(String password, int cost) {
+        return BCrypt.hashpw(password, BCrypt.gensalt(cost));
+    }
+
+    public static boolean verify(String password, String hash) {
+        return BCrypt.checkpw(password, hash);
+    }
+
+    /** @return the cost a hash was made with, or -1 if it is not a BCrypt hash */
+    public static int costOf(String hash) {
+        // $2a$12$ + salt and digest
+        if (hash == null || hash.length() < 7 || hash.charAt(0) != '$' || hash.charAt(6) != '$') {
+            return -1;
+        }
+        char tens = hash.charAt(4);
+        char units = hash.charAt(5);
+        if (tens < '0' || tens > '9' || units < '0' || units > '9') {
+            return -1;
+        }
+        return (tens - '0') * 10 + (units - '0');
+    }
+
+    /** True if a hash was made under another policy and should be replaced on login. */
+    public static boolean needsRehash(String hash) {
+        return costOf(hash) != COST;
+    }
+}
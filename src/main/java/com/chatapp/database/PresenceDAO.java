@@ -0,0 +1,175 @@
+package com.chatapp.database;
+
+import com.chatapp.model.User;
+
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Presence lives in its own narrow table instead of users.status, so connects and
+ * disconnects never take row locks on the users table.
+ *
+ * Each row records which server the user is connected to. A server keeps a lease in
+ * presence_leases and renews it while running; rows owned by a server whose lease has
+ * lapsed (crashed, killed) are reset to OFFLINE by {@link #expireLapsedLeases()}.
+ */
+public class PresenceDAO {
+
+    // Rows per multi-row upsert statement
+    private static final int UPSERT_CHUNK = 500;
+
+    /** One user's latest presence, as written by a flush. */
+    public record PresenceRow(String username, User.Status status, LocalDateTime lastSeen) {
+    }
+
+    // Create the tables if this database predates them
+    public boolean createTables() {
+        String presence = "CREATE TABLE IF NOT EXISTS user_presence (" +
+                "username VARCHAR(50) PRIMARY KEY, " +
+                "status VARCHAR(16) NOT NULL, " +
+                "last_seen TIMESTAMP(3) NULL, " +
+                "server_id VARCHAR(64) NULL, " +
+                "INDEX idx_presence_server (server_id))";
+        String leases = "CREATE TABLE IF NOT EXISTS presence_leases (" +
+                "server_id VARCHAR(64) PRIMARY KEY, " +
+                "lease_until TIMESTAMP(3) NOT NULL)";
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             Statement stmt = conn.createStatement()) {
+
+            stmt.executeUpdate(presence);
+            stmt.executeUpdate(leases);
+            return true;
+
+        } catch (SQLException e) {
+            System.err.println("❌ Error creating presence tables: " + e.getMessage());
+        }
+
+        return false;
+    }
+
+    /**
+     * Write the latest state of each user, in as few round trips as possible.
+     * Online rows are tagged with serverId; offline rows release ownership.
+     */
+    public boolean upsert(List<PresenceRow> rows, String serverId) {
+        if (rows.isEmpty()) {
+            return true;
+        }
+
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            for (int from = 0; from < rows.size(); from += UPSERT_CHUNK) {
+                List<PresenceRow> chunk = rows.subList(from, Math.min(rows.size(), from + UPSERT_CHUNK));
+                StringBuilder sql = new StringBuilder(
+                        "INSERT INTO user_presence (username, status, last_seen, server_id) VALUES ");
+                for (int i = 0; i < chunk.size(); i++) {
+                    sql.append(i == 0 ? "(?, ?, ?, ?)" : ", (?, ?, ?, ?)");
+                }
+                sql.append(" ON DUPLICATE KEY UPDATE status = VALUES(status), " +
+                        "last_seen = VALUES(last_seen), server_id = VALUES(server_id)");
+
+                try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+                    int p = 1;
+                    for (PresenceRow row : chunk) {
+                        stmt.setString(p++, row.username());
+                        stmt.setString(p++, row.status().name());
+                        stmt.setTimestamp(p++, row.lastSeen() != null ? Timestamp.valueOf(row.lastSeen()) : null);
+                        stmt.setString(p++, row.status() == User.Status.OFFLINE ? null : serverId);
+                    }
+                    stmt.executeUpdate();
+                }
+            }
+            return true;
+
+        } catch (SQLException e) {
+            System.err.println("❌ Error writing presence: " + e.getMessage());
+        }
+
+        return false;
+    }
+
+    /** Claim or extend this server's lease, timed by the database clock. */
+    public boolean renewLease(String serverId, long leaseSeconds) {
+        String sql = "INSERT INTO presence_leases (server_id, lease_until) " +
+                "VALUES (?, NOW(3) + INTERVAL ? SECOND) " +
+                "ON DUPLICATE KEY UPDATE lease_until = VALUES(lease_until)";
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, serverId);
+            stmt.setLong(2, leaseSeconds);
+            return stmt.executeUpdate() > 0;
+
+        } catch (SQLException e) {
+            System.err.println("❌ Error renewing presence lease: " + e.getMessage());
+        }
+
+        return false;
+    }
+
+    public boolean releaseLease(String serverId) {
+        String sql = "DELETE FROM presence_leases WHERE server_id = ?";
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, serverId);
+            return stmt.executeUpdate() > 0;
+
+        } catch (SQLException e) {
+            System.err.println("❌ Error releasing presence lease: " + e.getMessage());
+        }
+
+        return false;
+    }
+
+    /**
+     * Set users OFFLINE whose server no longer holds a lease, and forget the lapsed
+     * leases.
+     *
+     * @return users reset, or -1 on error
+     */
+    public int expireLapsedLeases() {
+        String reset = "UPDATE user_presence SET status = 'OFFLINE', server_id = NULL " +
+                "WHERE status <> 'OFFLINE' AND (server_id IS NULL OR server_id NOT IN " +
+                "(SELECT server_id FROM presence_leases WHERE lease_until > NOW(3)))";
+        String forget = "DELETE FROM presence_leases WHERE lease_until <= NOW(3)";
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             Statement stmt = conn.createStatement()) {
+
+            int rows = stmt.executeUpdate(reset);
+            stmt.executeUpdate(forget);
+            return rows;
+
+        } catch (SQLException e) {
+            System.err.println("❌ Error expiring presence leases: " + e.getMessage());
+        }
+
+        return -1;
+    }
+
+    /** Last time each user was seen, for users that have a presence row. */
+    public Map<String, LocalDateTime> getLastSeen() {
+        Map<String, LocalDateTime> lastSeen = new HashMap<>();
+        String sql = "SELECT username, last_seen FROM user_presence WHERE last_seen IS NOT NULL";
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+
+            while (rs.next()) {
+                lastSeen.put(rs.getString("username"), rs.getTimestamp("last_seen").toLocalDateTime());
+            }
+
+        } catch (SQLException e) {
+            System.err.println("❌ Error fetching last seen: " + e.getMessage());
+        }
+
+        return lastSeen;
+    }
+}
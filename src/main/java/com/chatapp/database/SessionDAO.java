@@ -0,0 +1,75 @@
+package com.chatapp.database;
+
+import java.sql.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Session tokens themselves are never stored; they carry their own signature. Only
+ * revocations are: a session token issued to a user before their revoked_at is no
+ * longer accepted.
+ */
+public class SessionDAO {
+
+    // Create the table if this database predates it
+    public boolean createTable() {
+        String sql = "CREATE TABLE IF NOT EXISTS session_revocations (" +
+                "username VARCHAR(50) PRIMARY KEY, " +
+                "revoked_at TIMESTAMP(3) NOT NULL)";
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             Statement stmt = conn.createStatement()) {
+
+            stmt.executeUpdate(sql);
+            return true;
+
+        } catch (SQLException e) {
+            System.err.println("❌ Error creating session table: " + e.getMessage());
+        }
+
+        return false;
+    }
+
+    /** Invalidate every session token issued to a user so far. */
+    public boolean revoke(String username) {
+        String sql = "INSERT INTO session_revocations (username, revoked_at) VALUES (?, ?) " +
+                "ON DUPLICATE KEY UPDATE revoked_at = VALUES(revoked_at)";
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, username);
+            stmt.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
+            return stmt.executeUpdate() > 0;
+
+        } catch (SQLException e) {
+            System.err.println("❌ Error revoking sessions: " + e.getMessage());
+        }
+
+        return false;
+    }
+
+    /**
+     * @return username -> revocation time in epoch millis, or null if the table could
+     *         not be read (as opposed to empty: nothing revoked)
+     */
+    public Map<String, Long> getRevocations() {
+        Map<String, Long> revocations = new HashMap<>();
+        String sql = "SELECT username, revoked_at FROM session_revocations";
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+
+            while (rs.next()) {
+                revocations.put(rs.getString("username"), rs.getTimestamp("revoked_at").getTime());
+            }
+            return revocations;
+
+        } catch (SQLException e) {
+            System.err.println("❌ Error loading session revocations: " + e.getMessage());
+        }
+
+        return null;
+    }
+}
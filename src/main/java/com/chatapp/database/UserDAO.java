@@ -1,7 +1,6 @@
 package com.chatapp.database;
 
 import com.chatapp.model.User;
-import org.mindrot.jbcrypt.BCrypt;
 
 import java.sql.*;
 import java.time.LocalDateTime;
@@ -18,7 +17,7 @@ public class UserDAO {
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
 
-            String hashedPassword = BCrypt.hashpw(password, BCrypt.gensalt(12));
+            String hashedPassword = PasswordHasher.hash(password);
 
 
             String avatarColor = generateAvatarColor(username);
@@ -47,39 +46,60 @@ public class UserDAO {
 
     // Authenticate user
     public User authenticateUser(String username, String password) {
-        String sql = "SELECT * FROM users WHERE username = ?";
+        String sql = "SELECT username, password_hash, email, status FROM users WHERE username = ?";
+        User user = null;
 
         try (Connection conn = DatabaseConfig.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setString(1, username);
-            ResultSet rs = stmt.executeQuery();
-
-            if (rs.next()) {
-                String storedHash = rs.getString("password_hash");
-
-                // Verify password with BCrypt
-                if (BCrypt.checkpw(password, storedHash)) {
-                    User user = new User(
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    user = new User(
                             rs.getString("username"),
                             rs.getString("password_hash"),
                             rs.getString("email")
                     );
-
-
                     user.setStatus(User.Status.valueOf(rs.getString("status")));
-
-                    System.out.println("✅ User authenticated: " + username);
-                    return user;
                 }
             }
 
         } catch (SQLException e) {
             System.err.println("❌ Authentication error: " + e.getMessage());
             e.printStackTrace();
+            return null;
         }
 
-        return null;
+        // BCrypt only once the connection is back in the pool: it takes far longer than the query
+        if (user == null || !PasswordHasher.verify(password, user.getPassword())) {
+            return null;
+        }
+        if (PasswordHasher.needsRehash(user.getPassword())) {
+            rehash(username, user.getPassword(), password);
+        }
+
+        System.out.println("✅ User authenticated: " + username);
+        return user;
+    }
+
+    // The only moment we have the plain password: bring the hash to the current policy.
+    // Unless another login got there first; failing here does not fail the login.
+    private void rehash(String username, String oldHash, String password) {
+        String sql = "UPDATE users SET password_hash = ? WHERE username = ? AND password_hash = ?";
+        String newHash = PasswordHasher.hash(password); // Before borrowing a connection
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, newHash);
+            stmt.setString(2, username);
+            stmt.setString(3, oldHash);
+            if (stmt.executeUpdate() > 0) {
+                System.out.println("🔐 Rehashed password for " + username + " (cost "
+                        + PasswordHasher.costOf(oldHash) + " → " + PasswordHasher.COST + ")");
+            }
+        } catch (SQLException e) {
+            System.err.println("❌ Error rehashing password: " + e.getMessage());
+        }
     }
 
     // Update user status
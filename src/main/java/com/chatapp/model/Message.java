@@ -11,6 +11,9 @@ public class Message implements Serializable {
         TEXT, FILE, SYSTEM, USER_JOIN, USER_LEAVE, TYPING, PRIVATE
     }
 
+    // Content of a TYPING message when the sender stopped; empty while they type
+    public static final String TYPING_STOPPED = "stopped";
+
     private String messageId;
     private String sender;
     private String receiver; // null for broadcast, username for private
@@ -102,6 +105,18 @@ public class Message implements Serializable {
         this.type = type;
     }
 
+    public void setMessageId(String messageId) {
+        this.messageId = messageId;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public void setFileData(byte[] fileData) {
+        this.fileData = fileData;
+    }
+
     public String getFormattedTimestamp() {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm");
         return timestamp.format(formatter);
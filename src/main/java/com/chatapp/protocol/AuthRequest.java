@@ -0,0 +1,39 @@
+package com.chatapp.protocol;
+
+/**
+ * LOGIN, REGISTER or RESUME handshake sent by the client right after connecting.
+ */
+public class AuthRequest {
+    public enum Type {
+        LOGIN, REGISTER, RESUME
+    }
+
+    private final Type type;
+    private final String username;
+    private final String password;
+    private final String email; // REGISTER only
+    private final String token; // RESUME only; the server reads the username from it
+
+    public AuthRequest(Type type, String username, String password, String email) {
+        this(type, username, password, email, null);
+    }
+
+    private AuthRequest(Type type, String username, String password, String email, String token) {
+        this.type = type;
+        this.username = username;
+        this.password = password;
+        this.email = email;
+        this.token = token;
+    }
+
+    /** Log in again with the session token from an earlier {@link AuthResult} (v7). */
+    public static AuthRequest resume(String token) {
+        return new AuthRequest(Type.RESUME, null, null, null, token);
+    }
+
+    public Type getType() { return type; }
+    public String getUsername() { return username; }
+    public String getPassword() { return password; }
+    public String getEmail() { return email; }
+    public String getToken() { return token; }
+}
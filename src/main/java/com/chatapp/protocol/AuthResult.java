@@ -0,0 +1,24 @@
+package com.chatapp.protocol;
+
+/**
+ * Server's answer to an {@link AuthRequest}.
+ */
+public class AuthResult {
+    private final boolean success;
+    private final String message;
+    private final String sessionToken; // v7, null if none was issued
+
+    public AuthResult(boolean success, String message) {
+        this(success, message, null);
+    }
+
+    public AuthResult(boolean success, String message, String sessionToken) {
+        this.success = success;
+        this.message = message;
+        this.sessionToken = sessionToken;
+    }
+
+    public boolean isSuccess() { return success; }
+    public String getMessage() { return message; }
+    public String getSessionToken() { return sessionToken; }
+}
@@ -0,0 +1,388 @@
+package com.chatapp.protocol;
+
+import com.chatapp.model.Message;
+import com.chatapp.model.User;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hand-written payload encoding for the binary protocol. Field order is the wire
+ * format; add new fields at the end and bump {@link Protocol#VERSION}.
+ *
+ * Timestamps are LocalDateTime on both ends, so they travel as epoch millis of the
+ * same wall-clock time in UTC, which round-trips without a zone.
+ */
+public final class BinaryCodec {
+    private static final Message.MessageType[] MESSAGE_TYPES = Message.MessageType.values();
+    private static final User.Status[] STATUSES = User.Status.values();
+
+    private BinaryCodec() {
+    }
+
+    // ==================== Auth ====================
+
+    public static byte[] encodeAuthRequest(AuthRequest request) throws ProtocolException {
+        PayloadWriter w = new PayloadWriter();
+        if (request.getType() == AuthRequest.Type.RESUME) {
+            return w.writeString(request.getToken()).toFrame(Opcode.RESUME, 0);
+        }
+        w.writeString(request.getUsername());
+        w.writeString(request.getPassword());
+        if (request.getType() == AuthRequest.Type.REGISTER) {
+            w.writeString(request.getEmail());
+            return w.toFrame(Opcode.REGISTER, 0);
+        }
+        return w.toFrame(Opcode.LOGIN, 0);
+    }
+
+    public static AuthRequest decodeAuthRequest(Frame frame) throws ProtocolException {
+        PayloadReader r = frame.reader();
+        if (frame.getOpcode() == Opcode.RESUME) {
+            return AuthRequest.resume(r.readString());
+        }
+        String username = r.readString();
+        String password = r.readString();
+        if (frame.getOpcode() == Opcode.REGISTER) {
+            return new AuthRequest(AuthRequest.Type.REGISTER, username, password, r.readString());
+        }
+        return new AuthRequest(AuthRequest.Type.LOGIN, username, password, null);
+    }
+
+    public static byte[] encodeAuthResult(AuthResult result) throws ProtocolException {
+        PayloadWriter w = new PayloadWriter()
+                .writeBoolean(result.isSuccess())
+                .writeString(result.getMessage());
+        if (result.getSessionToken() != null) {
+            w.writeString(result.getSessionToken()); // v7, left off for older clients
+        }
+        return w.toFrame(Opcode.AUTH_RESULT, 0);
+    }
+
+    public static AuthResult decodeAuthResult(Frame frame) throws ProtocolException {
+        PayloadReader r = frame.reader();
+        boolean success = r.readBoolean();
+        String message = r.readString();
+        return new AuthResult(success, message, r.hasRemaining() ? r.readString() : null);
+    }
+
+    public static byte[] encodeUsernameCheck(UsernameCheck check) throws ProtocolException {
+        return new PayloadWriter().writeString(check.getUsername()).toFrame(Opcode.CHECK_USERNAME, 0);
+    }
+
+    public static UsernameCheck decodeUsernameCheck(Frame frame) throws ProtocolException {
+        String username = frame.reader().readString();
+        if (username == null) {
+            throw new ProtocolException("Username check without username");
+        }
+        return new UsernameCheck(username);
+    }
+
+    public static byte[] encodeUsernameStatus(UsernameStatus status) throws ProtocolException {
+        return new PayloadWriter()
+                .writeString(status.getUsername())
+                .writeBoolean(status.isAvailable())
+                .toFrame(Opcode.USERNAME_STATUS, 0);
+    }
+
+    public static UsernameStatus decodeUsernameStatus(Frame frame) throws ProtocolException {
+        PayloadReader r = frame.reader();
+        return new UsernameStatus(r.readString(), r.readBoolean());
+    }
+
+    // ==================== Messages ====================
+
+    public static byte[] encodeMessage(Message message) throws ProtocolException {
+        byte[] fileData = message.getFileData();
+        PayloadWriter w = new PayloadWriter(fileData != null ? fileData.length + 128 : 128);
+        writeMessage(w, message);
+        return w.toFrame(Opcode.MESSAGE, 0);
+    }
+
+    public static Message decodeMessage(Frame frame) throws ProtocolException {
+        return readMessage(frame.reader());
+    }
+
+    static void writeMessage(PayloadWriter w, Message message) {
+        w.writeString(message.getMessageId());
+        w.writeString(message.getSender());
+        w.writeString(message.getReceiver());
+        w.writeString(message.getContent());
+        w.writeByte(message.getType().ordinal());
+        writeTime(w, message.getTimestamp());
+        w.writeString(message.getFileName());
+        w.writeBytes(message.getFileData());
+    }
+
+    static Message readMessage(PayloadReader r) throws ProtocolException {
+        String messageId = r.readString();
+        String sender = r.readString();
+        String receiver = r.readString();
+        String content = r.readString();
+        Message.MessageType type = MESSAGE_TYPES[checkOrdinal(r.readByte(), MESSAGE_TYPES.length)];
+        LocalDateTime timestamp = readTime(r);
+        String fileName = r.readString();
+        byte[] fileData = r.readBytes();
+
+        Message message = new Message(sender, content, type);
+        message.setMessageId(messageId);
+        message.setReceiver(receiver);
+        if (timestamp != null) {
+            message.setTimestamp(timestamp);
+        }
+        message.setFileName(fileName);
+        message.setFileData(fileData);
+        return message;
+    }
+
+    // ==================== Users ====================
+
+    public static byte[] encodeUserList(List<User> users) throws ProtocolException {
+        PayloadWriter w = new PayloadWriter(users.size() * 48);
+        w.writeVarInt(users.size());
+        for (User user : users) {
+            writeUser(w, user);
+        }
+        return w.toFrame(Opcode.USERS_LIST, 0);
+    }
+
+    public static List<User> decodeUserList(Frame frame) throws ProtocolException {
+        PayloadReader r = frame.reader();
+        int count = r.readVarInt();
+        List<User> users = new ArrayList<>(Math.min(count, 4096));
+        for (int i = 0; i < count; i++) {
+            users.add(readUser(r));
+        }
+        return users;
+    }
+
+    // Password is never sent
+    static void writeUser(PayloadWriter w, User user) {
+        w.writeString(user.getUsername());
+        w.writeString(user.getEmail());
+        w.writeByte(user.getStatus().ordinal());
+        writeTime(w, user.getLastSeen());
+    }
+
+    static User readUser(PayloadReader r) throws ProtocolException {
+        String username = r.readString();
+        String email = r.readString();
+        User.Status status = STATUSES[checkOrdinal(r.readByte(), STATUSES.length)];
+        LocalDateTime lastSeen = readTime(r);
+
+        if (username == null) {
+            throw new ProtocolException("User without username");
+        }
+        User user = new User(username, "", email);
+        user.setStatus(status);
+        if (lastSeen != null) {
+            user.setLastSeen(lastSeen);
+        }
+        return user;
+    }
+
+    // ==================== Presence ====================
+
+    /** Only what changed: no email, the client already has it from the snapshot. */
+    public static byte[] encodePresence(List<User> changed, long version) throws ProtocolException {
+        PayloadWriter w = new PayloadWriter(changed.size() * 32 + 8);
+        w.writeLong(version);
+        w.writeVarInt(changed.size());
+        for (User user : changed) {
+            w.writeString(user.getUsername());
+            w.writeByte(user.getStatus().ordinal());
+            writeTime(w, user.getLastSeen());
+        }
+        return w.toFrame(Opcode.PRESENCE, 0);
+    }
+
+    public static PresenceUpdate decodePresence(Frame frame) throws ProtocolException {
+        PayloadReader r = frame.reader();
+        long version = r.readLong();
+        int count = r.readVarInt();
+        List<User> changed = new ArrayList<>(Math.min(count, 4096));
+        for (int i = 0; i < count; i++) {
+            String username = r.readString();
+            User.Status status = STATUSES[checkOrdinal(r.readByte(), STATUSES.length)];
+            LocalDateTime lastSeen = readTime(r);
+
+            if (username == null) {
+                throw new ProtocolException("Presence without username");
+            }
+            User user = new User(username, "");
+            user.setStatus(status);
+            if (lastSeen != null) {
+                user.setLastSeen(lastSeen);
+            }
+            changed.add(user);
+        }
+        return PresenceUpdate.delta(version, changed);
+    }
+
+    public static byte[] encodeSnapshot(List<User> users, long version) throws ProtocolException {
+        PayloadWriter w = new PayloadWriter(users.size() * 48 + 8);
+        w.writeLong(version);
+        w.writeVarInt(users.size());
+        for (User user : users) {
+            writeUser(w, user);
+        }
+        return w.toFrame(Opcode.USERS_SNAPSHOT, 0);
+    }
+
+    public static PresenceUpdate decodeSnapshot(Frame frame) throws ProtocolException {
+        PayloadReader r = frame.reader();
+        long version = r.readLong();
+        int count = r.readVarInt();
+        List<User> users = new ArrayList<>(Math.min(count, 4096));
+        for (int i = 0; i < count; i++) {
+            users.add(readUser(r));
+        }
+        return PresenceUpdate.snapshot(version, users);
+    }
+
+    // ==================== Directory ====================
+
+    public static byte[] encodeDirectorySync(DirectorySync request) throws ProtocolException {
+        return new PayloadWriter(24)
+                .writeLong(request.getEpoch())
+                .writeLong(request.getSince())
+                .writeVarInt(request.getCursor())
+                .writeVarInt(request.getLimit())
+                .toFrame(Opcode.DIRECTORY_SYNC, 0);
+    }
+
+    public static DirectorySync decodeDirectorySync(Frame frame) throws ProtocolException {
+        PayloadReader r = frame.reader();
+        return new DirectorySync(r.readLong(), r.readLong(), r.readVarInt(), r.readVarInt());
+    }
+
+    public static byte[] encodeDirectoryPage(DirectoryPage page) throws ProtocolException {
+        PayloadWriter w = new PayloadWriter(page.getUsers().size() * 48 + 40);
+        w.writeLong(page.getEpoch());
+        w.writeLong(page.getVersion());
+        w.writeLong(page.getPresenceVersion());
+        w.writeBoolean(page.isReset());
+        w.writeVarInt(page.getTotal());
+        w.writeBoolean(page.hasMore());
+        if (page.hasMore()) {
+            w.writeVarInt(page.getNextCursor());
+        }
+        w.writeVarInt(page.getUsers().size());
+        for (User user : page.getUsers()) {
+            writeUser(w, user);
+        }
+        w.writeVarInt(page.getDeleted().size());
+        for (String username : page.getDeleted()) {
+            w.writeString(username);
+        }
+        return w.toFrame(Opcode.DIRECTORY_PAGE, 0);
+    }
+
+    public static DirectoryPage decodeDirectoryPage(Frame frame) throws ProtocolException {
+        PayloadReader r = frame.reader();
+        long epoch = r.readLong();
+        long version = r.readLong();
+        long presenceVersion = r.readLong();
+        boolean reset = r.readBoolean();
+        int total = r.readVarInt();
+        int nextCursor = r.readBoolean() ? r.readVarInt() : -1;
+
+        int count = r.readVarInt();
+        List<User> users = new ArrayList<>(Math.min(count, 4096));
+        for (int i = 0; i < count; i++) {
+            users.add(readUser(r));
+        }
+        int deletedCount = r.readVarInt();
+        List<String> deleted = new ArrayList<>(Math.min(deletedCount, 4096));
+        for (int i = 0; i < deletedCount; i++) {
+            String username = r.readString();
+            if (username == null) {
+                throw new ProtocolException("Deleted user without username");
+            }
+            deleted.add(username);
+        }
+        return new DirectoryPage(epoch, version, presenceVersion, reset, total, users, deleted, nextCursor);
+    }
+
+    public static byte[] encodeSubscription(PresenceSubscription subscription) throws ProtocolException {
+        List<String> usernames = subscription.getUsernames();
+        PayloadWriter w = new PayloadWriter(usernames.size() * 16 + 4);
+        w.writeVarInt(usernames.size());
+        for (String username : usernames) {
+            w.writeString(username);
+        }
+        return w.toFrame(Opcode.SUBSCRIBE, 0);
+    }
+
+    public static PresenceSubscription decodeSubscription(Frame frame) throws ProtocolException {
+        PayloadReader r = frame.reader();
+        int count = r.readVarInt();
+        List<String> usernames = new ArrayList<>(Math.min(count, 4096));
+        for (int i = 0; i < count; i++) {
+            String username = r.readString();
+            if (username == null) {
+                throw new ProtocolException("Subscription without username");
+            }
+            usernames.add(username);
+        }
+        return new PresenceSubscription(usernames);
+    }
+
+    // ==================== Admission ====================
+
+    public static byte[] encodeBusy(int retryAfterSeconds, String message) throws ProtocolException {
+        return new PayloadWriter()
+                .writeVarInt(retryAfterSeconds)
+                .writeString(message)
+                .toFrame(Opcode.BUSY, 0);
+    }
+
+    public static ServerBusyException decodeBusy(Frame frame) throws ProtocolException {
+        PayloadReader r = frame.reader();
+        int retryAfterSeconds = r.readVarInt();
+        return new ServerBusyException(r.readString(), retryAfterSeconds);
+    }
+
+    // ==================== Heartbeats ====================
+
+    /** The payload is the sender's clock, echoed back in the PONG. */
+    public static byte[] encodePing(long timestamp) throws ProtocolException {
+        return new PayloadWriter(8).writeLong(timestamp).toFrame(Opcode.PING, 0);
+    }
+
+    public static byte[] encodePong(Frame ping) throws ProtocolException {
+        return new PayloadWriter(8).writeLong(ping.reader().readLong()).toFrame(Opcode.PONG, 0);
+    }
+
+    // ==================== Helpers ====================
+
+    private static void writeTime(PayloadWriter w, LocalDateTime time) {
+        w.writeBoolean(time != null);
+        if (time != null) {
+            w.writeLong(time.toInstant(ZoneOffset.UTC).toEpochMilli());
+        }
+    }
+
+    private static LocalDateTime readTime(PayloadReader r) throws ProtocolException {
+        if (!r.readBoolean()) {
+            return null;
+        }
+        long millis = r.readLong();
+        try {
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+        } catch (DateTimeException e) {
+            throw new ProtocolException("Timestamp out of range: " + millis);
+        }
+    }
+
+    private static int checkOrdinal(int ordinal, int count) throws ProtocolException {
+        if (ordinal >= count) {
+            throw new ProtocolException("Unknown enum value: " + ordinal);
+        }
+        return ordinal;
+    }
+}
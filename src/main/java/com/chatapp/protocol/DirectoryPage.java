@@ -0,0 +1,54 @@
+package com.chatapp.protocol;
+
+import com.chatapp.model.User;
+
+import java.util.List;
+
+/**
+ * One page of the user directory, in answer to a {@link DirectorySync}.
+ *
+ * The epoch identifies the server's directory; versions from another epoch mean
+ * nothing. The version is the directory version the page was read at; the first page
+ * of a sync is what the client stores as "since" once the last page is in. The
+ * presence version works like a snapshot's: presence deltas up to it are already
+ * reflected.
+ *
+ * Reset means the server could not answer "changed since" (other epoch, or deletions
+ * that old are forgotten), so this is a full listing from the start instead and the
+ * client should drop its cache.
+ */
+public class DirectoryPage {
+    private final long epoch;
+    private final long version;
+    private final long presenceVersion;
+    private final boolean reset;
+    private final int total;
+    private final List<User> users;
+    private final List<String> deleted;
+    private final int nextCursor;
+
+    public DirectoryPage(long epoch, long version, long presenceVersion, boolean reset, int total,
+                         List<User> users, List<String> deleted, int nextCursor) {
+        this.epoch = epoch;
+        this.version = version;
+        this.presenceVersion = presenceVersion;
+        this.reset = reset;
+        this.total = total;
+        this.users = users;
+        this.deleted = deleted;
+        this.nextCursor = nextCursor;
+    }
+
+    public long getEpoch() { return epoch; }
+    public long getVersion() { return version; }
+    public long getPresenceVersion() { return presenceVersion; }
+    public boolean isReset() { return reset; }
+    /** Registered users in the whole directory, not just this page. */
+    public int getTotal() { return total; }
+    public List<User> getUsers() { return users; }
+    /** Users deleted since the requested version; first page only. */
+    public List<String> getDeleted() { return deleted; }
+    /** Cursor for the next page, or -1 if this was the last. */
+    public int getNextCursor() { return nextCursor; }
+    public boolean hasMore() { return nextCursor >= 0; }
+}
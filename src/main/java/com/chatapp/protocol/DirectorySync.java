@@ -0,0 +1,28 @@
+package com.chatapp.protocol;
+
+/**
+ * Client request for one page of the user directory (binary protocol v5).
+ *
+ * A client without a cache asks with epoch 0 and since 0 and gets every user, a page
+ * at a time. With a cache it sends the epoch and version of its last completed sync
+ * and gets only users changed since, plus those deleted. The cursor is opaque: 0 for
+ * the first page, then whatever the previous page returned.
+ */
+public class DirectorySync {
+    private final long epoch;
+    private final long since;
+    private final int cursor;
+    private final int limit;
+
+    public DirectorySync(long epoch, long since, int cursor, int limit) {
+        this.epoch = epoch;
+        this.since = since;
+        this.cursor = cursor;
+        this.limit = limit;
+    }
+
+    public long getEpoch() { return epoch; }
+    public long getSince() { return since; }
+    public int getCursor() { return cursor; }
+    public int getLimit() { return limit; }
+}
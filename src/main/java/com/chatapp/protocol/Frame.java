@@ -0,0 +1,80 @@
+package com.chatapp.protocol;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * One decoded frame. The payload is a private copy, safe to keep after the read
+ * buffer it came from has been compacted.
+ */
+public final class Frame {
+    private final Opcode opcode;
+    private final int flags;
+    private final byte[] payload;
+
+    public Frame(Opcode opcode, int flags, byte[] payload) {
+        this.opcode = opcode;
+        this.flags = flags;
+        this.payload = payload;
+    }
+
+    public Opcode getOpcode() {
+        return opcode;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    public PayloadReader reader() {
+        return new PayloadReader(payload);
+    }
+
+    /**
+     * Decode one frame from a buffer in read mode.
+     *
+     * @return the frame, or null (buffer untouched) if it is not complete yet
+     */
+    public static Frame tryDecode(ByteBuffer buf) throws ProtocolException {
+        if (buf.remaining() < 4) {
+            return null;
+        }
+        int length = checkLength(buf.getInt(buf.position()));
+        if (buf.remaining() < 4 + length) {
+            return null;
+        }
+
+        buf.getInt();
+        Opcode opcode = Opcode.fromCode(buf.get() & 0xFF);
+        int flags = buf.get() & 0xFF;
+        byte[] payload = new byte[length - 2];
+        buf.get(payload);
+        return new Frame(opcode, flags, payload);
+    }
+
+    /** Total bytes the frame at the head of the buffer needs, header included. */
+    public static long pendingSize(ByteBuffer buf) {
+        if (buf.remaining() < 4) {
+            return 4;
+        }
+        return 4L + buf.getInt(buf.position());
+    }
+
+    /** Blocking read of the next frame. */
+    public static Frame read(DataInputStream in) throws IOException {
+        int length = checkLength(in.readInt());
+        Opcode opcode = Opcode.fromCode(in.readUnsignedByte());
+        int flags = in.readUnsignedByte();
+        byte[] payload = new byte[length - 2];
+        in.readFully(payload);
+        return new Frame(opcode, flags, payload);
+    }
+
+    private static int checkLength(int length) throws ProtocolException {
+        if (length < 2 || length > Protocol.MAX_FRAME_SIZE) {
+            throw new ProtocolException("Invalid frame length: " + length);
+        }
+        return length;
+    }
+}
@@ -0,0 +1,64 @@
+package com.chatapp.protocol;
+
+/**
+ * Frame types of the binary protocol. Codes are part of the wire format: never
+ * renumber, only append.
+ */
+public enum Opcode {
+    LOGIN(1),
+    REGISTER(2),
+    AUTH_RESULT(3),
+    MESSAGE(4),
+    USERS_LIST(5),
+
+    // Version 2
+    PING(6),
+    PONG(7),
+
+    // Version 3
+    BUSY(8),
+
+    // Version 4
+    PRESENCE(9),
+    USERS_SNAPSHOT(10),
+
+    // Version 5
+    DIRECTORY_SYNC(11),
+    DIRECTORY_PAGE(12),
+
+    // Version 6
+    SUBSCRIBE(13),
+
+    // Version 7
+    RESUME(14),
+
+    // Version 8
+    CHECK_USERNAME(15),
+    USERNAME_STATUS(16);
+
+    private static final Opcode[] BY_CODE = new Opcode[256];
+
+    static {
+        for (Opcode op : values()) {
+            BY_CODE[op.code] = op;
+        }
+    }
+
+    private final int code;
+
+    Opcode(int code) {
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public static Opcode fromCode(int code) throws ProtocolException {
+        Opcode op = (code >= 0 && code < BY_CODE.length) ? BY_CODE[code] : null;
+        if (op == null) {
+            throw new ProtocolException("Unknown opcode: " + code);
+        }
+        return op;
+    }
+}
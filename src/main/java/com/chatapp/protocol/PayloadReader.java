@@ -0,0 +1,87 @@
+package com.chatapp.protocol;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the fields written by {@link PayloadWriter}. Every read is bounds checked,
+ * so a truncated or hostile payload fails with a {@link ProtocolException}.
+ */
+public class PayloadReader {
+    private final byte[] buf;
+    private int pos;
+
+    public PayloadReader(byte[] buf) {
+        this.buf = buf;
+    }
+
+    public int readByte() throws ProtocolException {
+        require(1);
+        return buf[pos++] & 0xFF;
+    }
+
+    public boolean readBoolean() throws ProtocolException {
+        return readByte() != 0;
+    }
+
+    public int readVarInt() throws ProtocolException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new ProtocolException("Malformed varint");
+    }
+
+    public long readLong() throws ProtocolException {
+        require(8);
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (buf[pos++] & 0xFF);
+        }
+        return value;
+    }
+
+    public String readString() throws ProtocolException {
+        int length = readLength();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(buf, pos, length, StandardCharsets.UTF_8);
+        pos += length;
+        return value;
+    }
+
+    public byte[] readBytes() throws ProtocolException {
+        int length = readLength();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        System.arraycopy(buf, pos, value, 0, length);
+        pos += length;
+        return value;
+    }
+
+    public boolean hasRemaining() {
+        return pos < buf.length;
+    }
+
+    private int readLength() throws ProtocolException {
+        int encoded = readVarInt();
+        if (encoded == 0) {
+            return -1;
+        }
+        int length = encoded - 1;
+        require(length);
+        return length;
+    }
+
+    private void require(int n) throws ProtocolException {
+        if (n < 0 || n > buf.length - pos) { // pos + n could overflow
+            throw new ProtocolException("Truncated payload");
+        }
+    }
+}
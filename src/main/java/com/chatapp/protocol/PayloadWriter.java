@@ -0,0 +1,98 @@
+package com.chatapp.protocol;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Growable buffer for building one frame. Space for the header is reserved up
+ * front so {@link #toFrame} does not have to copy the payload.
+ *
+ * Lengths are unsigned varints. Nullable strings and byte arrays store length + 1,
+ * with 0 meaning null.
+ */
+public class PayloadWriter {
+    private byte[] buf;
+    private int size;
+
+    public PayloadWriter() {
+        this(128);
+    }
+
+    public PayloadWriter(int expectedPayload) {
+        buf = new byte[Protocol.HEADER_SIZE + Math.max(16, expectedPayload)];
+        size = Protocol.HEADER_SIZE;
+    }
+
+    public PayloadWriter writeByte(int value) {
+        ensure(1);
+        buf[size++] = (byte) value;
+        return this;
+    }
+
+    public PayloadWriter writeBoolean(boolean value) {
+        return writeByte(value ? 1 : 0);
+    }
+
+    public PayloadWriter writeVarInt(int value) {
+        ensure(5);
+        while ((value & ~0x7F) != 0) {
+            buf[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[size++] = (byte) value;
+        return this;
+    }
+
+    public PayloadWriter writeLong(long value) {
+        ensure(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buf[size++] = (byte) (value >>> shift);
+        }
+        return this;
+    }
+
+    public PayloadWriter writeString(String value) {
+        if (value == null) {
+            return writeVarInt(0);
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length + 1);
+        return writeRaw(bytes);
+    }
+
+    public PayloadWriter writeBytes(byte[] value) {
+        if (value == null) {
+            return writeVarInt(0);
+        }
+        writeVarInt(value.length + 1);
+        return writeRaw(value);
+    }
+
+    private PayloadWriter writeRaw(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, size, bytes.length);
+        size += bytes.length;
+        return this;
+    }
+
+    /** Fill in the header and return the complete frame bytes. */
+    public byte[] toFrame(Opcode opcode, int flags) throws ProtocolException {
+        int length = size - 4;
+        if (length > Protocol.MAX_FRAME_SIZE) {
+            throw new ProtocolException("Frame too large: " + length);
+        }
+        buf[0] = (byte) (length >>> 24);
+        buf[1] = (byte) (length >>> 16);
+        buf[2] = (byte) (length >>> 8);
+        buf[3] = (byte) length;
+        buf[4] = (byte) opcode.getCode();
+        buf[5] = (byte) flags;
+        return size == buf.length ? buf : Arrays.copyOf(buf, size);
+    }
+
+    private void ensure(int extra) {
+        if (size + extra > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.chatapp.protocol;
+
+import java.util.List;
+
+/**
+ * The users a client wants presence for (binary protocol v6): its recent conversation
+ * partners and whoever is on screen. Each one replaces the previous set. The server
+ * keeps at most a fixed number, in the order given, so the most wanted go first.
+ */
+public class PresenceSubscription {
+    private final List<String> usernames;
+
+    public PresenceSubscription(List<String> usernames) {
+        this.usernames = usernames;
+    }
+
+    public List<String> getUsernames() { return usernames; }
+}
@@ -0,0 +1,39 @@
+package com.chatapp.protocol;
+
+import com.chatapp.model.User;
+
+import java.util.List;
+
+/**
+ * Versioned presence from the server: either the users whose status changed in one
+ * window or a snapshot of the whole directory.
+ *
+ * Versions are assigned by the server in publish order, one per delta. A snapshot
+ * carries the version it is current as of, so a client applies only deltas newer
+ * than that and asks for a fresh snapshot when it sees a gap. A delta holds each
+ * user's absolute status, so applying one twice is harmless. With subscriptions (v6)
+ * every connection gets its own deltas, so versions count per connection.
+ */
+public class PresenceUpdate {
+    private final long version;
+    private final boolean snapshot;
+    private final List<User> users;
+
+    private PresenceUpdate(long version, boolean snapshot, List<User> users) {
+        this.version = version;
+        this.snapshot = snapshot;
+        this.users = users;
+    }
+
+    public static PresenceUpdate delta(long version, List<User> changed) {
+        return new PresenceUpdate(version, false, changed);
+    }
+
+    public static PresenceUpdate snapshot(long version, List<User> users) {
+        return new PresenceUpdate(version, true, users);
+    }
+
+    public long getVersion() { return version; }
+    public boolean isSnapshot() { return snapshot; }
+    public List<User> getUsers() { return users; }
+}
@@ -0,0 +1,78 @@
+package com.chatapp.protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary wire protocol constants.
+ *
+ * A connection starts with a 5 byte preamble in each direction: the magic "CHUB"
+ * and a version byte. The server answers with the version it will speak. After that
+ * both sides exchange frames:
+ *
+ * <pre>
+ *   int32  length   (bytes that follow: opcode + flags + payload)
+ *   uint8  opcode   (see {@link Opcode})
+ *   uint8  flags    (reserved, 0)
+ *   byte[] payload  (see {@link BinaryCodec})
+ * </pre>
+ *
+ * Legacy clients start with the ObjectStream magic 0xACED instead, which is how the
+ * server tells the two apart.
+ */
+public final class Protocol {
+    public static final byte[] MAGIC = {'C', 'H', 'U', 'B'};
+    /**
+     * 1: auth, messages, user lists.
+     * 2: PING / PONG heartbeats; the server only pings clients that negotiated 2.
+     * 3: BUSY, sent instead of AUTH_RESULT when the server is over capacity.
+     * 4: PRESENCE deltas and versioned USERS_SNAPSHOT instead of a USERS_LIST per change.
+     * 5: paged DIRECTORY_SYNC instead of a USERS_SNAPSHOT; no snapshot is sent at login.
+     * 6: SUBSCRIBE; PRESENCE only for subscribed users, versions counted per connection.
+     * 7: AUTH_RESULT carries a session token after a login; RESUME logs in with it.
+     * 8: CHECK_USERNAME / USERNAME_STATUS, allowed before logging in.
+     */
+    public static final int VERSION = 8;
+    public static final int PREAMBLE_SIZE = MAGIC.length + 1;
+
+    /** length + opcode + flags */
+    public static final int HEADER_SIZE = 6;
+
+    // Files go up to 50MB, leave headroom for the rest of the message
+    public static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    private Protocol() {
+    }
+
+    public static byte[] preamble(int version) {
+        byte[] bytes = new byte[PREAMBLE_SIZE];
+        System.arraycopy(MAGIC, 0, bytes, 0, MAGIC.length);
+        bytes[MAGIC.length] = (byte) version;
+        return bytes;
+    }
+
+    /**
+     * @return the peer's version, or -1 if the bytes are not a binary preamble
+     */
+    public static int readPreamble(byte[] bytes) {
+        if (bytes.length < PREAMBLE_SIZE) {
+            return -1;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (bytes[i] != MAGIC[i]) {
+                return -1;
+            }
+        }
+        return bytes[MAGIC.length] & 0xFF;
+    }
+
+    /** True if the first bytes in the buffer could start a binary preamble. */
+    public static boolean startsWithMagic(ByteBuffer buf) {
+        int n = Math.min(buf.remaining(), MAGIC.length);
+        for (int i = 0; i < n; i++) {
+            if (buf.get(buf.position() + i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
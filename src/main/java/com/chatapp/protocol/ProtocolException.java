@@ -0,0 +1,14 @@
+package com.chatapp.protocol;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a peer sends bytes that do not form a valid frame or payload.
+ */
+public class ProtocolException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public ProtocolException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,15 @@
+package com.chatapp.protocol;
+
+/**
+ * "Is this username free?" (binary protocol v8). May be sent before logging in, so a
+ * registration form can tell as the name is typed; answered with a {@link UsernameStatus}.
+ */
+public class UsernameCheck {
+    private final String username;
+
+    public UsernameCheck(String username) {
+        this.username = username;
+    }
+
+    public String getUsername() { return username; }
+}
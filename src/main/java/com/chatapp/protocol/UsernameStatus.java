@@ -0,0 +1,18 @@
+package com.chatapp.protocol;
+
+/**
+ * Answer to a {@link UsernameCheck}. Advisory: someone else can still register the
+ * name first, and REGISTER has the final word.
+ */
+public class UsernameStatus {
+    private final String username;
+    private final boolean available;
+
+    public UsernameStatus(String username, boolean available) {
+        this.username = username;
+        this.available = available;
+    }
+
+    public String getUsername() { return username; }
+    public boolean isAvailable() { return available; }
+}
@@ -0,0 +1,79 @@
+package com.chatapp.server;
+
+import com.chatapp.util.EnvConfig;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caps concurrent sessions and concurrent logins so an overloaded server turns clients
+ * away quickly ("busy, retry after N s") instead of letting them hang mid-handshake.
+ *
+ * A session is any open connection, authenticated or not. A connection over the
+ * session limit is still read far enough to answer in its own protocol, then closed.
+ */
+class AdmissionControl {
+    private static final int DEFAULT_MAX_SESSIONS = 10_000;
+
+    static final int MAX_INFLIGHT_AUTH = EnvConfig.getInt("MAX_INFLIGHT_AUTH", 32);
+    static final int RETRY_AFTER_SECONDS = EnvConfig.getInt("BUSY_RETRY_AFTER_SECONDS", 5);
+
+    private static AdmissionControl instance;
+
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+    private volatile int maxSessions = EnvConfig.getInt("MAX_SESSIONS", DEFAULT_MAX_SESSIONS);
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final Semaphore authPermits = new Semaphore(Math.max(1, MAX_INFLIGHT_AUTH));
+
+    private AdmissionControl() {
+        metrics.registerGauge("sessions.active", sessions::get);
+        metrics.registerGauge("auth.inflight", () -> Math.max(1, MAX_INFLIGHT_AUTH) - authPermits.availablePermits());
+    }
+
+    static synchronized AdmissionControl getInstance() {
+        if (instance == null) {
+            instance = new AdmissionControl();
+        }
+        return instance;
+    }
+
+    /** Lower the session cap, e.g. to the size of the THREADED pool, unless MAX_SESSIONS is set. */
+    void capSessions(int limit) {
+        if (EnvConfig.get("MAX_SESSIONS", null) == null) {
+            maxSessions = Math.min(maxSessions, limit);
+        }
+    }
+
+    int getMaxSessions() {
+        return maxSessions;
+    }
+
+    boolean tryAdmitSession() {
+        if (sessions.incrementAndGet() > maxSessions) {
+            sessions.decrementAndGet();
+            metrics.increment("admission.rejected.sessions");
+            return false;
+        }
+        return true;
+    }
+
+    void sessionClosed() {
+        sessions.decrementAndGet();
+    }
+
+    boolean tryBeginAuth() {
+        if (!authPermits.tryAcquire()) {
+            metrics.increment("admission.rejected.auth");
+            return false;
+        }
+        return true;
+    }
+
+    void endAuth() {
+        authPermits.release();
+    }
+
+    static String busyMessage() {
+        return "Server busy, please retry in " + RETRY_AFTER_SECONDS + " s";
+    }
+}
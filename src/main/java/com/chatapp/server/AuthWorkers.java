@@ -0,0 +1,109 @@
+package com.chatapp.server;
+
+import com.chatapp.util.EnvConfig;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs password checks and registrations (BCrypt, a few hundred ms of CPU each) on a
+ * small pool of their own, so a reconnect storm can take at most {@link #THREADS}
+ * cores and the rest stay free for routing messages.
+ *
+ * A connection with a thread of its own waits for the result (a virtual thread just
+ * parks). An NIO connection does not hold a worker for it: it takes the future from
+ * {@link #submit} and carries on when the result is posted back to it. Past
+ * {@link #QUEUE_CAPACITY} waiting checks, new ones are rejected at once and the
+ * client is told the server is busy, rather than queueing for longer than it would
+ * wait anyway.
+ */
+class AuthWorkers {
+    static final int THREADS = EnvConfig.getInt("AUTH_THREADS",
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    static final int QUEUE_CAPACITY = EnvConfig.getInt("AUTH_QUEUE_CAPACITY", 64);
+
+    private static AuthWorkers instance;
+
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+    private final ThreadPoolExecutor pool;
+
+    private AuthWorkers() {
+        AtomicInteger count = new AtomicInteger();
+        pool = new ThreadPoolExecutor(Math.max(1, THREADS), Math.max(1, THREADS), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, QUEUE_CAPACITY)), r -> {
+                    Thread t = new Thread(r, "auth-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        metrics.registerGauge("auth.queued", () -> pool.getQueue().size());
+        metrics.registerGauge("auth.active", pool::getActiveCount);
+    }
+
+    static synchronized AuthWorkers getInstance() {
+        if (instance == null) {
+            instance = new AuthWorkers();
+        }
+        return instance;
+    }
+
+    /**
+     * Run a credential check on the pool and wait for it.
+     *
+     * @throws RejectedExecutionException if the queue is full (or the pool stopped)
+     */
+    <T> T call(Callable<T> check) throws IOException {
+        CompletableFuture<T> future = submit(check);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for authentication");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IOException("Authentication failed", e.getCause());
+        }
+    }
+
+    /**
+     * Run a credential check on the pool without waiting for it. The future completes
+     * on an auth thread, so whatever is chained to it should only hand the result on.
+     *
+     * @throws RejectedExecutionException if the queue is full (or the pool stopped)
+     */
+    <T> CompletableFuture<T> submit(Callable<T> check) {
+        long submitted = System.nanoTime();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            pool.execute(() -> {
+                long started = System.nanoTime();
+                metrics.record("auth.queue.ms", TimeUnit.NANOSECONDS.toMillis(started - submitted));
+                try {
+                    result.complete(check.call());
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    // Includes the user lookup, a single indexed query next to the hash
+                    metrics.record("auth.hash.ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            metrics.increment("auth.rejected");
+            throw e;
+        }
+        return result;
+    }
+
+    void stop() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,160 @@
+package com.chatapp.server;
+
+import com.chatapp.model.Message;
+import com.chatapp.model.User;
+import com.chatapp.protocol.AuthResult;
+import com.chatapp.protocol.BinaryCodec;
+import com.chatapp.protocol.DirectoryPage;
+import com.chatapp.protocol.Frame;
+import com.chatapp.protocol.Protocol;
+import com.chatapp.protocol.ProtocolException;
+import com.chatapp.protocol.UsernameStatus;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Length-prefixed binary frames, see {@link Protocol}. Stateless, so the same
+ * encoded bytes are valid on any binary connection.
+ */
+class BinaryProtocol implements ConnectionProtocol {
+    private final int version;
+
+    BinaryProtocol(int version) {
+        this.version = version;
+    }
+
+    @Override
+    public byte[] handshake() {
+        return Protocol.preamble(version);
+    }
+
+    @Override
+    public void decode(ByteBuffer buf, List<Object> out) throws ProtocolException {
+        Frame frame;
+        while ((frame = Frame.tryDecode(buf)) != null) {
+            switch (frame.getOpcode()) {
+                case LOGIN, REGISTER -> out.add(BinaryCodec.decodeAuthRequest(frame));
+                case RESUME -> {
+                    if (!supportsSessionResumption()) {
+                        throw new ProtocolException("RESUME needs protocol v7, client speaks v" + version);
+                    }
+                    out.add(BinaryCodec.decodeAuthRequest(frame));
+                }
+                case MESSAGE -> out.add(BinaryCodec.decodeMessage(frame));
+                case CHECK_USERNAME -> {
+                    if (version < 8) {
+                        throw new ProtocolException("CHECK_USERNAME needs protocol v8, client speaks v" + version);
+                    }
+                    out.add(BinaryCodec.decodeUsernameCheck(frame));
+                }
+                case DIRECTORY_SYNC -> {
+                    if (!supportsDirectorySync()) {
+                        throw new ProtocolException("DIRECTORY_SYNC needs protocol v5, client speaks v" + version);
+                    }
+                    out.add(BinaryCodec.decodeDirectorySync(frame));
+                }
+                case SUBSCRIBE -> {
+                    if (!supportsPresenceSubscriptions()) {
+                        throw new ProtocolException("SUBSCRIBE needs protocol v6, client speaks v" + version);
+                    }
+                    out.add(BinaryCodec.decodeSubscription(frame));
+                }
+                case PONG -> {
+                    // Only resets the idle clock, which any inbound bytes do
+                }
+                default -> throw new ProtocolException("Unexpected frame from client: " + frame.getOpcode());
+            }
+        }
+    }
+
+    @Override
+    public long pendingSize(ByteBuffer buf) {
+        return Frame.pendingSize(buf);
+    }
+
+    @Override
+    public byte[] encodeAuthResult(AuthResult result) throws ProtocolException {
+        if (result.getSessionToken() != null && !supportsSessionResumption()) {
+            result = new AuthResult(result.isSuccess(), result.getMessage());
+        }
+        return BinaryCodec.encodeAuthResult(result);
+    }
+
+    @Override
+    public byte[] encodeMessage(Message message) throws ProtocolException {
+        return BinaryCodec.encodeMessage(message);
+    }
+
+    @Override
+    public byte[] encodeUserList(List<User> users) throws ProtocolException {
+        return BinaryCodec.encodeUserList(users);
+    }
+
+    @Override
+    public boolean supportsPresenceDeltas() {
+        return version >= 4;
+    }
+
+    @Override
+    public byte[] encodePresence(List<User> changed, long presenceVersion) throws ProtocolException {
+        return BinaryCodec.encodePresence(changed, presenceVersion);
+    }
+
+    @Override
+    public byte[] encodeSnapshot(List<User> users, long presenceVersion) throws ProtocolException {
+        return supportsPresenceDeltas() ? BinaryCodec.encodeSnapshot(users, presenceVersion)
+                : BinaryCodec.encodeUserList(users);
+    }
+
+    @Override
+    public boolean supportsDirectorySync() {
+        return version >= 5;
+    }
+
+    @Override
+    public boolean supportsPresenceSubscriptions() {
+        return version >= 6;
+    }
+
+    @Override
+    public boolean supportsSessionResumption() {
+        return version >= 7;
+    }
+
+    @Override
+    public byte[] encodeUsernameStatus(UsernameStatus status) throws ProtocolException {
+        return BinaryCodec.encodeUsernameStatus(status);
+    }
+
+    @Override
+    public byte[] encodeDirectoryPage(DirectoryPage page) throws ProtocolException {
+        return BinaryCodec.encodeDirectoryPage(page);
+    }
+
+    @Override
+    public byte[] encodeBusy(int retryAfterSeconds, String message) throws ProtocolException {
+        return canRejectEarly() ? BinaryCodec.encodeBusy(retryAfterSeconds, message)
+                : BinaryCodec.encodeAuthResult(new AuthResult(false, message));
+    }
+
+    @Override
+    public boolean canRejectEarly() {
+        return version >= 3;
+    }
+
+    @Override
+    public byte[] encodePing() throws ProtocolException {
+        return version >= 2 ? BinaryCodec.encodePing(System.currentTimeMillis()) : null;
+    }
+
+    @Override
+    public Object sharedEncodingKey() {
+        return name(); // Version-specific, otherwise identical for every connection
+    }
+
+    @Override
+    public String name() {
+        return "binary v" + version;
+    }
+}
@@ -3,70 +3,194 @@ package com.chatapp.server;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.ArrayList;
-import java.util.List;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.sql.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import com.chatapp.database.DatabaseConfig;
+import com.chatapp.util.EnvConfig;
 
 public class ChatServer {
     private static final int PORT = 5000;
     private static final int MAX_CLIENTS = 100;
 
+    /**
+     * THREADED: one pooled platform thread per connection (blocking ObjectStreams).
+     * VIRTUAL: same blocking handlers, one virtual thread each (Java 21+), no client cap.
+     * NIO: selector event loops own the sockets, handlers run on a small worker pool.
+     */
+    public enum Mode {
+        THREADED, VIRTUAL, NIO;
+
+        static Mode fromString(String value) {
+            try {
+                return Mode.valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.err.println("⚠️  Unknown SERVER_MODE '" + value + "', using THREADED");
+                return THREADED;
+            }
+        }
+    }
+
+    private static final int NIO_EVENT_LOOPS = EnvConfig.getInt("NIO_EVENT_LOOPS",
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int NIO_WORKER_THREADS = EnvConfig.getInt("NIO_WORKER_THREADS",
+            Runtime.getRuntime().availableProcessors() * 4);
+    private static final long PINNING_THRESHOLD_MS = EnvConfig.getLong("PINNING_THRESHOLD_MS", 20);
+    private static final long METRICS_INTERVAL_SECONDS = EnvConfig.getLong("METRICS_INTERVAL_SECONDS", 60);
+    private static final int METRICS_TOP_QUEUES = 5;
+    private static final long DIRECTORY_CHECK_INTERVAL_SECONDS = EnvConfig.getLong("DIRECTORY_CHECK_INTERVAL_SECONDS", 300);
+    // Connections over the session limit answered "busy" at once; past that they are just closed
+    private static final int REJECT_THREADS = EnvConfig.getInt("REJECT_THREADS", 4);
+
+    private final Mode mode;
     private ServerSocket serverSocket;
+    private NioServer nioServer;
     private ExecutorService threadPool;
-    private List<ServerHandler> clientHandlers;
+    private ExecutorService writerPool; // drains per-client outbound queues
+    private ExecutorService rejectPool; // tells over-limit connections the server is busy
+    private PinningMonitor pinningMonitor;
+    private Set<ServerHandler> clientHandlers;
     private volatile boolean running;
+    private boolean stopped;
     private UserManager userManager;
 
     public ChatServer() {
+        this(Mode.fromString(EnvConfig.get("SERVER_MODE", "threaded")));
+    }
+
+    public ChatServer(Mode mode) {
+        clientHandlers = ConcurrentHashMap.newKeySet();
+        if (mode == Mode.VIRTUAL) {
+            threadPool = newVirtualThreadExecutor();
+            if (threadPool == null) {
+                System.err.println("⚠️  Virtual threads need Java 21+, falling back to THREADED mode");
+                mode = Mode.THREADED;
+            }
+        }
+        if (mode == Mode.THREADED) {
+            threadPool = Executors.newFixedThreadPool(MAX_CLIENTS);
+            // Never accept more sessions than there are threads to run them
+            AdmissionControl.getInstance().capSessions(MAX_CLIENTS);
 
-        clientHandlers = new ArrayList<>();
-        threadPool = Executors.newFixedThreadPool(MAX_CLIENTS);
+            // Cached: a writer stuck on a slow client holds its thread, the others get new ones
+            AtomicInteger writerId = new AtomicInteger();
+            writerPool = Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "client-writer-" + writerId.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        } else if (mode == Mode.VIRTUAL) {
+            writerPool = threadPool;
+        }
+        if (mode != Mode.NIO) {
+            // Each rejection waits for the client's first bytes, so it holds a thread for a
+            // while; a handful of them is plenty, and a flood beyond that gets no answer
+            AtomicInteger rejectId = new AtomicInteger();
+            rejectPool = new ThreadPoolExecutor(Math.max(1, REJECT_THREADS), Math.max(1, REJECT_THREADS),
+                    0, TimeUnit.MILLISECONDS, new SynchronousQueue<>(), r -> {
+                        Thread t = new Thread(r, "client-reject-" + rejectId.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }, new ThreadPoolExecutor.AbortPolicy());
+        }
+        this.mode = mode;
         userManager = UserManager.getInstance();
         running = false;
     }
 
-    private void cleanupStaleUsers() {
-        System.out.println("🧹 Cleaning up stale user statuses...");
+    // Looked up reflectively so the server still builds and runs on Java 17
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
 
-        String sql = "UPDATE users SET status = 'OFFLINE' WHERE status = 'ONLINE'";
+    /** Stream JFR pinning events; only meaningful in VIRTUAL mode. */
+    public void enablePinningReport() {
+        if (mode != Mode.VIRTUAL) {
+            System.out.println("ℹ️  Pinning report only applies to VIRTUAL mode");
+            return;
+        }
+        pinningMonitor = new PinningMonitor(Duration.ofMillis(PINNING_THRESHOLD_MS));
+        pinningMonitor.start();
+    }
 
-        try (Connection conn = DatabaseConfig.getConnection();
-             Statement stmt = conn.createStatement()) {
+    // Only users of servers whose presence lease lapsed are reset, not everyone:
+    // other servers sharing the database keep their users online
+    private void cleanupStaleUsers() {
+        System.out.println("🧹 Reconciling presence leases...");
+        PresenceWriter.getInstance().start();
+    }
 
-            int rowsAffected = stmt.executeUpdate(sql);
-            System.out.println("✅ Set " + rowsAffected + " users to OFFLINE");
+    private void loadUserDirectory() {
+        userManager.loadDirectory();
+        userManager.startDirectoryChecks(DIRECTORY_CHECK_INTERVAL_SECONDS);
+    }
 
-        } catch (SQLException e) {
-            System.err.println("❌ Error cleaning up users: " + e.getMessage());
-            e.printStackTrace();
-        }
+    private void startBackgroundServices() {
+        SessionTokens.getInstance().start();
+        MessageJournal.getInstance().start();
+        HistoryWriter.getInstance().start();
     }
 
     public void start() {
+        if (mode == Mode.NIO) {
+            startNio();
+            return;
+        }
+
         try {
             cleanupStaleUsers();
+            loadUserDirectory();
+            startBackgroundServices();
 
             serverSocket = new ServerSocket(PORT);
             running = true;
 
-            System.out.println("╔════════════════════════════════════════╗");
-            System.out.println("║     CHAT SERVER STARTED                ║");
-            System.out.println("║     Port: " + PORT + "                         ║");
-            System.out.println("║     Waiting for clients...             ║");
-            System.out.println("╚════════════════════════════════════════╝");
+            printBanner();
+            startMetrics();
 
             // Accept clients in loop
             while (running) {
                 try {
                     Socket clientSocket = serverSocket.accept();
-                    ServerHandler handler = new ServerHandler(clientSocket);
+                    ServerHandler handler = new ServerHandler(clientSocket, writerPool);
                     clientHandlers.add(handler);
-                    threadPool.execute(handler);
+
+                    // Over the session limit: answer "busy" on a rejector thread instead of
+                    // queueing behind the handler pool
+                    ExecutorService runner = handler.isAdmitted() ? threadPool : rejectPool;
+                    try {
+                        runner.execute(() -> {
+                            try {
+                                handler.run();
+                            } finally {
+                                clientHandlers.remove(handler);
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        // Every rejector is busy: close without an answer, the client retries anyway
+                        clientHandlers.remove(handler);
+                        ServerMetrics.getInstance().increment("admission.rejected.closed");
+                        try {
+                            clientSocket.close();
+                        } catch (IOException closeError) {
+                            System.err.println("Error closing rejected client: " + closeError.getMessage());
+                        }
+                    }
                 } catch (IOException e) {
                     if (running) {
                         System.err.println("Error accepting client: " + e.getMessage());
@@ -81,7 +205,73 @@ public class ChatServer {
         }
     }
 
-    public void shutdown() {
+    private void startNio() {
+        try {
+            cleanupStaleUsers();
+            loadUserDirectory();
+            startBackgroundServices();
+
+            nioServer = new NioServer(PORT, NIO_EVENT_LOOPS, NIO_WORKER_THREADS);
+            running = true;
+
+            printBanner();
+            startMetrics();
+            System.out.println("NIO event loops: " + NIO_EVENT_LOOPS + ", workers: " + NIO_WORKER_THREADS);
+
+            nioServer.start();
+
+        } catch (IOException e) {
+            System.err.println("Could not start server: " + e.getMessage());
+        } finally {
+            shutdown();
+        }
+    }
+
+    private void startMetrics() {
+        ServerMetrics metrics = ServerMetrics.getInstance();
+        metrics.registerGauge("users.online", () -> userManager.getOnlineHandlers().size());
+        metrics.registerGauge("outbound.depth.total",
+                () -> userManager.getOnlineHandlers().stream().mapToLong(ServerHandler::getOutboundDepth).sum());
+        metrics.registerGauge("outbound.bytes.total",
+                () -> userManager.getOnlineHandlers().stream().mapToLong(ServerHandler::getOutboundBytes).sum());
+        if (nioServer != null) {
+            // Accepted connections waiting for an event loop. The threaded modes have no such
+            // backlog: admission caps sessions at the handler pool size, and rejections that
+            // find every rejector busy are closed rather than queued.
+            metrics.registerGauge("accept.queue.depth", nioServer::getPendingRegistrations);
+        }
+        metrics.addReportSection(this::describeDeepestQueues);
+        metrics.start(METRICS_INTERVAL_SECONDS);
+    }
+
+    // Who is falling behind: deepest outbound queues right now
+    private String describeDeepestQueues() {
+        String queues = userManager.getOnlineHandlers().stream()
+                .filter(h -> h.getOutboundDepth() > 0)
+                .sorted(Comparator.comparingInt(ServerHandler::getOutboundDepth).reversed())
+                .limit(METRICS_TOP_QUEUES)
+                .map(h -> h.getUsername() + "=" + h.getOutboundDepth() + " frames/"
+                        + h.getOutboundBytes() + " B (peak " + h.getOutboundPeakDepth() + ")")
+                .collect(Collectors.joining(", "));
+        return queues.isEmpty() ? null : "   deepest outbound queues: " + queues;
+    }
+
+    private void printBanner() {
+        System.out.println("╔════════════════════════════════════════╗");
+        System.out.println("║     CHAT SERVER STARTED                ║");
+        System.out.println("║     Port: " + PORT + "                         ║");
+        System.out.printf("║     Mode: %-29s║%n", mode);
+        System.out.printf("║     Max sessions: %-21d║%n", AdmissionControl.getInstance().getMaxSessions());
+        System.out.println("║     Waiting for clients...             ║");
+        System.out.println("╚════════════════════════════════════════╝");
+    }
+
+    public synchronized void shutdown() {
+        if (stopped) {
+            return; // Shutdown hook and start() both end up here
+        }
+        stopped = true;
+
         System.out.println("\nShutting down server...");
         running = false;
 
@@ -91,14 +281,27 @@ public class ChatServer {
         }
         clientHandlers.clear();
 
+        if (nioServer != null) {
+            nioServer.shutdown();
+        }
+
         // Shutdown thread pool
-        threadPool.shutdown();
-        try {
-            if (!threadPool.awaitTermination(5, TimeUnit.SECONDS)) {
+        if (threadPool != null) {
+            threadPool.shutdown();
+            try {
+                if (!threadPool.awaitTermination(5, TimeUnit.SECONDS)) {
+                    threadPool.shutdownNow();
+                }
+            } catch (InterruptedException e) {
                 threadPool.shutdownNow();
             }
-        } catch (InterruptedException e) {
-            threadPool.shutdownNow();
+        }
+
+        if (writerPool != null && writerPool != threadPool) {
+            writerPool.shutdownNow();
+        }
+        if (rejectPool != null) {
+            rejectPool.shutdownNow();
         }
 
         // Close server socket
@@ -112,12 +315,45 @@ public class ChatServer {
 
         // Shutdown user manager
         userManager.shutdown();
+        MessageJournal.getInstance().stop(); // Syncs what the closed sessions sent, then drains
+        HistoryWriter.getInstance().stop();
+        PresenceWriter.getInstance().stop(); // Writes the OFFLINE states queued above
+
+        if (pinningMonitor != null) {
+            pinningMonitor.stop();
+        }
+
+        AuthWorkers.getInstance().stop();
+        SessionTokens.getInstance().stop();
+        HeartbeatMonitor.getInstance().stop();
+        PresenceTracker.getInstance().stop();
+        ServerMetrics.getInstance().stop();
 
         System.out.println("Server shutdown complete");
     }
 
+    /**
+     * Flags: --mode=threaded|virtual|nio (overrides SERVER_MODE),
+     * --pinning-report (or PINNING_REPORT=true) to log virtual thread pinning.
+     */
     public static void main(String[] args) {
-        ChatServer server = new ChatServer();
+        String modeName = EnvConfig.get("SERVER_MODE", "threaded");
+        boolean pinningReport = EnvConfig.getBoolean("PINNING_REPORT", false);
+
+        for (String arg : args) {
+            if (arg.startsWith("--mode=")) {
+                modeName = arg.substring("--mode=".length());
+            } else if (arg.equals("--pinning-report")) {
+                pinningReport = true;
+            } else {
+                System.err.println("⚠️  Unknown argument: " + arg);
+            }
+        }
+
+        ChatServer server = new ChatServer(Mode.fromString(modeName));
+        if (pinningReport) {
+            server.enablePinningReport();
+        }
 
         // Add shutdown hook for graceful shutdown
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
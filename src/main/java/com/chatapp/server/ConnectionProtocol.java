@@ -0,0 +1,152 @@
+package com.chatapp.server;
+
+import com.chatapp.model.Message;
+import com.chatapp.model.User;
+import com.chatapp.protocol.AuthResult;
+import com.chatapp.protocol.DirectoryPage;
+import com.chatapp.protocol.Protocol;
+import com.chatapp.protocol.ProtocolException;
+import com.chatapp.protocol.UsernameStatus;
+import com.chatapp.util.EnvConfig;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Wire format spoken on one client connection, picked from the first bytes the
+ * client sends. Inbound bytes decode to {@link com.chatapp.protocol.AuthRequest}
+ * and {@link Message} objects; outbound objects encode to complete byte arrays
+ * that the transport writes as-is.
+ *
+ * Encoding is called under the handler's write lock, so implementations may keep
+ * per-connection state.
+ */
+interface ConnectionProtocol {
+
+    // Lets old ObjectStream clients keep connecting during the rollout
+    boolean ALLOW_LEGACY = EnvConfig.getBoolean("ALLOW_LEGACY_PROTOCOL", true);
+
+    /** Bytes to send as soon as the protocol has been picked. */
+    byte[] handshake() throws IOException;
+
+    /** Decode every complete inbound unit in the buffer (read mode). */
+    void decode(ByteBuffer buf, List<Object> out) throws IOException;
+
+    /** Bytes needed before the next inbound unit can be decoded. */
+    long pendingSize(ByteBuffer buf);
+
+    byte[] encodeAuthResult(AuthResult result) throws IOException;
+
+    byte[] encodeMessage(Message message) throws IOException;
+
+    byte[] encodeUserList(List<User> users) throws IOException;
+
+    /**
+     * Over-capacity rejection. The default answers the auth request with a failed
+     * AUTH_RESULT, which every client understands.
+     */
+    default byte[] encodeBusy(int retryAfterSeconds, String message) throws IOException {
+        return encodeAuthResult(new AuthResult(false, message));
+    }
+
+    /** True if {@link #encodeBusy} can be sent before the client has asked to log in. */
+    default boolean canRejectEarly() {
+        return false;
+    }
+
+    /**
+     * True if the client takes {@link #encodePresence} deltas. Others are sent the
+     * whole user list whenever someone's presence changes.
+     */
+    default boolean supportsPresenceDeltas() {
+        return false;
+    }
+
+    /** Users whose presence changed; only called if {@link #supportsPresenceDeltas()}. */
+    default byte[] encodePresence(List<User> changed, long version) throws IOException {
+        throw new ProtocolException(name() + " does not support presence deltas");
+    }
+
+    /** Full directory as of a presence version. Without delta support, a plain user list. */
+    default byte[] encodeSnapshot(List<User> users, long version) throws IOException {
+        return encodeUserList(users);
+    }
+
+    /**
+     * True if the client pages through the directory with {@link com.chatapp.protocol.DirectorySync}
+     * requests. It gets no snapshot at login; it asks for what it is missing.
+     */
+    default boolean supportsDirectorySync() {
+        return false;
+    }
+
+    /** Only called if {@link #supportsDirectorySync()}. */
+    default byte[] encodeDirectoryPage(DirectoryPage page) throws IOException {
+        throw new ProtocolException(name() + " does not support directory sync");
+    }
+
+    /**
+     * True if the client subscribes to the users it wants presence for, and takes
+     * deltas numbered per connection. Others get every change.
+     */
+    default boolean supportsPresenceSubscriptions() {
+        return false;
+    }
+
+    /** True if the client keeps a session token from AUTH_RESULT and may RESUME with it. */
+    default boolean supportsSessionResumption() {
+        return false;
+    }
+
+    /** Only called for clients that sent a username check, i.e. binary v8. */
+    default byte[] encodeUsernameStatus(UsernameStatus status) throws IOException {
+        throw new ProtocolException(name() + " does not support username checks");
+    }
+
+    /** Heartbeat probe, or null if the peer cannot answer one. */
+    default byte[] encodePing() throws IOException {
+        return null;
+    }
+
+    String name();
+
+    /**
+     * Connections whose protocols return equal keys encode the same object to identical
+     * bytes, so a broadcast can be encoded once and shared. Null if encoding depends on
+     * per-connection state.
+     */
+    default Object sharedEncodingKey() {
+        return null;
+    }
+
+    /**
+     * Pick the protocol from the first bytes of the connection.
+     *
+     * @return null if more bytes are needed
+     */
+    static ConnectionProtocol detect(ByteBuffer buf) throws IOException {
+        if (buf.remaining() < 2) {
+            return null;
+        }
+        int first = buf.get(buf.position()) & 0xFF;
+        int second = buf.get(buf.position() + 1) & 0xFF;
+
+        if (first == 0xAC && second == 0xED) {
+            if (!ALLOW_LEGACY) {
+                throw new ProtocolException("Legacy protocol disabled");
+            }
+            return new LegacyProtocol();
+        }
+        if (Protocol.startsWithMagic(buf)) {
+            if (buf.remaining() < Protocol.PREAMBLE_SIZE) {
+                return null;
+            }
+            byte[] preamble = new byte[Protocol.PREAMBLE_SIZE];
+            buf.get(preamble);
+            int version = Protocol.readPreamble(preamble);
+            return new BinaryProtocol(Math.min(version, Protocol.VERSION));
+        }
+        throw new ProtocolException("Unrecognized protocol");
+    }
+}
@@ -0,0 +1,440 @@
+package com.chatapp.server;
+
+import com.chatapp.database.MessageDAO;
+import com.chatapp.database.UserDAO;
+import com.chatapp.model.Message;
+import com.chatapp.model.User;
+import com.chatapp.protocol.AuthRequest;
+import com.chatapp.protocol.AuthResult;
+import com.chatapp.protocol.BinaryCodec;
+import com.chatapp.protocol.Frame;
+import com.chatapp.protocol.Opcode;
+import com.chatapp.protocol.Protocol;
+import com.chatapp.protocol.ProtocolException;
+import com.chatapp.util.NetworkUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StreamCorruptedException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Soak test for per-connection memory. Run this to check that a long session does
+ * not grow the heap.
+ *
+ * Starts a real server on loopback, with the threaded handlers or (--mode=nio) the
+ * event loops, and connects two clients to it. Both register, then broadcast to each
+ * other, so every message is decoded by a {@link ServerHandler}, routed, queued on the
+ * other's {@link OutboundQueue} and written back out by the server's own writer. The
+ * user and message DAOs are stand-ins (no database needed), and broadcasts are not
+ * kept in chat history. A sender stays at most --window messages ahead of its reader,
+ * so nothing is shed or evicted as a slow consumer.
+ *
+ * The heap is sampled after a GC every --sample messages; the run fails (exit code 1)
+ * if it grew by more than --max-growth-mb since the first sample.
+ *
+ * Usage: ConnectionSoak [--protocol=legacy|binary] [--mode=threaded|nio]
+ *                       [--messages=1000000] [--sample=100000] [--max-growth-mb=16]
+ *                       [--window=1000]
+ */
+public class ConnectionSoak {
+    private static final String PASSWORD = "soak-password";
+    private static final long CONNECT_TIMEOUT_MS = 5000;
+
+    private ConnectionSoak() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String protocol = "legacy";
+        String mode = "threaded";
+        long messages = 1_000_000;
+        long sample = 100_000;
+        long maxGrowthMb = 16;
+        int window = 1000;
+
+        for (String arg : args) {
+            if (arg.startsWith("--protocol=")) {
+                protocol = arg.substring("--protocol=".length());
+            } else if (arg.startsWith("--mode=")) {
+                mode = arg.substring("--mode=".length());
+            } else if (arg.startsWith("--messages=")) {
+                messages = Long.parseLong(arg.substring("--messages=".length()));
+            } else if (arg.startsWith("--sample=")) {
+                sample = Long.parseLong(arg.substring("--sample=".length()));
+            } else if (arg.startsWith("--max-growth-mb=")) {
+                maxGrowthMb = Long.parseLong(arg.substring("--max-growth-mb=".length()));
+            } else if (arg.startsWith("--window=")) {
+                window = Integer.parseInt(arg.substring("--window=".length()));
+            } else {
+                System.err.println("⚠️  Unknown argument: " + arg);
+            }
+        }
+        boolean legacy = protocol.equals("legacy");
+        boolean nio = mode.equals("nio");
+
+        UserManager.installInstance(new UserManager(new StandInUserDAO(), new StandInMessageDAO(),
+                UserManager.LOCK_STRIPES));
+
+        // The server logs every message it routes; System.out would be what gets measured
+        PrintStream console = System.out;
+        console.println("🧪 Soak: " + messages + " messages each way between two " + protocol
+                + " clients through a " + (nio ? "NIO" : "threaded") + " server");
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        SoakServer server = nio ? startNio() : startThreaded();
+        try (SoakClient alice = SoakClient.register("soak-alice", server.port(), legacy);
+             SoakClient bob = SoakClient.register("soak-bob", server.port(), legacy)) {
+
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            long total = messages;
+            int ahead = Math.max(1, window);
+
+            List<Thread> threads = List.of(
+                    thread("soak-alice-out", failure, () -> alice.sendAll(total, bob, ahead, failure)),
+                    thread("soak-bob-in", failure, () -> bob.receiveAll(total)),
+                    thread("soak-bob-out", failure, () -> bob.sendAll(total, alice, ahead, failure)),
+                    thread("soak-alice-in", failure, () -> alice.receiveAll(total)));
+            threads.forEach(Thread::start);
+
+            long baseline = -1;
+            long next = sample;
+            while (threads.stream().anyMatch(Thread::isAlive) && failure.get() == null) {
+                long received = alice.received() + bob.received();
+                if (received >= next) {
+                    long used = usedHeapAfterGc();
+                    if (baseline < 0) {
+                        baseline = used;
+                    }
+                    console.printf("   %,d messages received, heap %,d KB (%+,d KB)%n",
+                            received, used / 1024, (used - baseline) / 1024);
+                    next += sample;
+                }
+                Thread.sleep(50);
+            }
+            if (failure.get() != null) {
+                console.println("❌ Soak failed: " + failure.get());
+                System.exit(1);
+            }
+            for (Thread t : threads) {
+                t.join();
+            }
+
+            long growth = baseline < 0 ? 0 : usedHeapAfterGc() - baseline;
+            if (growth > maxGrowthMb * 1024 * 1024) {
+                console.printf("❌ Heap grew by %,d KB over the run%n", growth / 1024);
+                System.exit(1);
+            }
+            console.printf("✅ Heap stable: %+,d KB after %,d messages%n", growth / 1024,
+                    alice.received() + bob.received());
+        } finally {
+            server.stop();
+        }
+    }
+
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    private static Thread thread(String name, AtomicReference<Throwable> failure, Task task) {
+        Thread t = new Thread(() -> {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        }, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    // ==================== Server ====================
+
+    private interface SoakServer {
+        int port();
+
+        void stop() throws IOException;
+    }
+
+    // Accepts the way ChatServer does in THREADED mode: a handler thread per connection,
+    // writes on a shared writer pool
+    private static SoakServer startThreaded() throws IOException {
+        ServerSocket listener = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        AtomicInteger writerId = new AtomicInteger();
+        ExecutorService writers = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "soak-writer-" + writerId.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        Thread acceptor = new Thread(() -> {
+            while (!listener.isClosed()) {
+                try {
+                    Socket socket = listener.accept();
+                    Thread handler = new Thread(new ServerHandler(socket, writers), "soak-handler");
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (IOException e) {
+                    if (!listener.isClosed()) {
+                        System.err.println("Error accepting client: " + e.getMessage());
+                    }
+                }
+            }
+        }, "soak-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        return new SoakServer() {
+            @Override
+            public int port() {
+                return listener.getLocalPort();
+            }
+
+            @Override
+            public void stop() throws IOException {
+                listener.close();
+                writers.shutdownNow();
+            }
+        };
+    }
+
+    private static SoakServer startNio() throws IOException {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort(); // NioServer takes a fixed port; clients retry until it binds
+        }
+        NioServer server = new NioServer(port, 1, 2);
+        Thread acceptor = new Thread(() -> {
+            try {
+                server.start();
+            } catch (IOException e) {
+                System.err.println("❌ Could not start NIO server: " + e.getMessage());
+            }
+        }, "soak-nio-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        return new SoakServer() {
+            @Override
+            public int port() {
+                return port;
+            }
+
+            @Override
+            public void stop() {
+                server.shutdown();
+            }
+        };
+    }
+
+    // ==================== Clients ====================
+
+    /** Just enough of LegacyClientCodec / BinaryClientCodec to register and chat. */
+    private static final class SoakClient implements Closeable {
+        private final String name;
+        private final boolean legacy;
+        private final Socket socket;
+        private final OutputStream out;           // binary
+        private final DataInputStream in;         // binary
+        private final ObjectOutputStream objectOut; // legacy
+        private final ObjectInputStream objectIn;   // legacy
+        private volatile long received;
+
+        private SoakClient(String name, Socket socket, boolean legacy) throws IOException {
+            this.name = name;
+            this.socket = socket;
+            this.legacy = legacy;
+            if (legacy) {
+                out = null;
+                in = null;
+                objectOut = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                objectOut.flush();
+                objectIn = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+            } else {
+                objectOut = null;
+                objectIn = null;
+                out = new BufferedOutputStream(socket.getOutputStream());
+                in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                out.write(Protocol.preamble(Protocol.VERSION));
+                out.flush();
+                byte[] reply = new byte[Protocol.PREAMBLE_SIZE];
+                in.readFully(reply);
+                if (Protocol.readPreamble(reply) < 1) {
+                    throw new ProtocolException("Server does not speak the binary protocol");
+                }
+            }
+        }
+
+        static SoakClient register(String name, int port, boolean legacy) throws IOException, InterruptedException {
+            SoakClient client = new SoakClient(name, connect(port), legacy);
+            AuthResult result = client.authenticate(new AuthRequest(AuthRequest.Type.REGISTER, name, PASSWORD,
+                    name + "@soak.invalid"));
+            if (!result.isSuccess()) {
+                client.close();
+                throw new IOException("Could not register " + name + ": " + result.getMessage());
+            }
+            return client;
+        }
+
+        private static Socket connect(int port) throws IOException, InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CONNECT_TIMEOUT_MS);
+            while (true) {
+                try {
+                    return new Socket(InetAddress.getLoopbackAddress(), port);
+                } catch (ConnectException e) {
+                    if (System.nanoTime() > deadline) {
+                        throw e;
+                    }
+                    Thread.sleep(50); // Server still starting
+                }
+            }
+        }
+
+        private AuthResult authenticate(AuthRequest request) throws IOException {
+            if (legacy) {
+                objectOut.writeObject(request.getType().name());
+                objectOut.writeObject(request.getUsername());
+                objectOut.writeObject(request.getPassword());
+                if (request.getType() == AuthRequest.Type.REGISTER) {
+                    objectOut.writeObject(request.getEmail());
+                }
+                objectOut.reset();
+                objectOut.flush();
+                boolean success = (boolean) readObject();
+                return new AuthResult(success, (String) readObject());
+            }
+
+            synchronized (this) {
+                out.write(BinaryCodec.encodeAuthRequest(request));
+                out.flush();
+            }
+            Frame frame = Frame.read(in);
+            while (frame.getOpcode() == Opcode.PING) {
+                pong(frame);
+                frame = Frame.read(in);
+            }
+            if (frame.getOpcode() == Opcode.BUSY) {
+                throw BinaryCodec.decodeBusy(frame);
+            }
+            if (frame.getOpcode() != Opcode.AUTH_RESULT) {
+                throw new ProtocolException("Expected AUTH_RESULT, got " + frame.getOpcode());
+            }
+            return BinaryCodec.decodeAuthResult(frame);
+        }
+
+        long received() {
+            return received;
+        }
+
+        // Never more than window messages ahead of what the peer has read
+        void sendAll(long count, SoakClient peer, int window, AtomicReference<Throwable> failure)
+                throws IOException {
+            for (long i = 0; i < count; i++) {
+                while (i - peer.received() >= window) {
+                    if (failure.get() != null) {
+                        return;
+                    }
+                    LockSupport.parkNanos(100_000);
+                }
+                send(new Message(name, "soak message #" + i, Message.MessageType.TEXT));
+            }
+        }
+
+        private synchronized void send(Message message) throws IOException {
+            if (legacy) {
+                NetworkUtil.sendMessage(objectOut, message);
+            } else {
+                out.write(BinaryCodec.encodeMessage(message));
+                out.flush();
+            }
+        }
+
+        // Counts the peer's broadcasts; presence, notices and pings are not part of the count
+        void receiveAll(long count) throws IOException {
+            while (received < count) {
+                Message message = null;
+                if (legacy) {
+                    String tag = (String) readObject();
+                    Object body = readObject();
+                    if ("MESSAGE".equals(tag)) {
+                        message = (Message) body;
+                    }
+                } else {
+                    Frame frame = Frame.read(in);
+                    if (frame.getOpcode() == Opcode.MESSAGE) {
+                        message = BinaryCodec.decodeMessage(frame);
+                    } else if (frame.getOpcode() == Opcode.PING) {
+                        pong(frame);
+                    }
+                }
+                if (message != null && message.getType() == Message.MessageType.TEXT) {
+                    received++; // Only this thread writes it
+                }
+            }
+        }
+
+        private synchronized void pong(Frame ping) throws IOException {
+            out.write(BinaryCodec.encodePong(ping));
+            out.flush();
+        }
+
+        private Object readObject() throws IOException {
+            try {
+                return objectIn.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new StreamCorruptedException("Class not found: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    // ==================== Stand-in database ====================
+
+    private static class StandInUserDAO extends UserDAO {
+        @Override
+        public boolean createUser(String username, String password, String email) {
+            return true;
+        }
+
+        @Override
+        public User authenticateUser(String username, String password) {
+            return null;
+        }
+    }
+
+    private static class StandInMessageDAO extends MessageDAO {
+        @Override
+        public List<Message> getOfflineMessages(String username) {
+            return List.of();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.chatapp.server;
+
+import com.chatapp.util.EnvConfig;
+
+/**
+ * Finds dead connections (closed laptop, NAT timeout) that TCP alone would keep open.
+ *
+ * Every connection gets a check on one shared {@link TimingWheel} each
+ * HEARTBEAT_INTERVAL_MS. A client that has been quiet that long is sent a PING; one
+ * that has sent nothing for IDLE_TIMEOUT_MS is closed, which runs the usual
+ * {@link ServerHandler#cleanup()} so it goes OFFLINE and its private messages go to
+ * the offline queue. Inbound reads only stamp a timestamp, nothing is rescheduled.
+ */
+class HeartbeatMonitor {
+    static final long INTERVAL_MS = EnvConfig.getLong("HEARTBEAT_INTERVAL_MS", 30_000);
+    static final long IDLE_TIMEOUT_MS = EnvConfig.getLong("IDLE_TIMEOUT_MS", 90_000);
+
+    private static final long TICK_MS = 100;
+    private static final int WHEEL_SIZE = 1024;
+
+    private static HeartbeatMonitor instance;
+
+    private final TimingWheel wheel = new TimingWheel("heartbeat-wheel", TICK_MS, WHEEL_SIZE);
+
+    private HeartbeatMonitor() {
+    }
+
+    static synchronized HeartbeatMonitor getInstance() {
+        if (instance == null) {
+            instance = new HeartbeatMonitor();
+        }
+        return instance;
+    }
+
+    static boolean isEnabled() {
+        return INTERVAL_MS > 0 && IDLE_TIMEOUT_MS > 0;
+    }
+
+    void watch(ServerHandler handler) {
+        if (!isEnabled()) {
+            return;
+        }
+        wheel.start();
+        schedule(handler, INTERVAL_MS);
+    }
+
+    private void schedule(ServerHandler handler, long delayMillis) {
+        handler.setHeartbeatTimeout(wheel.schedule(() -> check(handler), delayMillis));
+    }
+
+    // Wheel thread
+    private void check(ServerHandler handler) {
+        long next = handler.checkHeartbeat(INTERVAL_MS, IDLE_TIMEOUT_MS);
+        if (next > 0) {
+            schedule(handler, next);
+        }
+    }
+
+    void stop() {
+        wheel.stop();
+    }
+}
@@ -0,0 +1,199 @@
+package com.chatapp.server;
+
+import com.chatapp.database.MessageDAO;
+import com.chatapp.model.Message;
+import com.chatapp.util.EnvConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group commit for chat history. Handlers queue private messages and deliver them
+ * straight away; one writer thread takes what has queued up and inserts it as a single
+ * JDBC batch in one transaction, instead of one autocommit INSERT per message on the
+ * sender's thread.
+ *
+ * A batch goes out when it reaches HISTORY_BATCH_SIZE or HISTORY_FLUSH_INTERVAL_MS
+ * after its first message, whichever comes first. Messages that arrive while a batch
+ * commits wait for the next one, so batches grow with load on their own. A failed
+ * batch is retried a few times, then dropped and counted in history.lost.
+ *
+ * {@link #append} returns a future that completes with whether the message was
+ * committed. It completes on the writer thread: callers that want to do more than
+ * look at it should chain with the *Async methods.
+ *
+ * With the {@link MessageJournal} running, messages go there instead and the future
+ * completes once the message is on local disk; this queue only takes them while the
+ * journal is off or cannot keep up.
+ */
+class HistoryWriter {
+    static final int BATCH_SIZE = EnvConfig.getInt("HISTORY_BATCH_SIZE", 200);
+    static final long FLUSH_INTERVAL_MS = EnvConfig.getLong("HISTORY_FLUSH_INTERVAL_MS", 10);
+    static final int QUEUE_CAPACITY = EnvConfig.getInt("HISTORY_QUEUE_CAPACITY", 10_000);
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MS = 100;
+    private static final long IDLE_POLL_MS = 100;
+
+    private static final ServerMetrics metrics = ServerMetrics.getInstance();
+
+    private static HistoryWriter instance;
+
+    private record Pending(Message message, CompletableFuture<Boolean> committed) {
+    }
+
+    private final MessageDAO messageDAO = new MessageDAO();
+    private final MessageJournal journal = MessageJournal.getInstance();
+    private final BlockingQueue<Pending> queue = new ArrayBlockingQueue<>(Math.max(1, QUEUE_CAPACITY));
+    private volatile boolean running;
+    private Thread writer;
+
+    private HistoryWriter() {
+    }
+
+    static synchronized HistoryWriter getInstance() {
+        if (instance == null) {
+            instance = new HistoryWriter();
+        }
+        return instance;
+    }
+
+    synchronized void start() {
+        if (writer != null) {
+            return;
+        }
+        running = true;
+        writer = new Thread(this::run, "history-writer");
+        writer.setDaemon(true);
+        writer.start();
+        metrics.registerGauge("history.queued", queue::size);
+        System.out.println("💾 Chat history group commit: up to " + BATCH_SIZE + " messages or "
+                + FLUSH_INTERVAL_MS + " ms per batch");
+    }
+
+    /**
+     * Queue a message for chat history.
+     *
+     * @return completes with true once the message is committed (or was not one to
+     *         keep), false if it could not be saved
+     */
+    CompletableFuture<Boolean> append(Message message) {
+        if (!MessageDAO.belongsInHistory(message)) {
+            return CompletableFuture.completedFuture(true);
+        }
+        if (journal.append(MessageJournal.Kind.HISTORY, message)) {
+            return CompletableFuture.completedFuture(true); // On disk; the journal drains it
+        }
+        Pending pending = new Pending(message, new CompletableFuture<>());
+        if (!running || !queue.offer(pending)) {
+            // Not started, stopping, or full: write it on the caller's thread, which
+            // also slows down whoever is outrunning the database
+            metrics.increment("history.direct");
+            return CompletableFuture.completedFuture(messageDAO.saveToChatHistory(message));
+        }
+        return pending.committed();
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(BATCH_SIZE);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                fill(batch, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MS));
+            } catch (InterruptedException e) {
+                running = false; // Flush what we have and whatever is still queued
+            }
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    // Top up the batch until it is full, the deadline passes or we are stopping
+    private void fill(List<Pending> batch, long deadline) throws InterruptedException {
+        while (batch.size() < BATCH_SIZE) {
+            queue.drainTo(batch, BATCH_SIZE - batch.size());
+            long left = deadline - System.nanoTime();
+            if (batch.size() >= BATCH_SIZE || left <= 0 || !running) {
+                return;
+            }
+            Pending next = queue.poll(left, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            messages.add(pending.message());
+        }
+
+        long start = System.nanoTime();
+        boolean saved = false;
+        try {
+            for (int attempt = 1; attempt <= MAX_ATTEMPTS && !saved; attempt++) {
+                if (attempt > 1) {
+                    metrics.increment("history.flush.retries");
+                    Thread.sleep(RETRY_DELAY_MS * (attempt - 1));
+                }
+                saved = messageDAO.saveToChatHistory(messages);
+            }
+        } catch (InterruptedException e) {
+            running = false;
+        } catch (RuntimeException e) {
+            System.err.println("❌ Chat history flush failed: " + e.getMessage());
+        }
+
+        if (saved) {
+            metrics.record("history.batch.size", messages.size());
+            metrics.record("history.commit.ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } else {
+            metrics.add("history.lost", messages.size());
+            System.err.println("❌ Dropped " + messages.size() + " chat history messages after "
+                    + MAX_ATTEMPTS + " attempts");
+        }
+        for (Pending pending : batch) {
+            pending.committed().complete(saved);
+        }
+    }
+
+    /** Commit what is queued and stop the writer. */
+    void stop() {
+        Thread thread;
+        synchronized (this) {
+            thread = writer;
+            writer = null;
+        }
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            System.err.println("⚠️  Chat history writer still busy after 5 s, " + queue.size() + " messages queued");
+            return;
+        }
+
+        // Anything queued while the writer was finishing up
+        List<Pending> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        flush(rest);
+    }
+}
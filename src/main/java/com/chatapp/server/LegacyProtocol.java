@@ -0,0 +1,129 @@
+package com.chatapp.server;
+
+import com.chatapp.model.Message;
+import com.chatapp.model.User;
+import com.chatapp.protocol.AuthRequest;
+import com.chatapp.protocol.AuthResult;
+import com.chatapp.util.NetworkUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamConstants;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The original ObjectStream protocol, kept for clients that predate the binary one.
+ *
+ * Inbound: auth fields as separate Strings, then one Gson JSON String per message.
+ * These are split out by {@link ObjectStreamDecoder}, so the server never runs Java
+ * deserialization. Outbound: a "MESSAGE" / "USERS_LIST" tag followed by the
+ * serialized object, each frame self-contained (see {@link #encodeFrame}).
+ */
+class LegacyProtocol implements ConnectionProtocol {
+    private final ObjectStreamDecoder decoder = new ObjectStreamDecoder();
+    private final List<String> pendingAuth = new ArrayList<>();
+    private boolean authenticated;
+
+    private static final byte[] STREAM_HEADER = {
+            (byte) (ObjectStreamConstants.STREAM_MAGIC >> 8), (byte) ObjectStreamConstants.STREAM_MAGIC,
+            (byte) (ObjectStreamConstants.STREAM_VERSION >> 8), (byte) ObjectStreamConstants.STREAM_VERSION
+    };
+
+    @Override
+    public byte[] handshake() {
+        return STREAM_HEADER.clone();
+    }
+
+    @Override
+    public void decode(ByteBuffer buf, List<Object> events) throws IOException {
+        List<String> strings = new ArrayList<>();
+        decoder.decode(buf, strings);
+
+        for (String s : strings) {
+            if (authenticated) {
+                events.add(NetworkUtil.parseMessage(s));
+                continue;
+            }
+
+            // The first three (LOGIN) or four (REGISTER) strings are the auth handshake
+            pendingAuth.add(s);
+            boolean register = "REGISTER".equals(pendingAuth.get(0));
+            if (pendingAuth.size() < (register ? 4 : 3)) {
+                continue;
+            }
+
+            AuthRequest.Type type = register ? AuthRequest.Type.REGISTER
+                    : "LOGIN".equals(pendingAuth.get(0)) ? AuthRequest.Type.LOGIN : null;
+            if (type == null) {
+                throw new IOException("Unknown auth type: " + pendingAuth.get(0));
+            }
+            events.add(new AuthRequest(type, pendingAuth.get(1), pendingAuth.get(2),
+                    register ? pendingAuth.get(3) : null));
+            pendingAuth.clear();
+
+            // A failed attempt closes the connection, so anything after this is a message
+            authenticated = true;
+        }
+    }
+
+    @Override
+    public long pendingSize(ByteBuffer buf) {
+        return decoder.pendingRecordSize(buf);
+    }
+
+    @Override
+    public byte[] encodeAuthResult(AuthResult result) throws IOException {
+        return encodeFrame(result.isSuccess(), result.getMessage());
+    }
+
+    @Override
+    public byte[] encodeMessage(Message message) throws IOException {
+        return encodeFrame("MESSAGE", message);
+    }
+
+    @Override
+    public byte[] encodeUserList(List<User> users) throws IOException {
+        return encodeFrame("USERS_LIST", new ArrayList<>(users));
+    }
+
+    @Override
+    public Object sharedEncodingKey() {
+        return name(); // Frames do not depend on what was sent before
+    }
+
+    @Override
+    public String name() {
+        return "legacy";
+    }
+
+    /**
+     * TC_RESET followed by the objects as a fresh stream would write them. The client's
+     * ObjectInputStream drops its handle table at every frame, so neither side keeps
+     * references to old messages, at the cost of resending class descriptors.
+     */
+    private static byte[] encodeFrame(Object... objects) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+        buffer.write(ObjectStreamConstants.TC_RESET);
+        try (ObjectOutputStream out = new FrameOutputStream(buffer)) {
+            for (Object object : objects) {
+                out.writeObject(object);
+            }
+        }
+        return buffer.toByteArray();
+    }
+
+    // The stream header is sent once, in handshake()
+    private static class FrameOutputStream extends ObjectOutputStream {
+        FrameOutputStream(OutputStream out) throws IOException {
+            super(out);
+        }
+
+        @Override
+        protected void writeStreamHeader() {
+        }
+    }
+}
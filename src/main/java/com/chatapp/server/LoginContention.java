@@ -0,0 +1,184 @@
+package com.chatapp.server;
+
+import com.chatapp.database.MessageDAO;
+import com.chatapp.database.UserDAO;
+import com.chatapp.model.User;
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Contention benchmark for the login path through {@link UserManager}: password
+ * check, going online, fetching offline messages, going offline.
+ *
+ * The database is simulated (no MySQL needed): password checks run a real BCrypt
+ * verify at --cost, and every other DAO call parks for --db-latency-us to stand in
+ * for a JDBC round trip. Each thread count runs twice: "global" holds one lock around
+ * every call, like UserManager did before it was striped; "striped" is the real thing.
+ * Striped throughput should grow with threads up to the core count, global stays flat.
+ *
+ * Console logging from UserManager is muted while measuring; System.out is itself a
+ * lock and would otherwise be what gets measured.
+ *
+ * Usage: LoginContention [--threads=1,2,4,8] [--seconds=5] [--cost=8]
+ *                        [--db-latency-us=500] [--users=10000]
+ */
+public class LoginContention {
+    private static final String PASSWORD = "correct horse battery staple";
+
+    private LoginContention() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        List<Integer> threadCounts = defaultThreadCounts(cores);
+        long seconds = 5;
+        int cost = 8;
+        long dbLatencyMicros = 500;
+        int users = 10_000;
+
+        for (String arg : args) {
+            if (arg.startsWith("--threads=")) {
+                threadCounts = new ArrayList<>();
+                for (String n : arg.substring("--threads=".length()).split(",")) {
+                    threadCounts.add(Integer.parseInt(n.trim()));
+                }
+            } else if (arg.startsWith("--seconds=")) {
+                seconds = Long.parseLong(arg.substring("--seconds=".length()));
+            } else if (arg.startsWith("--cost=")) {
+                cost = Integer.parseInt(arg.substring("--cost=".length()));
+            } else if (arg.startsWith("--db-latency-us=")) {
+                dbLatencyMicros = Long.parseLong(arg.substring("--db-latency-us=".length()));
+            } else if (arg.startsWith("--users=")) {
+                users = Integer.parseInt(arg.substring("--users=".length()));
+            } else {
+                System.err.println("⚠️  Unknown argument: " + arg);
+            }
+        }
+
+        String hash = BCrypt.hashpw(PASSWORD, BCrypt.gensalt(cost));
+        SimulatedUserDAO userDAO = new SimulatedUserDAO(hash, TimeUnit.MICROSECONDS.toNanos(dbLatencyMicros));
+        SimulatedMessageDAO messageDAO = new SimulatedMessageDAO(TimeUnit.MICROSECONDS.toNanos(dbLatencyMicros));
+        ServerHandler session = new ServerHandler(new Socket(), Runnable::run); // never connected
+
+        PrintStream console = System.out;
+        console.println("🧪 Login contention: " + cores + " cores, BCrypt cost " + cost + ", "
+                + dbLatencyMicros + " µs per simulated query, " + seconds + " s per run");
+        console.printf("%8s %16s %16s %8s%n", "threads", "global logins/s", "striped logins/s", "speedup");
+
+        for (int threads : threadCounts) {
+            UserManager global = new UserManager(userDAO, messageDAO, 1);
+            UserManager striped = new UserManager(userDAO, messageDAO, UserManager.LOCK_STRIPES);
+
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            double globalRate;
+            double stripedRate;
+            try {
+                globalRate = run(global, new ReentrantLock(), session, threads, users, seconds);
+                stripedRate = run(striped, null, session, threads, users, seconds);
+            } finally {
+                System.setOut(console);
+            }
+            console.printf("%8d %16.0f %16.0f %7.1fx%n", threads, globalRate, stripedRate, stripedRate / globalRate);
+        }
+    }
+
+    private static List<Integer> defaultThreadCounts(int cores) {
+        List<Integer> counts = new ArrayList<>();
+        for (int n = 1; n < cores * 2; n *= 2) {
+            counts.add(n);
+        }
+        counts.add(cores * 2);
+        return counts;
+    }
+
+    /** @return logins per second */
+    private static double run(UserManager manager, ReentrantLock globalLock, ServerHandler session,
+                              int threads, int users, long seconds) throws InterruptedException {
+        LongAdder logins = new LongAdder();
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            int offset = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = offset; running.get(); i += threads) {
+                        login(manager, globalLock, session, "bench" + (i % users));
+                        logins.increment();
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "login-bench-" + t);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        long start = System.nanoTime();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        running.set(false);
+        done.await();
+        return logins.sum() / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private static void login(UserManager manager, ReentrantLock globalLock, ServerHandler session, String username) {
+        call(globalLock, () -> manager.authenticateUser(username, PASSWORD));
+        call(globalLock, () -> manager.addOnlineUser(username, session));
+        call(globalLock, () -> manager.getOfflineMessages(username));
+        call(globalLock, () -> manager.removeOnlineUser(username, session));
+    }
+
+    private static void call(ReentrantLock globalLock, Runnable step) {
+        if (globalLock == null) {
+            step.run();
+            return;
+        }
+        globalLock.lock();
+        try {
+            step.run();
+        } finally {
+            globalLock.unlock();
+        }
+    }
+
+    private static class SimulatedUserDAO extends UserDAO {
+        private final String hash;
+        private final long latencyNanos;
+
+        SimulatedUserDAO(String hash, long latencyNanos) {
+            this.hash = hash;
+            this.latencyNanos = latencyNanos;
+        }
+
+        @Override
+        public User authenticateUser(String username, String password) {
+            LockSupport.parkNanos(latencyNanos);
+            return BCrypt.checkpw(password, hash) ? new User(username, hash) : null;
+        }
+    }
+
+    private static class SimulatedMessageDAO extends MessageDAO {
+        private final long latencyNanos;
+
+        SimulatedMessageDAO(long latencyNanos) {
+            this.latencyNanos = latencyNanos;
+        }
+
+        @Override
+        public List<com.chatapp.model.Message> getOfflineMessages(String username) {
+            LockSupport.parkNanos(latencyNanos);
+            return List.of();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.chatapp.server;
+
+import com.chatapp.util.EnvConfig;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Token buckets for password attempts, one per remote address and one per username,
+ * checked before the attempt reaches BCrypt or the database. One script hammering
+ * logins then costs a map lookup per try instead of a core.
+ *
+ * Each bucket is a single AtomicLong (the GCRA form of a token bucket): the time at
+ * which it would be full again. Taking a token is one CAS. Each map keeps at most
+ * {@link #MAX_KEYS} buckets: keys also go into a ring in the order they were added,
+ * and adding one drops the key it overwrites there. Approximate (a key that is still
+ * busy can be dropped and start over with a full bucket), but O(1) and lock-free.
+ */
+class LoginLimiter {
+    static final int IP_BURST = EnvConfig.getInt("LOGIN_IP_BURST", 20);
+    static final int IP_PER_MINUTE = EnvConfig.getInt("LOGIN_IP_PER_MINUTE", 60);
+    static final int USER_BURST = EnvConfig.getInt("LOGIN_USER_BURST", 5);
+    static final int USER_PER_MINUTE = EnvConfig.getInt("LOGIN_USER_PER_MINUTE", 10);
+    static final int CHECK_BURST = EnvConfig.getInt("USERNAME_CHECK_BURST", 30);
+    static final int CHECK_PER_MINUTE = EnvConfig.getInt("USERNAME_CHECK_PER_MINUTE", 120);
+    static final int MAX_KEYS = EnvConfig.getInt("LOGIN_LIMITER_MAX_KEYS", 100_000);
+
+    private static LoginLimiter instance;
+
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+    private final Buckets<InetAddress> byAddress = new Buckets<>(IP_BURST, IP_PER_MINUTE);
+    private final Buckets<String> byUsername = new Buckets<>(USER_BURST, USER_PER_MINUTE);
+    private final Buckets<InetAddress> checksByAddress = new Buckets<>(CHECK_BURST, CHECK_PER_MINUTE);
+
+    private LoginLimiter() {
+        metrics.registerGauge("login.limiter.keys",
+                () -> byAddress.size() + byUsername.size() + checksByAddress.size());
+    }
+
+    static synchronized LoginLimiter getInstance() {
+        if (instance == null) {
+            instance = new LoginLimiter();
+        }
+        return instance;
+    }
+
+    /**
+     * Take a token from the address's bucket and, if given, the username's.
+     *
+     * @param address the remote address, or null if unknown
+     * @return 0 if the attempt may go ahead, else ms until it would be allowed
+     */
+    long tryAcquire(InetAddress address, String username) {
+        long now = System.nanoTime();
+        long wait = address != null ? byAddress.tryAcquire(address, now) : 0;
+        if (wait > 0) {
+            metrics.increment("login.limited.ip");
+            return TimeUnit.NANOSECONDS.toMillis(wait) + 1;
+        }
+        wait = username != null ? byUsername.tryAcquire(username, now) : 0;
+        if (wait > 0) {
+            metrics.increment("login.limited.user");
+            return TimeUnit.NANOSECONDS.toMillis(wait) + 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Take a token for a "username available?" check, from a bucket of its own: they
+     * are cheap, but answer who is registered, so unlimited they list every user.
+     *
+     * @return 0 if the check may go ahead, else ms until it would be allowed
+     */
+    long tryAcquireCheck(InetAddress address) {
+        long wait = address != null ? checksByAddress.tryAcquire(address, System.nanoTime()) : 0;
+        if (wait > 0) {
+            metrics.increment("login.limited.check");
+            return TimeUnit.NANOSECONDS.toMillis(wait) + 1;
+        }
+        return 0;
+    }
+
+    private static class Buckets<K> {
+        private final long intervalNanos;  // one token back every interval
+        private final long toleranceNanos; // how far ahead a full bucket lets us go
+        private final Map<K, AtomicLong> buckets = new ConcurrentHashMap<>();
+        private final AtomicReferenceArray<K> added = new AtomicReferenceArray<>(Math.max(1, MAX_KEYS));
+        private final AtomicLong addCount = new AtomicLong();
+
+        Buckets(int burst, int perMinute) {
+            intervalNanos = TimeUnit.MINUTES.toNanos(1) / Math.max(1, perMinute);
+            toleranceNanos = intervalNanos * Math.max(0, burst - 1);
+        }
+
+        /** @return 0 if a token was taken, else nanos until one is available */
+        long tryAcquire(K key, long now) {
+            AtomicLong bucket = buckets.get(key);
+            if (bucket == null) {
+                AtomicLong fresh = new AtomicLong(now);
+                bucket = buckets.putIfAbsent(key, fresh);
+                if (bucket == null) {
+                    bucket = fresh;
+                    evictOldest(key);
+                }
+            }
+            while (true) {
+                long fullAt = bucket.get();
+                long start = fullAt - now > 0 ? fullAt : now; // An idle bucket refilled long ago
+                long wait = start - now - toleranceNanos;
+                if (wait > 0) {
+                    return wait;
+                }
+                if (bucket.compareAndSet(fullAt, start + intervalNanos)) {
+                    return 0;
+                }
+            }
+        }
+
+        private void evictOldest(K key) {
+            int slot = (int) (addCount.getAndIncrement() % added.length());
+            K oldest = added.getAndSet(slot, key);
+            if (oldest != null && !oldest.equals(key)) {
+                buckets.remove(oldest);
+            }
+        }
+
+        int size() {
+            return buckets.size();
+        }
+    }
+}
@@ -0,0 +1,756 @@
+package com.chatapp.server;
+
+import com.chatapp.database.JournalDAO;
+import com.chatapp.model.Message;
+import com.chatapp.protocol.BinaryCodec;
+import com.chatapp.protocol.Frame;
+import com.chatapp.protocol.ProtocolException;
+import com.chatapp.util.EnvConfig;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Local append-only journal in front of chat_history and offline_messages, so
+ * delivering a message waits for a local fsync instead of MySQL, and chat keeps
+ * working while the database is briefly away.
+ *
+ * {@link #append} returns once the entry is on disk. One appender thread writes
+ * whatever callers queued meanwhile and syncs it with a single force, so under load
+ * many messages share an fsync. A drainer thread reads the journal back and applies it
+ * to MySQL in batches; while the database is down the journal just grows. A batch that
+ * keeps failing is retried one entry at a time, and an entry MySQL will never take is
+ * moved to quarantine.log (journal.quarantined) instead of blocking the rest.
+ *
+ * Entries are numbered. journal_progress records the last number applied, moved in the
+ * same transaction as the rows, so replaying after a crash or restart applies each
+ * entry exactly once. The journal lives in segment files in JOURNAL_DIR, rolled at
+ * JOURNAL_SEGMENT_BYTES and deleted once applied. Each entry is
+ * [length][seq][kind][crc32c][binary protocol MESSAGE frame]; a torn tail left by a
+ * crash fails its checksum and is cut off at startup.
+ */
+class MessageJournal {
+    static final String DIR = EnvConfig.get("JOURNAL_DIR", "journal");
+    static final long SEGMENT_BYTES = EnvConfig.getLong("JOURNAL_SEGMENT_BYTES", 64L * 1024 * 1024);
+    static final int QUEUE_CAPACITY = EnvConfig.getInt("JOURNAL_QUEUE_CAPACITY", 10_000);
+    static final int DRAIN_BATCH = EnvConfig.getInt("JOURNAL_DRAIN_BATCH", 500);
+
+    /** Which table an entry goes to. Stored by ordinal, so only ever append. */
+    enum Kind {
+        HISTORY, OFFLINE
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+    private static final int HEADER_BYTES = 4 + 8 + 1 + 4; // length, seq, kind, crc
+    private static final int MAX_GROUP = 1024;
+    private static final long IDLE_POLL_MS = 100;
+    private static final long MAX_RETRY_DELAY_MS = 5000;
+    private static final long STOP_DRAIN_MS = 5000;
+    private static final int ONE_BY_ONE_AFTER_FAILURES = 3;
+    private static final String ID_FILE = "journal.id";
+    private static final String QUARANTINE_FILE = "quarantine.log";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final ServerMetrics metrics = ServerMetrics.getInstance();
+
+    private static MessageJournal instance;
+
+    private record Append(Kind kind, String receiver, byte[] frame, CompletableFuture<Boolean> synced) {
+    }
+
+    private record Entry(long seq, Kind kind, Message message) {
+    }
+
+    private static final class Segment {
+        final Path path;
+        final FileChannel channel;
+        volatile long size; // Written and forced; the drainer reads up to here
+
+        Segment(Path path, FileChannel channel, long size) {
+            this.path = path;
+            this.channel = channel;
+            this.size = size;
+        }
+    }
+
+    private final JournalDAO journalDAO = new JournalDAO();
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final BlockingQueue<Append> appends = new LinkedBlockingQueue<>(Math.max(1, QUEUE_CAPACITY));
+    private final Object progress = new Object();
+
+    // Latest OFFLINE entry per receiver not yet in MySQL, so a login waits for its own
+    private final Map<String, Long> offlineSeqs = new ConcurrentHashMap<>();
+
+    private Path dir;
+    private String journalId;
+    private long nextSeq;                     // Appender thread only, once started
+    private volatile long lastSeq;            // Highest entry on disk
+    private volatile long appliedSeq = -1;    // Highest entry in MySQL, -1 until read
+    private volatile boolean running;
+    private volatile boolean accepting;
+    private volatile long stopDeadline;
+    private Thread appender;
+    private Thread drainer;
+
+    private MessageJournal() {
+    }
+
+    static synchronized MessageJournal getInstance() {
+        if (instance == null) {
+            instance = new MessageJournal();
+        }
+        return instance;
+    }
+
+    /**
+     * Recover the journal on disk and start appending and draining. With JOURNAL_DIR
+     * empty, or if the directory cannot be used, messages go to MySQL directly.
+     */
+    synchronized void start() {
+        if (running) {
+            return;
+        }
+        if (DIR.isEmpty()) {
+            System.out.println("ℹ️  JOURNAL_DIR not set, messages are written to the database directly");
+            return;
+        }
+        try {
+            dir = Paths.get(DIR);
+            Files.createDirectories(dir);
+            recover();
+        } catch (IOException e) {
+            System.err.println("❌ Message journal unavailable, writing to the database directly: " + e.getMessage());
+            closeSegments();
+            return;
+        }
+        running = true;
+        accepting = true;
+        appender = new Thread(this::appendLoop, "journal-appender");
+        appender.setDaemon(true);
+        appender.start();
+        drainer = new Thread(this::drainLoop, "journal-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+
+        metrics.registerGauge("journal.lag", () -> lastSeq - Math.max(0, appliedSeq));
+        metrics.registerGauge("journal.segments", segments::size);
+        System.out.println("💾 Message journal in " + dir.toAbsolutePath() + " (" + journalId + "), "
+                + segments.size() + " segments, next entry " + nextSeq);
+    }
+
+    /**
+     * Write a message to the journal and wait until it is on disk.
+     *
+     * @return false if the journal is off, full or failing; the caller then writes
+     *         the message to the database itself
+     */
+    boolean append(Kind kind, Message message) {
+        if (!accepting) {
+            return false;
+        }
+        byte[] frame;
+        try {
+            frame = BinaryCodec.encodeMessage(message);
+        } catch (ProtocolException e) {
+            return false;
+        }
+        long start = System.nanoTime();
+        String receiver = kind == Kind.OFFLINE ? message.getReceiver() : null;
+        Append append = new Append(kind, receiver, frame, new CompletableFuture<>());
+        if (!appends.offer(append)) {
+            metrics.increment("journal.full");
+            return false;
+        }
+
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    boolean synced = append.synced().get(1, TimeUnit.SECONDS);
+                    metrics.record("journal.append.us", TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                    return synced;
+                } catch (TimeoutException e) {
+                    Thread thread = appender;
+                    if (thread == null || !thread.isAlive()) {
+                        append.synced().complete(false); // Queued after the appender's last look
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true; // It may be written already; the answer is still coming
+                } catch (ExecutionException e) {
+                    return false;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Wait until the offline messages journaled for a user are in MySQL, before reading
+     * them from there. Other users' entries do not hold it up.
+     *
+     * @return false if they did not get there in time
+     */
+    boolean awaitOfflineApplied(String receiver, long timeoutMs) {
+        Long target = offlineSeqs.get(receiver);
+        if (target == null || !running) {
+            return true;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        synchronized (progress) {
+            while (appliedSeq < target) {
+                long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (left <= 0) {
+                    return false;
+                }
+                try {
+                    progress.wait(left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        offlineSeqs.remove(receiver, target);
+        return true;
+    }
+
+    // ==================== Recovery ====================
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(dir)) {
+            files = listing.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).sorted().toList(); // Zero-padded, so by name is by first entry
+        }
+
+        // Nothing left to replay: a new id, so numbering can start over
+        Path idFile = dir.resolve(ID_FILE);
+        if (files.isEmpty() || !Files.isRegularFile(idFile)) {
+            journalId = UUID.randomUUID().toString();
+            writeId(idFile, journalId);
+        } else {
+            journalId = Files.readString(idFile, StandardCharsets.UTF_8).trim();
+        }
+
+        long last = 0;
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long firstSeq = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Segment segment = new Segment(file, channel, channel.size());
+            segments.add(segment);
+
+            last = Math.max(last, firstSeq - 1);
+            long position = 0;
+            List<Entry> entries = new ArrayList<>();
+            while (true) {
+                entries.clear();
+                long end = read(segment, position, segment.size, DRAIN_BATCH, entries);
+                if (entries.isEmpty()) {
+                    break;
+                }
+                for (Entry entry : entries) {
+                    if (entry.kind() == Kind.OFFLINE) {
+                        offlineSeqs.merge(entry.message().getReceiver(), entry.seq(), Math::max);
+                    }
+                }
+                last = entries.get(entries.size() - 1).seq();
+                position = end;
+            }
+            if (position < segment.size) {
+                System.err.println("⚠️  Cutting " + (segment.size - position) + " unreadable bytes off " + name);
+                channel.truncate(position);
+                channel.force(true);
+                segment.size = position;
+            }
+        }
+
+        nextSeq = last + 1;
+        lastSeq = last;
+        if (segments.isEmpty() || segments.get(segments.size() - 1).size >= SEGMENT_BYTES) {
+            roll();
+        }
+    }
+
+    // A new active segment starting at nextSeq
+    private Segment roll() throws IOException {
+        Path file = dir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, nextSeq, SEGMENT_SUFFIX));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        channel.force(true);
+        syncDir(); // Otherwise a crash can lose the file along with entries already acknowledged
+        Segment segment = new Segment(file, channel, 0);
+        segments.add(segment);
+        return segment;
+    }
+
+    // All or nothing: a torn id would make the drainer replay under a new journal
+    private void writeId(Path idFile, String id) throws IOException {
+        Path tmp = dir.resolve(ID_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(id.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, idFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDir();
+    }
+
+    // Makes files created or renamed in the journal directory survive a crash
+    private void syncDir() throws IOException {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (AccessDeniedException e) {
+            // Windows cannot open a directory as a channel; NTFS journals its own metadata
+        }
+    }
+
+    // ==================== Appending ====================
+
+    private void appendLoop() {
+        List<Append> group = new ArrayList<>();
+        while (running || !appends.isEmpty()) {
+            try {
+                Append first = appends.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                appends.drainTo(group, MAX_GROUP - 1);
+            } catch (InterruptedException e) {
+                running = false; // Write what is queued, then stop
+            }
+            write(group);
+            group.clear();
+        }
+    }
+
+    private void write(List<Append> group) {
+        if (group.isEmpty()) {
+            return;
+        }
+        if (!accepting) {
+            group.forEach(append -> append.synced().complete(false));
+            return;
+        }
+
+        long start = System.nanoTime();
+        int total = 0;
+        for (Append append : group) {
+            total += HEADER_BYTES + append.frame().length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(total);
+        Segment segment = segments.get(segments.size() - 1);
+        int sent = 0;    // Buffer bytes written and forced
+        int durable = 0; // Entries among them
+        int pending = 0;
+        try {
+            for (Append append : group) {
+                int bytes = HEADER_BYTES + append.frame().length;
+                long end = segment.size + buffer.position() - sent;
+                if (end > 0 && end + bytes > SEGMENT_BYTES) {
+                    sent = sync(segment, buffer, sent);
+                    durable += pending;
+                    pending = 0;
+                    lastSeq = nextSeq - 1;
+                    segment = roll();
+                }
+                if (append.receiver() != null) {
+                    offlineSeqs.merge(append.receiver(), nextSeq, Math::max);
+                }
+                putEntry(buffer, nextSeq++, append);
+                pending++;
+            }
+            sync(segment, buffer, sent);
+            durable += pending;
+            lastSeq = nextSeq - 1;
+            metrics.record("journal.sync.entries", group.size());
+            metrics.record("journal.sync.us", TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        } catch (IOException e) {
+            // Keep only what was forced; the callers write the rest to the database
+            System.err.println("❌ Journal write failed, writing to the database directly: " + e.getMessage());
+            accepting = false;
+            nextSeq = lastSeq + 1;
+            try {
+                segment.channel.truncate(segment.size);
+            } catch (IOException ignored) {
+            }
+            metrics.increment("journal.failures");
+        }
+
+        for (int i = 0; i < group.size(); i++) {
+            group.get(i).synced().complete(i < durable);
+        }
+        synchronized (progress) {
+            progress.notifyAll();
+        }
+    }
+
+    private void putEntry(ByteBuffer buffer, long seq, Append append) {
+        int start = buffer.position();
+        buffer.putInt(HEADER_BYTES - 4 + append.frame().length);
+        buffer.putLong(seq);
+        buffer.put((byte) append.kind().ordinal());
+        buffer.putInt(0); // Checksum, below
+        buffer.put(append.frame());
+
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), start + 4, 9);
+        crc.update(append.frame());
+        buffer.putInt(start + 13, (int) crc.getValue());
+    }
+
+    // Write the buffer from where the last sync stopped, force it, then publish it
+    private int sync(Segment segment, ByteBuffer buffer, int from) throws IOException {
+        ByteBuffer unsent = ByteBuffer.wrap(buffer.array(), from, buffer.position() - from);
+        long position = segment.size;
+        while (unsent.hasRemaining()) {
+            position += segment.channel.write(unsent, position);
+        }
+        segment.channel.force(false);
+        segment.size = position;
+        return buffer.position();
+    }
+
+    // ==================== Draining ====================
+
+    private void drainLoop() {
+        Segment segment = segments.get(0);
+        long position = 0;
+        int failures = 0;
+        List<Entry> batch = new ArrayList<>(DRAIN_BATCH);
+        while (true) {
+            if (appliedSeq < 0) {
+                long applied = readAppliedSeq();
+                if (applied < 0) {
+                    if (!backOff(++failures)) {
+                        break;
+                    }
+                    continue;
+                }
+                appliedSeq = applied;
+            }
+
+            batch.clear();
+            long end;
+            try {
+                end = read(segment, position, segment.size, DRAIN_BATCH, batch);
+            } catch (IOException e) {
+                System.err.println("❌ Journal read failed: " + e.getMessage());
+                if (!backOff(++failures)) {
+                    break;
+                }
+                continue;
+            }
+
+            if (batch.isEmpty()) {
+                int index = segments.indexOf(segment);
+                if (index >= 0 && index < segments.size() - 1) {
+                    // Sealed and applied: move on and drop it
+                    Segment next = segments.get(index + 1);
+                    delete(segment);
+                    segment = next;
+                    position = 0;
+                    continue;
+                }
+                if (!running && (appliedSeq >= lastSeq || System.nanoTime() > stopDeadline)) {
+                    break;
+                }
+                synchronized (progress) {
+                    if (position >= segment.size && running) {
+                        try {
+                            progress.wait(IDLE_POLL_MS);
+                        } catch (InterruptedException e) {
+                            break;
+                        }
+                    }
+                }
+                continue;
+            }
+
+            if (!applyBatch(batch)) {
+                appliedSeq = -1; // Re-read it: it may have moved after all
+                // Still failing: find out whether one entry is to blame
+                if (++failures >= ONE_BY_ONE_AFTER_FAILURES && applyOneByOne(batch)) {
+                    failures = 0;
+                    position = end;
+                    continue;
+                }
+                if (!backOff(failures)) {
+                    break;
+                }
+                continue;
+            }
+            failures = 0;
+            position = end;
+        }
+    }
+
+    private boolean applyBatch(List<Entry> batch) {
+        List<Message> history = new ArrayList<>();
+        List<Message> offline = new ArrayList<>();
+        long applied = appliedSeq;
+        long last = applied;
+        for (Entry entry : batch) {
+            if (entry.seq() <= applied) {
+                continue; // Committed before a restart
+            }
+            (entry.kind() == Kind.HISTORY ? history : offline).add(entry.message());
+            last = entry.seq();
+        }
+        if (last == applied) {
+            return true;
+        }
+        return commit(applied, last, history, offline);
+    }
+
+    /**
+     * Apply a batch that keeps failing one entry at a time. An entry MySQL rejects while
+     * it takes the others (too long for its column, a receiver deleted since) is moved
+     * to the quarantine file and skipped, so it cannot hold up the journal for good.
+     *
+     * @return false if the database itself is failing; the batch is retried later
+     */
+    private boolean applyOneByOne(List<Entry> batch) {
+        long applied = readAppliedSeq();
+        if (applied < 0) {
+            return false;
+        }
+        appliedSeq = applied;
+        for (Entry entry : batch) {
+            if (entry.seq() <= applied) {
+                continue;
+            }
+            List<Message> one = List.of(entry.message());
+            boolean history = entry.kind() == Kind.HISTORY;
+            if (!commit(applied, entry.seq(), history ? one : List.of(), history ? List.of() : one)) {
+                // Rejected on its own: the entry, unless the database is gone too
+                if (readAppliedSeq() != applied) {
+                    return false;
+                }
+                quarantine(entry);
+                if (!commit(applied, entry.seq(), List.of(), List.of())) {
+                    return false;
+                }
+                metrics.increment("journal.quarantined");
+            }
+            applied = entry.seq();
+        }
+        return true;
+    }
+
+    // Write the entries and move journal_progress from applied to last, in one transaction
+    private boolean commit(long applied, long last, List<Message> history, List<Message> offline) {
+        long start = System.nanoTime();
+        boolean committed;
+        try {
+            committed = journalDAO.apply(journalId, applied, last, history, offline);
+        } catch (RuntimeException e) {
+            System.err.println("❌ Journal drain failed: " + e.getMessage());
+            committed = false;
+        }
+        if (!committed) {
+            metrics.increment("journal.drain.failures");
+            return false;
+        }
+        metrics.record("journal.drain.entries", history.size() + offline.size());
+        metrics.record("journal.drain.ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        synchronized (progress) {
+            appliedSeq = last;
+            progress.notifyAll();
+        }
+        if (!offlineSeqs.isEmpty()) {
+            offlineSeqs.values().removeIf(seq -> seq <= last);
+        }
+        return true;
+    }
+
+    // Kept in the journal's own format, for someone to look at or replay by hand
+    private void quarantine(Entry entry) {
+        Message message = entry.message();
+        System.err.println("❌ Database rejects journal entry " + entry.seq() + " (" + entry.kind() + " from "
+                + message.getSender() + " to " + message.getReceiver() + "), moving it to " + QUARANTINE_FILE);
+        try (FileChannel channel = FileChannel.open(dir.resolve(QUARANTINE_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            byte[] frame = BinaryCodec.encodeMessage(message);
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + frame.length);
+            putEntry(buffer, entry.seq(), new Append(entry.kind(), null, frame, null));
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            System.err.println("❌ Could not write " + QUARANTINE_FILE + ": " + e.getMessage());
+        }
+    }
+
+    // The drainer starts here, and comes back after a failed batch
+    private long readAppliedSeq() {
+        try {
+            return journalDAO.createTable() ? journalDAO.getAppliedSeq(journalId) : -1;
+        } catch (RuntimeException e) {
+            System.err.println("❌ Journal progress unavailable: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /** @return false if stopping and out of time, so the drainer should give up */
+    private boolean backOff(int failures) {
+        if (!running && System.nanoTime() > stopDeadline) {
+            return false;
+        }
+        long delay = Math.min(MAX_RETRY_DELAY_MS, 100L << Math.min(failures, 6));
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            return false;
+        }
+        return true;
+    }
+
+    private void delete(Segment segment) {
+        segments.remove(segment);
+        try {
+            segment.channel.close();
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            System.err.println("⚠️  Could not delete " + segment.path + ": " + e.getMessage());
+        }
+    }
+
+    // ==================== Reading ====================
+
+    /**
+     * Read up to max entries from position, stopping before limit or at the first
+     * entry that is incomplete or fails its checksum.
+     *
+     * @return the position after the last entry read
+     */
+    private static long read(Segment segment, long position, long limit, int max, List<Entry> into) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (into.size() < max && position + HEADER_BYTES <= limit) {
+            header.clear();
+            readFully(segment.channel, header, position);
+            header.flip();
+            int length = header.getInt();
+            long seq = header.getLong();
+            int kind = header.get();
+            int checksum = header.getInt();
+
+            int frameBytes = length - (HEADER_BYTES - 4);
+            if (frameBytes < 6 || kind < 0 || kind >= KINDS.length || position + HEADER_BYTES + frameBytes > limit) {
+                break;
+            }
+            ByteBuffer frame = ByteBuffer.allocate(frameBytes);
+            readFully(segment.channel, frame, position + HEADER_BYTES);
+
+            CRC32C crc = new CRC32C();
+            crc.update(header.array(), 4, 9);
+            crc.update(frame.array());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            Message message;
+            try {
+                frame.flip();
+                Frame decoded = Frame.tryDecode(frame);
+                if (decoded == null) {
+                    break;
+                }
+                message = BinaryCodec.decodeMessage(decoded);
+            } catch (ProtocolException e) {
+                break;
+            }
+            position += HEADER_BYTES + frameBytes;
+            into.add(new Entry(seq, KINDS[kind], message));
+        }
+        return position;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Journal segment ends early");
+            }
+        }
+    }
+
+    // ==================== Shutdown ====================
+
+    /** Sync what is queued, give the drainer a few seconds to catch up, and close. */
+    void stop() {
+        Thread appenderThread;
+        Thread drainerThread;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            accepting = false;
+            stopDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(STOP_DRAIN_MS);
+            running = false;
+            appenderThread = appender;
+            drainerThread = drainer;
+        }
+        try {
+            appenderThread.join(TimeUnit.SECONDS.toMillis(5));
+            synchronized (progress) {
+                progress.notifyAll();
+            }
+            drainerThread.join(STOP_DRAIN_MS + 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        long left = lastSeq - Math.max(0, appliedSeq);
+        if (left > 0) {
+            System.out.println("💾 " + left + " journal entries left for the next start");
+        }
+        if (!appenderThread.isAlive() && !drainerThread.isAlive()) {
+            closeSegments();
+        }
+    }
+
+    private void closeSegments() {
+        for (Segment segment : segments) {
+            try {
+                segment.channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+        segments.clear();
+    }
+}
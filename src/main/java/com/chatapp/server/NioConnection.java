@@ -0,0 +1,253 @@
+package com.chatapp.server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One client channel owned by a {@link NioServer} event loop.
+ *
+ * The loop thread does all socket reads and writes. Decoded frames are handed to
+ * the {@link ServerHandler} on the worker pool, one task at a time per connection so
+ * messages are still processed in order. Frames the handler queues are written by
+ * the loop when the channel is writable.
+ */
+class NioConnection {
+    private static final int INITIAL_READ_BUFFER = 8 * 1024;
+    private static final int MAX_GATHER = 64;
+    private static final ServerMetrics metrics = ServerMetrics.getInstance();
+
+    private final SocketChannel channel;
+    private final NioServer.EventLoop loop;
+    private final Executor workers;
+    private final ServerHandler handler;
+
+    private SelectionKey key;
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+
+    // Frames for one gathering write; [batchStart, batchEnd) are not fully written yet
+    private final ByteBuffer[] batch = new ByteBuffer[MAX_GATHER];
+    private int batchStart;
+    private int batchEnd;
+    private final AtomicBoolean writeScheduled = new AtomicBoolean(false);
+
+    // Per-connection serial task queue on top of the shared worker pool
+    private final Deque<Runnable> tasks = new ConcurrentLinkedDeque<>();
+    private final AtomicBoolean taskRunning = new AtomicBoolean(false);
+    private volatile boolean suspended; // Waiting on work off the pool, e.g. a password check
+
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private volatile boolean closing;
+
+    NioConnection(SocketChannel channel, NioServer.EventLoop loop, Executor workers) {
+        this.channel = channel;
+        this.loop = loop;
+        this.workers = workers;
+        this.handler = new ServerHandler(this);
+    }
+
+    InetAddress getInetAddress() {
+        return channel.socket().getInetAddress();
+    }
+
+    // Called on the loop thread once the channel is registered
+    void registered(SelectionKey key) {
+        this.key = key;
+        execute(handler::onConnected);
+    }
+
+    // ==================== Loop thread ====================
+
+    void onReadable() {
+        try {
+            int n = channel.read(readBuffer);
+            if (n < 0) {
+                close();
+                return;
+            }
+
+            List<Object> inbound = new ArrayList<>();
+            readBuffer = handler.decode(readBuffer, inbound);
+            if (closing) {
+                return; // Rejected, just waiting for the reply to go out
+            }
+
+            for (Object item : inbound) {
+                execute(() -> {
+                    try {
+                        handler.onInbound(item);
+                    } catch (IOException e) {
+                        System.err.println("Connection error for user " + handler.getUsername() + ": " + e.getMessage());
+                        close();
+                    }
+                });
+            }
+
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    void onWritable() {
+        try {
+            while (true) {
+                if (batchStart == batchEnd && !fillBatch()) {
+                    break;
+                }
+                if (channel.write(batch, batchStart, batchEnd - batchStart) > 0) {
+                    handler.markWriteProgress();
+                }
+                while (batchStart < batchEnd && !batch[batchStart].hasRemaining()) {
+                    batch[batchStart++] = null;
+                }
+                if (batchStart < batchEnd) {
+                    return; // Socket buffer full, wait for next OP_WRITE
+                }
+            }
+
+            if (closing) {
+                close();
+                return;
+            }
+
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            writeScheduled.set(false);
+
+            // A writer may have queued between the drain and clearing the flag
+            if (handler.hasOutbound() && writeScheduled.compareAndSet(false, true)) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    // Whatever queued up since the last write goes out in one gathering write
+    private boolean fillBatch() {
+        batchStart = 0;
+        batchEnd = 0;
+        long bytes = 0;
+        byte[] frame;
+        while (batchEnd < MAX_GATHER && bytes < ServerHandler.WRITE_BATCH_MAX_BYTES
+                && (frame = handler.pollOutbound()) != null) {
+            batch[batchEnd++] = ByteBuffer.wrap(frame); // Own view, the array may be shared
+            bytes += frame.length;
+        }
+        if (batchEnd == 0) {
+            return false;
+        }
+        metrics.add("outbound.written", batchEnd);
+        metrics.record("write.batch.frames", batchEnd);
+        return true;
+    }
+
+    // ==================== Any thread ====================
+
+    /** Called after the handler queued a frame; turns on OP_WRITE if it is not already. */
+    void requestWrite() {
+        if (closed.get()) {
+            return;
+        }
+        if (writeScheduled.compareAndSet(false, true)) {
+            loop.submit(() -> {
+                if (key != null && key.isValid()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                }
+            });
+        }
+    }
+
+    /** Close once everything already queued has been written, e.g. after an auth failure. */
+    void closeAfterFlush() {
+        closing = true;
+        loop.submit(() -> {
+            if (batchStart == batchEnd && !handler.hasOutbound()) {
+                close();
+            } else if (key != null && key.isValid()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        });
+    }
+
+    void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing channel: " + e.getMessage());
+        }
+        loop.connectionClosed(this);
+
+        // Runs after any inbound work already queued for this connection
+        execute(handler::cleanup);
+    }
+
+    boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * Hold this connection's tasks after the current one, e.g. while its password is
+     * checked on the auth pool. Frames that arrive meanwhile queue up in order.
+     * Only call from one of this connection's tasks.
+     */
+    void suspendTasks() {
+        suspended = true;
+    }
+
+    /** Run next ahead of anything queued meanwhile (if not null), then carry on. */
+    void resumeTasks(Runnable next) {
+        if (next != null) {
+            tasks.addFirst(next);
+        }
+        suspended = false;
+        scheduleDrain();
+    }
+
+    private void execute(Runnable task) {
+        tasks.add(task);
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        if (taskRunning.compareAndSet(false, true)) {
+            try {
+                workers.execute(this::drainTasks);
+            } catch (RuntimeException e) {
+                taskRunning.set(false);
+                System.err.println("Worker pool rejected task: " + e.getMessage());
+            }
+        }
+    }
+
+    private void drainTasks() {
+        Runnable task;
+        while (!suspended && (task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.err.println("Error handling client task: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+        taskRunning.set(false);
+        // A resume may have come in between the check above and clearing the flag
+        if (!suspended && !tasks.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.chatapp.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Selector-based front-end for the chat server.
+ *
+ * The accept loop runs on the thread that calls {@link #start()} and hands each new
+ * channel to one of a few I/O event loops. Idle connections cost a registered key and
+ * a small read buffer instead of a parked platform thread; message handling still runs
+ * through {@link ServerHandler}, on a shared worker pool.
+ */
+public class NioServer {
+    private final int port;
+    private final int loopCount;
+    private final ExecutorService workers;
+
+    private ServerSocketChannel serverChannel;
+    private Selector acceptSelector;
+    private EventLoop[] loops;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private final AtomicInteger pendingRegistrations = new AtomicInteger();
+    private volatile boolean running;
+
+    public NioServer(int port, int loopCount, int workerThreads) {
+        this.port = port;
+        this.loopCount = Math.max(1, loopCount);
+        AtomicInteger workerId = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, workerThreads), r -> {
+            Thread t = new Thread(r, "nio-worker-" + workerId.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Bind and run the accept loop on the calling thread until {@link #shutdown()}. */
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+
+        acceptSelector = Selector.open();
+        serverChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
+
+        loops = new EventLoop[loopCount];
+        for (int i = 0; i < loopCount; i++) {
+            loops[i] = new EventLoop(i);
+            Thread t = new Thread(loops[i], "nio-loop-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+
+        running = true;
+
+        while (running) {
+            acceptSelector.select();
+            if (!running) {
+                break;
+            }
+            Iterator<SelectionKey> it = acceptSelector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey key = it.next();
+                it.remove();
+                if (key.isValid() && key.isAcceptable()) {
+                    accept();
+                }
+            }
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                channel.socket().setKeepAlive(true);
+                EventLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+                loop.register(channel);
+            }
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("Error accepting client: " + e.getMessage());
+            }
+        }
+    }
+
+    public int getConnectionCount() {
+        int total = 0;
+        if (loops != null) {
+            for (EventLoop loop : loops) {
+                total += loop.connections.size();
+            }
+        }
+        return total;
+    }
+
+    /** Accepted channels not yet picked up by their event loop. */
+    public int getPendingRegistrations() {
+        return pendingRegistrations.get();
+    }
+
+    public void shutdown() {
+        running = false;
+
+        if (acceptSelector != null) {
+            acceptSelector.wakeup();
+        }
+
+        if (loops != null) {
+            for (EventLoop loop : loops) {
+                loop.shutdown();
+            }
+        }
+
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+        }
+
+        try {
+            if (serverChannel != null) serverChannel.close();
+            if (acceptSelector != null) acceptSelector.close();
+        } catch (IOException e) {
+            System.err.println("Error closing server channel: " + e.getMessage());
+        }
+    }
+
+    /**
+     * One selector and its thread. Other threads never touch the selector directly;
+     * they queue a task and wake the loop.
+     */
+    class EventLoop implements Runnable {
+        private final int id;
+        private final Selector selector;
+        private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+        private final Set<NioConnection> connections = ConcurrentHashMap.newKeySet();
+        private volatile boolean active = true;
+
+        EventLoop(int id) throws IOException {
+            this.id = id;
+            this.selector = Selector.open();
+        }
+
+        void register(SocketChannel channel) {
+            pendingRegistrations.incrementAndGet();
+            submit(() -> {
+                pendingRegistrations.decrementAndGet();
+                NioConnection connection = new NioConnection(channel, this, workers);
+                try {
+                    SelectionKey key = channel.register(selector, SelectionKey.OP_READ, connection);
+                    connections.add(connection);
+                    connection.registered(key);
+                } catch (IOException e) {
+                    System.err.println("Error registering client: " + e.getMessage());
+                    connection.close(); // Releases its session through cleanup()
+                }
+            });
+        }
+
+        void submit(Runnable task) {
+            pending.add(task);
+            selector.wakeup();
+        }
+
+        void connectionClosed(NioConnection connection) {
+            connections.remove(connection);
+        }
+
+        @Override
+        public void run() {
+            while (active) {
+                try {
+                    selector.select();
+
+                    Runnable task;
+                    while ((task = pending.poll()) != null) {
+                        task.run();
+                    }
+
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+
+                        NioConnection connection = (NioConnection) key.attachment();
+                        if (!key.isValid()) {
+                            connection.close();
+                            continue;
+                        }
+                        if (key.isReadable()) {
+                            connection.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.onWritable();
+                        }
+                    }
+                } catch (IOException e) {
+                    System.err.println("Event loop " + id + " error: " + e.getMessage());
+                } catch (RuntimeException e) {
+                    System.err.println("Event loop " + id + " error: " + e.getMessage());
+                    e.printStackTrace();
+                }
+            }
+
+            try {
+                selector.close();
+            } catch (IOException e) {
+                System.err.println("Error closing selector: " + e.getMessage());
+            }
+        }
+
+        void shutdown() {
+            active = false;
+            for (NioConnection connection : connections) {
+                connection.close();
+            }
+            selector.wakeup();
+        }
+    }
+}
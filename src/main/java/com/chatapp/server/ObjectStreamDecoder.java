@@ -0,0 +1,188 @@
+package com.chatapp.server;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Incremental decoder for the client -> server half of the ObjectStream protocol.
+ *
+ * Clients only ever call writeObject(String) (the auth fields, then the Gson JSON
+ * produced by NetworkUtil), so the stream is a header followed by TC_STRING,
+ * TC_LONGSTRING, TC_REFERENCE and TC_RESET records. Parsing those directly lets the
+ * NIO event loop split complete strings out of a read buffer without ever blocking
+ * inside ObjectInputStream.readObject().
+ *
+ * Every string gets a handle, but only short ones are kept for back-references: a
+ * client that never resets its stream references its constant strings ("LOGIN"), not
+ * the JSON it builds fresh for each message. Memory stays flat over a long session.
+ */
+class ObjectStreamDecoder {
+    private static final short STREAM_MAGIC = (short) 0xaced;
+    private static final short STREAM_VERSION = 5;
+
+    private static final byte TC_REFERENCE = (byte) 0x71;
+    private static final byte TC_STRING = (byte) 0x74;
+    private static final byte TC_RESET = (byte) 0x79;
+    private static final byte TC_LONGSTRING = (byte) 0x7C;
+
+    private static final int BASE_WIRE_HANDLE = 0x7e0000;
+
+    // Sanity bound only: ServerHandler caps records far lower (a few KB before login,
+    // MAX_INBOUND_FRAME_BYTES after) before a buffer is grown for them
+    static final long MAX_STRING_BYTES = Integer.MAX_VALUE - 16;
+
+    private static final int RETAINED_STRING_CHARS = 64;
+    private static final int MAX_RETAINED_HANDLES = 1024;
+
+    private int nextHandle;
+    private final Map<Integer, String> retained = new HashMap<>();
+    private boolean headerRead;
+
+    /**
+     * Decode every complete record in the buffer (which must be in read mode).
+     * A trailing partial record is left unconsumed for the next call.
+     */
+    void decode(ByteBuffer buf, List<String> out) throws IOException {
+        while (true) {
+            if (!headerRead) {
+                if (buf.remaining() < 4) {
+                    return;
+                }
+                short magic = buf.getShort();
+                short version = buf.getShort();
+                if (magic != STREAM_MAGIC || version != STREAM_VERSION) {
+                    throw new StreamCorruptedException("Invalid stream header");
+                }
+                headerRead = true;
+            }
+
+            if (!buf.hasRemaining()) {
+                return;
+            }
+
+            int start = buf.position();
+            byte tag = buf.get();
+            String value;
+
+            switch (tag) {
+                case TC_STRING -> {
+                    if (buf.remaining() < 2) {
+                        buf.position(start);
+                        return;
+                    }
+                    int length = buf.getShort() & 0xFFFF;
+                    if (buf.remaining() < length) {
+                        buf.position(start);
+                        return;
+                    }
+                    value = decodeModifiedUtf8(buf, length);
+                    assignHandle(value);
+                }
+                case TC_LONGSTRING -> {
+                    if (buf.remaining() < 8) {
+                        buf.position(start);
+                        return;
+                    }
+                    long length = buf.getLong();
+                    if (length < 0 || length > MAX_STRING_BYTES) {
+                        throw new StreamCorruptedException("String too long: " + length);
+                    }
+                    if (buf.remaining() < length) {
+                        buf.position(start);
+                        return;
+                    }
+                    value = decodeModifiedUtf8(buf, (int) length);
+                    assignHandle(value);
+                }
+                case TC_REFERENCE -> {
+                    if (buf.remaining() < 4) {
+                        buf.position(start);
+                        return;
+                    }
+                    int index = buf.getInt() - BASE_WIRE_HANDLE;
+                    if (index < 0 || index >= nextHandle) {
+                        throw new StreamCorruptedException("Invalid handle: " + index);
+                    }
+                    value = retained.get(index);
+                    if (value == null) {
+                        throw new StreamCorruptedException("Reference to a string that was not retained: " + index);
+                    }
+                }
+                case TC_RESET -> {
+                    retained.clear();
+                    nextHandle = 0;
+                    continue;
+                }
+                default -> throw new StreamCorruptedException(
+                        String.format("Unsupported type code: %02X", tag));
+            }
+
+            out.add(value);
+        }
+    }
+
+    private void assignHandle(String value) {
+        int handle = nextHandle++;
+        if (value.length() <= RETAINED_STRING_CHARS && retained.size() < MAX_RETAINED_HANDLES) {
+            retained.put(handle, value);
+        }
+    }
+
+    /**
+     * Bytes needed before the record at the head of the buffer can be decoded,
+     * so the caller knows how far to grow its read buffer.
+     */
+    long pendingRecordSize(ByteBuffer buf) {
+        int p = buf.position();
+        if (!headerRead || buf.remaining() < 1) {
+            return 4;
+        }
+        return switch (buf.get(p)) {
+            case TC_STRING -> buf.remaining() < 3 ? 3 : 3 + (buf.getShort(p + 1) & 0xFFFF);
+            case TC_LONGSTRING -> buf.remaining() < 9 ? 9 : 9 + buf.getLong(p + 1);
+            default -> 5;
+        };
+    }
+
+    private static String decodeModifiedUtf8(ByteBuffer buf, int length) throws UTFDataFormatException {
+        char[] chars = new char[length];
+        int count = 0;
+        int end = buf.position() + length;
+
+        while (buf.position() < end) {
+            int c = buf.get() & 0xFF;
+            switch (c >> 4) {
+                case 0, 1, 2, 3, 4, 5, 6, 7 -> chars[count++] = (char) c;
+                case 12, 13 -> {
+                    if (buf.position() >= end) {
+                        throw new UTFDataFormatException("Truncated 2-byte sequence");
+                    }
+                    int c2 = buf.get();
+                    if ((c2 & 0xC0) != 0x80) {
+                        throw new UTFDataFormatException("Malformed 2-byte sequence");
+                    }
+                    chars[count++] = (char) (((c & 0x1F) << 6) | (c2 & 0x3F));
+                }
+                case 14 -> {
+                    if (buf.position() + 1 >= end) {
+                        throw new UTFDataFormatException("Truncated 3-byte sequence");
+                    }
+                    int c2 = buf.get();
+                    int c3 = buf.get();
+                    if ((c2 & 0xC0) != 0x80 || (c3 & 0xC0) != 0x80) {
+                        throw new UTFDataFormatException("Malformed 3-byte sequence");
+                    }
+                    chars[count++] = (char) (((c & 0x0F) << 12) | ((c2 & 0x3F) << 6) | (c3 & 0x3F));
+                }
+                default -> throw new UTFDataFormatException("Malformed input byte " + c);
+            }
+        }
+
+        return new String(chars, 0, count);
+    }
+}
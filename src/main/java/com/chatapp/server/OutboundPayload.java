@@ -0,0 +1,104 @@
+package com.chatapp.server;
+
+import com.chatapp.model.Message;
+import com.chatapp.model.User;
+import com.chatapp.protocol.DirectoryPage;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A message, user list, presence update or directory page on its way to one or more
+ * clients.
+ *
+ * Encoded at most once per wire format (see {@link ConnectionProtocol#sharedEncodingKey()})
+ * and the resulting byte array is shared by every recipient's outbound queue, so an
+ * N-user broadcast costs one encoding instead of N. The arrays are never written to
+ * after encoding.
+ */
+final class OutboundPayload {
+    private static final ServerMetrics metrics = ServerMetrics.getInstance();
+
+    private enum Kind { MESSAGE, USER_LIST, PRESENCE, SNAPSHOT, DIRECTORY_PAGE }
+
+    private final Kind kind;
+    private final Message message;   // MESSAGE
+    private final List<User> users;  // USER_LIST, SNAPSHOT, PRESENCE
+    private final long version;      // PRESENCE, SNAPSHOT
+    private final DirectoryPage page; // DIRECTORY_PAGE
+    private final Map<Object, byte[]> encoded = new ConcurrentHashMap<>(2);
+
+    private OutboundPayload(Kind kind, Message message, List<User> users, long version, DirectoryPage page) {
+        this.kind = kind;
+        this.message = message;
+        this.users = users;
+        this.version = version;
+        this.page = page;
+    }
+
+    static OutboundPayload of(Message message) {
+        return new OutboundPayload(Kind.MESSAGE, message, null, 0, null);
+    }
+
+    static OutboundPayload ofUsers(List<User> users) {
+        return new OutboundPayload(Kind.USER_LIST, null, List.copyOf(users), 0, null);
+    }
+
+    /** Only for connections that {@link ConnectionProtocol#supportsPresenceDeltas()}. */
+    static OutboundPayload ofPresence(List<User> changed, long version) {
+        return new OutboundPayload(Kind.PRESENCE, null, List.copyOf(changed), version, null);
+    }
+
+    static OutboundPayload ofSnapshot(List<User> users, long version) {
+        return new OutboundPayload(Kind.SNAPSHOT, null, List.copyOf(users), version, null);
+    }
+
+    /** Only for connections that {@link ConnectionProtocol#supportsDirectorySync()}. */
+    static OutboundPayload ofDirectoryPage(DirectoryPage page) {
+        return new OutboundPayload(Kind.DIRECTORY_PAGE, null, null, 0, page);
+    }
+
+    /** Null unless this is a message. */
+    Message getMessage() {
+        return message;
+    }
+
+    /**
+     * A client that negotiated presence deltas waits for its snapshot (or the directory
+     * page it asked for), so it must not be shed.
+     */
+    boolean isSnapshot() {
+        return kind == Kind.SNAPSHOT || kind == Kind.DIRECTORY_PAGE;
+    }
+
+    byte[] encodeFor(ConnectionProtocol protocol) throws IOException {
+        Object key = protocol.sharedEncodingKey();
+        if (key == null) {
+            metrics.increment("fanout.encoded");
+            return encode(protocol);
+        }
+
+        byte[] frame = encoded.get(key);
+        if (frame != null) {
+            metrics.increment("fanout.shared");
+            return frame;
+        }
+        // Two recipients may race to encode; both results are identical, keep the first
+        frame = encode(protocol);
+        metrics.increment("fanout.encoded");
+        byte[] existing = encoded.putIfAbsent(key, frame);
+        return existing != null ? existing : frame;
+    }
+
+    private byte[] encode(ConnectionProtocol protocol) throws IOException {
+        return switch (kind) {
+            case MESSAGE -> protocol.encodeMessage(message);
+            case USER_LIST -> protocol.encodeUserList(users);
+            case PRESENCE -> protocol.encodePresence(users, version);
+            case SNAPSHOT -> protocol.encodeSnapshot(users, version);
+            case DIRECTORY_PAGE -> protocol.encodeDirectoryPage(page);
+        };
+    }
+}
@@ -0,0 +1,116 @@
+package com.chatapp.server;
+
+import com.chatapp.model.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Encoded frames waiting to be written to one client, bounded by count.
+ *
+ * Any thread may offer; only the connection's writer polls. Depth, queued bytes and
+ * the high-water mark are kept alongside so they can be read without walking the queue.
+ */
+class OutboundQueue {
+
+    /** One queued frame. The message is kept only if it can go to the offline queue instead. */
+    static final class Entry {
+        final byte[] frame;
+        final Message message;
+
+        Entry(byte[] frame, Message message) {
+            this.frame = frame;
+            this.message = message;
+        }
+    }
+
+    private final Queue<Entry> entries = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicInteger peakDepth = new AtomicInteger();
+    private final int capacity;
+
+    // Last time the writer got bytes out, or the queue went from empty to non-empty
+    private volatile long lastProgressNanos = System.nanoTime();
+
+    OutboundQueue(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /** @return false if the queue is full; the frame is not queued */
+    boolean offer(byte[] frame, Message message) {
+        int d = depth.incrementAndGet();
+        if (d > capacity) {
+            depth.decrementAndGet();
+            return false;
+        }
+        if (d == 1) {
+            lastProgressNanos = System.nanoTime();
+        }
+        bytes.addAndGet(frame.length);
+        entries.add(new Entry(frame, message));
+        peakDepth.accumulateAndGet(d, Math::max);
+        return true;
+    }
+
+    byte[] poll() {
+        Entry entry = entries.poll();
+        if (entry == null) {
+            return null;
+        }
+        depth.decrementAndGet();
+        bytes.addAndGet(-entry.frame.length);
+        return entry.frame;
+    }
+
+    void markProgress() {
+        lastProgressNanos = System.nanoTime();
+    }
+
+    /** How long frames have been waiting without the writer making progress. */
+    long stalledNanos() {
+        return depth.get() > 0 ? System.nanoTime() - lastProgressNanos : 0;
+    }
+
+    boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    void clear() {
+        drain();
+    }
+
+    /** Empty the queue and return the messages that were kept for offline delivery. */
+    List<Message> drain() {
+        List<Message> undelivered = new ArrayList<>();
+        Entry entry;
+        while ((entry = entries.poll()) != null) {
+            depth.decrementAndGet();
+            bytes.addAndGet(-entry.frame.length);
+            if (entry.message != null) {
+                undelivered.add(entry.message);
+            }
+        }
+        return undelivered;
+    }
+
+    int depth() {
+        return depth.get();
+    }
+
+    long bytes() {
+        return bytes.get();
+    }
+
+    int peakDepth() {
+        return peakDepth.get();
+    }
+
+    int capacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,102 @@
+package com.chatapp.server;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Streams JFR jdk.VirtualThreadPinned events while the server runs in VIRTUAL mode
+ * and prints a per-call-site summary on shutdown.
+ *
+ * For a stack trace at the moment of pinning, also start the JVM with
+ * -Djdk.tracePinnedThreads=full.
+ */
+public class PinningMonitor {
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int TOP_FRAMES = 3;
+    private static final int REPORT_SITES = 10;
+
+    private final Duration threshold;
+    private final LongAdder pinnedCount = new LongAdder();
+    private final AtomicLong pinnedNanos = new AtomicLong();
+    private final Map<String, LongAdder> sites = new ConcurrentHashMap<>();
+    private RecordingStream stream;
+
+    public PinningMonitor(Duration threshold) {
+        this.threshold = threshold;
+    }
+
+    public void start() {
+        try {
+            stream = new RecordingStream();
+            stream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+            stream.onEvent(PINNED_EVENT, this::onPinned);
+            stream.startAsync();
+            System.out.println("📌 Pinning monitor started (threshold " + threshold.toMillis() + " ms)");
+        } catch (RuntimeException e) {
+            System.err.println("⚠️  Could not start pinning monitor: " + e.getMessage());
+            stream = null;
+        }
+    }
+
+    private void onPinned(RecordedEvent event) {
+        pinnedCount.increment();
+        pinnedNanos.addAndGet(event.getDuration().toNanos());
+
+        String site = describe(event.getStackTrace());
+        sites.computeIfAbsent(site, k -> new LongAdder()).increment();
+
+        System.err.println("📌 Virtual thread pinned for " + event.getDuration().toMillis() + " ms at " + site);
+    }
+
+    private static String describe(RecordedStackTrace trace) {
+        if (trace == null || trace.getFrames().isEmpty()) {
+            return "<no stack>";
+        }
+        StringBuilder sb = new StringBuilder();
+        int shown = 0;
+        for (RecordedFrame frame : trace.getFrames()) {
+            if (!frame.isJavaFrame()) {
+                continue;
+            }
+            if (shown > 0) {
+                sb.append(" <- ");
+            }
+            sb.append(frame.getMethod().getType().getName())
+                    .append('.')
+                    .append(frame.getMethod().getName())
+                    .append(':')
+                    .append(frame.getLineNumber());
+            if (++shown == TOP_FRAMES) {
+                break;
+            }
+        }
+        return sb.toString();
+    }
+
+    public void printReport() {
+        System.out.println("\n📌 Virtual thread pinning report");
+        System.out.println("   Pinned events: " + pinnedCount.sum()
+                + ", total pinned time: " + Duration.ofNanos(pinnedNanos.get()).toMillis() + " ms");
+
+        sites.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, LongAdder> e) -> e.getValue().sum()).reversed())
+                .limit(REPORT_SITES)
+                .forEach(e -> System.out.println("   " + e.getValue().sum() + "x  " + e.getKey()));
+    }
+
+    public void stop() {
+        if (stream != null) {
+            stream.close();
+            printReport();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.chatapp.server;
+
+import com.chatapp.util.EnvConfig;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Who wants presence for whom (protocol v6): an inverted index from each user to the
+ * connections subscribed to them, so a status change costs one lookup and one frame
+ * per subscriber instead of a frame for everyone online.
+ *
+ * Subscribing replaces a connection's whole set; it is small (recent conversations and
+ * the rows on screen) and changes as the list scrolls. Writers take the index lock,
+ * the presence flusher reads without it.
+ */
+class PresenceSubscriptions {
+    // More than this per connection are ignored, in the order the client sent them
+    static final int MAX_PER_CONNECTION = EnvConfig.getInt("PRESENCE_MAX_SUBSCRIPTIONS", 500);
+
+    private final Map<String, Set<ServerHandler>> subscribers = new ConcurrentHashMap<>();
+    private final Map<ServerHandler, Set<String>> byHandler = new ConcurrentHashMap<>();
+    private final Object lock = new Object();
+
+    /**
+     * Replace a connection's subscriptions.
+     *
+     * @return the users that were not subscribed before, whose current presence the
+     *         client has yet to be told
+     */
+    List<String> replace(ServerHandler handler, List<String> usernames) {
+        Set<String> wanted = new LinkedHashSet<>();
+        for (String username : usernames) {
+            if (wanted.size() == MAX_PER_CONNECTION) {
+                break;
+            }
+            wanted.add(username);
+        }
+
+        List<String> added = new ArrayList<>();
+        synchronized (lock) {
+            Set<String> previous = byHandler.getOrDefault(handler, Collections.emptySet());
+            for (String username : previous) {
+                if (!wanted.contains(username)) {
+                    unsubscribe(handler, username);
+                }
+            }
+            for (String username : wanted) {
+                if (!previous.contains(username)) {
+                    subscribers.computeIfAbsent(username, k -> ConcurrentHashMap.newKeySet()).add(handler);
+                    added.add(username);
+                }
+            }
+            if (wanted.isEmpty()) {
+                byHandler.remove(handler);
+            } else {
+                byHandler.put(handler, wanted);
+            }
+        }
+        return added;
+    }
+
+    /** Forget a connection, e.g. when it closes. */
+    void removeAll(ServerHandler handler) {
+        synchronized (lock) {
+            Set<String> previous = byHandler.remove(handler);
+            if (previous != null) {
+                for (String username : previous) {
+                    unsubscribe(handler, username);
+                }
+            }
+        }
+    }
+
+    // Caller holds lock
+    private void unsubscribe(ServerHandler handler, String username) {
+        Set<ServerHandler> handlers = subscribers.get(username);
+        if (handlers != null) {
+            handlers.remove(handler);
+            if (handlers.isEmpty()) {
+                subscribers.remove(username);
+            }
+        }
+    }
+
+    /** Connections subscribed to a user; live view, do not modify. */
+    Set<ServerHandler> subscribersOf(String username) {
+        return subscribers.getOrDefault(username, Collections.emptySet());
+    }
+
+    /** Subscribed connections, for metrics. */
+    int connections() {
+        return byHandler.size();
+    }
+}
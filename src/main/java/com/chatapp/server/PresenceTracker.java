@@ -0,0 +1,328 @@
+package com.chatapp.server;
+
+import com.chatapp.model.Message;
+import com.chatapp.model.User;
+import com.chatapp.protocol.DirectoryPage;
+import com.chatapp.protocol.DirectorySync;
+import com.chatapp.util.EnvConfig;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Tells online clients who came and went.
+ *
+ * Changes are collected for PRESENCE_COALESCE_MS and then sent as one PRESENCE
+ * delta per window, numbered with the next presence version and encoded once for
+ * everyone. A user who leaves and comes back within the window (or the reverse) is
+ * left out entirely, as are their join/leave notices. When many users change at
+ * once, the notices collapse into one summary line.
+ *
+ * A client gets the whole directory only as a snapshot: right after login and
+ * whenever it asks (REQUEST_USERS), which is how it recovers from a gap in the
+ * versions, e.g. after deltas were shed because it fell behind. Clients with paged
+ * sync (v5) get no snapshot; they page through the directory themselves, and each
+ * first page carries a presence version the same way.
+ *
+ * Clients without delta support (legacy, binary before v4) still get the whole user
+ * list, once per window and only while such a client is online.
+ *
+ * Clients with subscriptions (v6) get presence only for the users they subscribed to
+ * (see {@link PresenceSubscriptions}), and each gets its own delta per window, numbered
+ * per connection, and join/leave notices only for those users, never the summary.
+ * Everyone else is a broadcast target and shares the global version.
+ *
+ * Ordering: the directory is updated before a change is published, and a snapshot is
+ * read after its version is taken, so it is never older than its version. Deltas are
+ * queued under {@link #lock}, so every client sees them in version order.
+ */
+class PresenceTracker {
+    static final long COALESCE_MS = EnvConfig.getLong("PRESENCE_COALESCE_MS", 150);
+
+    // More joins (or leaves) than this in one window become a single summary notice
+    private static final int MAX_NOTICES = 3;
+
+    private static final ServerMetrics metrics = ServerMetrics.getInstance();
+
+    private static PresenceTracker instance;
+
+    private final AtomicLong version = new AtomicLong();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final UserManager userManager;
+    private final PresenceSubscriptions subscriptions = new PresenceSubscriptions();
+    // Logged-in clients without subscriptions; they get every change
+    private final Set<ServerHandler> broadcastTargets = ConcurrentHashMap.newKeySet();
+
+    // Changes waiting for the window to close, guarded by pendingLock
+    private final ReentrantLock pendingLock = new ReentrantLock();
+    private Map<String, User.Status> pending = new LinkedHashMap<>();
+    private boolean flushScheduled;
+    // Status each user was last announced with; absent means OFFLINE. Flusher only.
+    private final Map<String, User.Status> announced = new HashMap<>();
+    private ScheduledExecutorService flusher;
+
+    private PresenceTracker() {
+        userManager = UserManager.getInstance();
+        ServerMetrics.getInstance().registerGauge("presence.subscribers", subscriptions::connections);
+    }
+
+    static synchronized PresenceTracker getInstance() {
+        if (instance == null) {
+            instance = new PresenceTracker();
+        }
+        return instance;
+    }
+
+    /** Start sending presence to a client that has just logged in. */
+    void register(ServerHandler handler) {
+        if (!handler.supportsPresenceSubscriptions()) {
+            broadcastTargets.add(handler);
+        }
+    }
+
+    void unregister(ServerHandler handler) {
+        broadcastTargets.remove(handler);
+        subscriptions.removeAll(handler);
+    }
+
+    /** Replace a v6 client's subscriptions and tell it the current presence of new ones. */
+    void subscribe(ServerHandler handler, List<String> usernames) throws IOException {
+        List<String> added = subscriptions.replace(handler, usernames);
+        List<User> current = new ArrayList<>(added.size());
+        for (String username : added) {
+            User user = userManager.getDirectoryUser(username);
+            if (user != null) {
+                current.add(user);
+            }
+        }
+        metrics.increment("presence.subscribe");
+        if (current.isEmpty()) {
+            return;
+        }
+
+        lock.lock(); // Numbered in order with the deltas
+        try {
+            handler.sendPayload(OutboundPayload.ofPresence(current, handler.nextPresenceVersion()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Announce a status change that is already in the directory. */
+    void publish(String username, User.Status status) {
+        if (COALESCE_MS <= 0) {
+            lock.lock(); // Keeps announced consistent without the flusher thread
+            try {
+                send(Map.of(username, status));
+            } finally {
+                lock.unlock();
+            }
+            return;
+        }
+
+        pendingLock.lock();
+        try {
+            pending.put(username, status); // Later change in the window wins
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        } finally {
+            pendingLock.unlock();
+        }
+        flusher().schedule(this::flush, COALESCE_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized ScheduledExecutorService flusher() {
+        if (flusher == null) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "presence-flush");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return flusher;
+    }
+
+    private void flush() {
+        Map<String, User.Status> changes;
+        pendingLock.lock();
+        try {
+            changes = pending;
+            pending = new LinkedHashMap<>();
+            flushScheduled = false;
+        } finally {
+            pendingLock.unlock();
+        }
+
+        lock.lock();
+        try {
+            send(changes);
+        } catch (RuntimeException e) {
+            System.err.println("❌ Presence flush failed: " + e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller holds lock
+    private void send(Map<String, User.Status> changes) {
+        List<User> presences = new ArrayList<>(changes.size());
+        List<String> joined = new ArrayList<>();
+        List<String> left = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+
+        for (Map.Entry<String, User.Status> change : changes.entrySet()) {
+            String username = change.getKey();
+            User.Status status = change.getValue();
+            User.Status before = announced.getOrDefault(username, User.Status.OFFLINE);
+            if (status == before) {
+                metrics.increment("presence.cancelled"); // e.g. reconnected within the window
+                continue;
+            }
+            if (status == User.Status.OFFLINE) {
+                announced.remove(username);
+                left.add(username);
+            } else {
+                announced.put(username, status);
+                if (before == User.Status.OFFLINE) {
+                    joined.add(username);
+                }
+            }
+
+            User presence = new User(username, "");
+            presence.setStatus(status);
+            presence.setLastSeen(now);
+            presences.add(presence);
+        }
+        if (presences.isEmpty()) {
+            return;
+        }
+
+        sendDelta(presences);
+        sendNotices(joined, "joined");
+        sendNotices(left, "left");
+    }
+
+    private void sendDelta(List<User> presences) {
+        Collection<ServerHandler> handlers = broadcastTargets;
+        OutboundPayload fullList = null;
+        if (handlers.stream().anyMatch(h -> !h.supportsPresenceDeltas())) {
+            fullList = OutboundPayload.ofUsers(userManager.getAllUsers());
+        }
+
+        OutboundPayload delta = OutboundPayload.ofPresence(presences, version.incrementAndGet());
+        for (ServerHandler handler : handlers) {
+            OutboundPayload payload = handler.supportsPresenceDeltas() ? delta : fullList;
+            if (payload == null) {
+                continue; // Logged in after the check above, its snapshot is newer anyway
+            }
+            send(handler, payload);
+        }
+        metrics.increment(fullList == null ? "presence.deltas" : "presence.full_lists");
+        metrics.record("presence.batch.users", presences.size());
+
+        // Subscribers: only the changes they asked for, one frame each
+        Map<ServerHandler, List<User>> routed = new HashMap<>();
+        for (User presence : presences) {
+            for (ServerHandler subscriber : subscriptions.subscribersOf(presence.getUsername())) {
+                routed.computeIfAbsent(subscriber, k -> new ArrayList<>()).add(presence);
+            }
+        }
+        for (Map.Entry<ServerHandler, List<User>> route : routed.entrySet()) {
+            ServerHandler subscriber = route.getKey();
+            send(subscriber, OutboundPayload.ofPresence(route.getValue(), subscriber.nextPresenceVersion()));
+        }
+        metrics.record("presence.routed.clients", routed.size());
+    }
+
+    private void send(ServerHandler handler, OutboundPayload payload) {
+        try {
+            handler.sendPayload(payload);
+        } catch (IOException e) {
+            System.err.println("Failed to send presence to: " + handler.getUsername());
+        }
+    }
+
+    // Broadcast targets hear about everyone; subscribers only about the users they follow
+    private void sendNotices(List<String> usernames, String verb) {
+        Message.MessageType type = verb.equals("joined") ? Message.MessageType.USER_JOIN : Message.MessageType.USER_LEAVE;
+        boolean summarize = usernames.size() > MAX_NOTICES;
+        for (String username : usernames) {
+            Collection<ServerHandler> subscribers = subscriptions.subscribersOf(username);
+            if (summarize && subscribers.isEmpty()) {
+                continue;
+            }
+            OutboundPayload notice = OutboundPayload.of(new Message(username, username + " has " + verb + " the chat", type));
+            for (ServerHandler subscriber : subscribers) {
+                send(subscriber, notice);
+            }
+            if (!summarize) {
+                for (ServerHandler handler : broadcastTargets) {
+                    if (!username.equals(handler.getUsername())) {
+                        send(handler, notice);
+                    }
+                }
+            }
+        }
+        if (!summarize) {
+            return;
+        }
+
+        String names = usernames.stream().limit(MAX_NOTICES).collect(Collectors.joining(", "));
+        OutboundPayload summary = OutboundPayload.of(new Message("SYSTEM",
+                names + " and " + (usernames.size() - MAX_NOTICES) + " others have " + verb + " the chat",
+                Message.MessageType.SYSTEM));
+        for (ServerHandler handler : broadcastTargets) {
+            send(handler, summary);
+        }
+    }
+
+    /** Whole directory, tagged with the version it is current as of. */
+    void sendSnapshot(ServerHandler handler) throws IOException {
+        long current = versionFor(handler);
+        List<User> users = userManager.getAllUsers();
+        handler.sendPayload(OutboundPayload.ofSnapshot(users, current));
+        metrics.increment("presence.snapshots");
+        System.out.println("Sent user list to " + handler.getUsername() + " (" + users.size()
+                + " users, presence v" + current + ")");
+    }
+
+    /** Directory page for a v5 client, tagged with the presence version like a snapshot. */
+    void sendDirectoryPage(ServerHandler handler, DirectorySync request) throws IOException {
+        long current = versionFor(handler);
+        DirectoryPage page = userManager.getDirectoryPage(request, current);
+        handler.sendPayload(OutboundPayload.ofDirectoryPage(page));
+        metrics.increment(page.isReset() ? "directory.resets" : "directory.pages");
+        metrics.record("directory.page.users", page.getUsers().size());
+    }
+
+    private long versionFor(ServerHandler handler) {
+        return handler.supportsPresenceSubscriptions() ? handler.presenceVersion() : version.get();
+    }
+
+    void stop() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = flusher;
+            flusher = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.chatapp.server;
+
+import com.chatapp.database.PresenceDAO;
+import com.chatapp.model.User;
+import com.chatapp.util.EnvConfig;
+
+import java.net.InetAddress;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind persistence of presence. The in-memory directory is authoritative;
+ * this only makes it durable.
+ *
+ * Status changes overwrite each other in a map until the next flush, so a user who
+ * connects and disconnects ten times in one interval costs one row, and a whole
+ * interval's changes go out in one multi-row upsert into user_presence.
+ *
+ * While running, the server renews its lease in presence_leases every flush. A
+ * server that dies stops renewing, and the next server to reconcile (on startup and
+ * every PRESENCE_LEASE_SECONDS) sets its users OFFLINE. The same can happen to a
+ * live server that could not renew for that long, so after any failed renewal the
+ * next successful one queues every user online here to be written again.
+ */
+class PresenceWriter {
+    static final long FLUSH_INTERVAL_MS = EnvConfig.getLong("PRESENCE_FLUSH_INTERVAL_MS", 1000);
+    static final long LEASE_SECONDS = EnvConfig.getLong("PRESENCE_LEASE_SECONDS", 60);
+
+    private static final ServerMetrics metrics = ServerMetrics.getInstance();
+
+    private static PresenceWriter instance;
+
+    private final PresenceDAO presenceDAO = new PresenceDAO();
+    private final String serverId = describeServer();
+    private final Map<String, PresenceDAO.PresenceRow> dirty = new ConcurrentHashMap<>();
+    private ScheduledExecutorService flusher;
+    private long lastReconcileNanos;
+    private boolean renewalMissed; // Another server may have reset our users meanwhile
+
+    private PresenceWriter() {
+    }
+
+    static synchronized PresenceWriter getInstance() {
+        if (instance == null) {
+            instance = new PresenceWriter();
+        }
+        return instance;
+    }
+
+    /** Queue a status change; only the latest one per user is written. */
+    void record(String username, User.Status status) {
+        dirty.put(username, new PresenceDAO.PresenceRow(username, status, LocalDateTime.now()));
+    }
+
+    /**
+     * Create the tables, take a lease and reset users left ONLINE by servers that
+     * are gone. Then flush in the background.
+     */
+    synchronized void start() {
+        if (flusher != null) {
+            return;
+        }
+        presenceDAO.createTables();
+        renewalMissed = !presenceDAO.renewLease(serverId, LEASE_SECONDS);
+        reconcile();
+
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "presence-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushAndRenew, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        metrics.registerGauge("presence.dirty", dirty::size);
+        System.out.println("💾 Presence write-behind every " + FLUSH_INTERVAL_MS + " ms, lease "
+                + LEASE_SECONDS + " s (" + serverId + ")");
+    }
+
+    private void reconcile() {
+        int reset = presenceDAO.expireLapsedLeases();
+        lastReconcileNanos = System.nanoTime();
+        if (reset > 0) {
+            System.out.println("🧹 Set " + reset + " users OFFLINE whose server lease lapsed");
+            metrics.add("presence.lease.reset", reset);
+        }
+    }
+
+    private void flushAndRenew() {
+        try {
+            flush();
+            if (!presenceDAO.renewLease(serverId, LEASE_SECONDS)) {
+                renewalMissed = true;
+                metrics.increment("presence.lease.failures");
+            } else if (renewalMissed) {
+                renewalMissed = false;
+                rewriteOnlineUsers();
+            }
+            if (System.nanoTime() - lastReconcileNanos > TimeUnit.SECONDS.toNanos(LEASE_SECONDS)) {
+                reconcile();
+            }
+        } catch (RuntimeException e) {
+            System.err.println("❌ Presence flush failed: " + e.getMessage());
+        }
+    }
+
+    // Written with the next flush, unless a newer change for the user is already queued
+    private void rewriteOnlineUsers() {
+        int queued = 0;
+        LocalDateTime now = LocalDateTime.now();
+        for (String username : UserManager.getInstance().getAllOnlineUsernames()) {
+            PresenceDAO.PresenceRow row = new PresenceDAO.PresenceRow(username, User.Status.ONLINE, now);
+            if (dirty.putIfAbsent(username, row) == null) {
+                queued++;
+            }
+        }
+        System.out.println("🔁 Presence lease renewed after a miss, rewriting " + queued + " online users");
+    }
+
+    private void flush() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        List<PresenceDAO.PresenceRow> rows = new ArrayList<>(dirty.size());
+        for (PresenceDAO.PresenceRow row : dirty.values()) {
+            // Only if unchanged since we read it; a newer change stays for the next flush
+            if (dirty.remove(row.username(), row)) {
+                rows.add(row);
+            }
+        }
+
+        long start = System.nanoTime();
+        if (presenceDAO.upsert(rows, serverId)) {
+            metrics.record("presence.flush.rows", rows.size());
+            metrics.record("presence.flush.ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } else {
+            // Retry next time, unless a newer change has been queued meanwhile
+            for (PresenceDAO.PresenceRow row : rows) {
+                dirty.putIfAbsent(row.username(), row);
+            }
+            metrics.increment("presence.flush.failures");
+        }
+    }
+
+    /** Write what is pending and give up the lease. */
+    void stop() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = flusher;
+            flusher = null;
+        }
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        presenceDAO.releaseLease(serverId);
+    }
+
+    private static String describeServer() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        String id = host + ":" + ProcessHandle.current().pid() + ":" + System.currentTimeMillis();
+        return id.length() <= 64 ? id : id.substring(id.length() - 64);
+    }
+}
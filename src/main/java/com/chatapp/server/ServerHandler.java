@@ -2,62 +2,142 @@ package com.chatapp.server;
 
 import com.chatapp.model.Message;
 import com.chatapp.model.User;
-import com.chatapp.util.NetworkUtil;
-import com.chatapp.database.MessageDAO;
+import com.chatapp.protocol.AuthRequest;
+import com.chatapp.protocol.AuthResult;
+import com.chatapp.protocol.DirectorySync;
+import com.chatapp.protocol.PresenceSubscription;
+import com.chatapp.protocol.Protocol;
+import com.chatapp.protocol.UsernameCheck;
+import com.chatapp.protocol.UsernameStatus;
+import com.chatapp.util.EnvConfig;
 
 import java.io.*;
+import java.net.InetAddress;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class ServerHandler implements Runnable {
+    private static final int INITIAL_READ_BUFFER = 8 * 1024;
+    private static final int OUTBOUND_QUEUE_CAPACITY = EnvConfig.getInt("OUTBOUND_QUEUE_CAPACITY", 1024);
+
+    private static final ServerMetrics metrics = ServerMetrics.getInstance();
+
+    // Below this much write progress, an evicted client is closed without waiting for the notice
+    private static final long EVICT_GRACE_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int REJECT_READ_TIMEOUT_MS = 5000;
+
+    // Largest frame (or legacy string record) a client may send: a few KB until it has
+    // logged in, so an unauthenticated socket cannot make us allocate; room for a file after
+    static final int MAX_PREAUTH_FRAME_BYTES = EnvConfig.getInt("MAX_PREAUTH_FRAME_BYTES", 4 * 1024);
+    static final int MAX_INBOUND_FRAME_BYTES = EnvConfig.getInt("MAX_INBOUND_FRAME_BYTES", Protocol.MAX_FRAME_SIZE);
+
+    // Write coalescing: frames queued within this budget of a busy connection's last
+    // flush go out in the same write; an idle connection flushes right away
+    static final int WRITE_BATCH_MAX_BYTES = EnvConfig.getInt("WRITE_BATCH_MAX_BYTES", 64 * 1024);
+    private static final long WRITE_COALESCE_NANOS = TimeUnit.MICROSECONDS.toNanos(
+            EnvConfig.getLong("WRITE_COALESCE_MICROS", 1000));
+    private static final long COALESCE_POLL_NANOS = Math.max(1, WRITE_COALESCE_NANOS / 4);
+
     private final Socket socket;
-    private ObjectOutputStream out;
-    private ObjectInputStream in;
+    private final NioConnection connection; // set instead of socket in NIO mode
+    private OutputStream socketOut;
+    private ConnectionProtocol protocol;    // picked from the client's first bytes
     private String username;
+    private volatile boolean authenticated; // Set before the reply goes out; read by decode()
     private final UserManager userManager;
+    private final PresenceTracker presence = PresenceTracker.getInstance();
+    private final AtomicLong presenceVersion = new AtomicLong();
+    private final TypingThrottle typing = new TypingThrottle();
     private volatile boolean running;
-    private final MessageDAO messageDAO = new MessageDAO();
-
-    public ServerHandler(Socket socket) {
+    private final HistoryWriter historyWriter = HistoryWriter.getInstance();
+
+    // Senders only encode and enqueue; the socket is written by a writer task (threaded
+    // mode) or the event loop (NIO), so a slow client never blocks whoever is routing to it
+    private final OutboundQueue outbound = new OutboundQueue(OUTBOUND_QUEUE_CAPACITY);
+    private final Executor writers;
+    private final AtomicBoolean writerScheduled = new AtomicBoolean(false);
+    private volatile boolean closing;
+    private volatile boolean evicted;
+
+    private volatile long lastInboundNanos = System.nanoTime();
+    private volatile long lastOutboundNanos = System.nanoTime(); // Last frames written to the socket
+    private volatile TimingWheel.Timeout heartbeat;
+    private volatile boolean reaped;
+
+    private final AdmissionControl admission = AdmissionControl.getInstance();
+    private final AuthWorkers authWorkers = AuthWorkers.getInstance();
+    private final SessionTokens sessionTokens = SessionTokens.getInstance();
+    private final LoginLimiter loginLimiter = LoginLimiter.getInstance();
+    private final boolean admitted;     // false: over the session limit, answer "busy" and close
+    private boolean holdsAuthSlot;      // Between tryBeginAuth() and the reply, on the handler's tasks
+    private final long acceptedNanos = System.nanoTime();
+    private boolean busySent;
+    private long lastFlushNanos = System.nanoTime() - WRITE_COALESCE_NANOS; // writer thread only
+
+    // Makes the slow-consumer check and the enqueue one step, so concurrent senders
+    // cannot together push the queue past its limits or queue behind an eviction
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    public ServerHandler(Socket socket, Executor writers) {
         this.socket = socket;
+        this.connection = null;
+        this.writers = writers;
         this.userManager = UserManager.getInstance();
         this.running = true;
+        this.admitted = admission.tryAdmitSession();
+    }
+
+    ServerHandler(NioConnection connection) {
+        this.socket = null;
+        this.connection = connection;
+        this.writers = null;
+        this.userManager = UserManager.getInstance();
+        this.running = true;
+        this.admitted = admission.tryAdmitSession();
     }
 
     @Override
     public void run() {
         try {
-            // Initialize streams
-            in = new ObjectInputStream(socket.getInputStream());
-            out = new ObjectOutputStream(socket.getOutputStream());
-            out.flush();
-
-            System.out.println("New client connected from: " + socket.getInetAddress());
-
-            // Handle client authentication
-            if (!handleAuthentication()) {
-                return;
+            InputStream input = socket.getInputStream();
+            socketOut = new BufferedOutputStream(socket.getOutputStream(), WRITE_BATCH_MAX_BYTES);
+
+            recordAdmitWait();
+            socket.setKeepAlive(true);
+            if (admitted) {
+                System.out.println("New client connected from: " + socket.getInetAddress());
+                HeartbeatMonitor.getInstance().watch(this);
+            } else {
+                socket.setSoTimeout(REJECT_READ_TIMEOUT_MS); // Only waiting for enough bytes to answer
             }
 
-            // Send offline messages if any
-            sendOfflineMessages();
-
-            // Send current online users list
-            sendOnlineUsersList();
-
-            // Notify others about new user
-            broadcastUserJoined();
+            ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+            List<Object> inbound = new ArrayList<>();
 
             // Main message loop
             while (running) {
-                try {
-                    Message message = NetworkUtil.receiveMessage(in);
-                    handleMessage(message);
-                } catch (EOFException e) {
+                int n = input.read(readBuffer.array(), readBuffer.position(), readBuffer.remaining());
+                if (n < 0) {
                     break; // Client disconnected
-                } catch (ClassNotFoundException e) {
-                    System.err.println("Error deserializing message: " + e.getMessage());
                 }
+                readBuffer.position(readBuffer.position() + n);
+
+                readBuffer = decode(readBuffer, inbound);
+                for (Object item : inbound) {
+                    onInbound(item);
+                }
+                inbound.clear();
             }
 
         } catch (IOException e) {
@@ -69,52 +149,380 @@ public class ServerHandler implements Runnable {
         }
     }
 
-    private boolean handleAuthentication() throws IOException {
-        try {
-            // Receive auth type (LOGIN or REGISTER)
-            String authType = (String) in.readObject();
-            String receivedUsername = (String) in.readObject();
-            String password = (String) in.readObject();
-
-            boolean success = false;
-            String responseMessage = "";
-
-            if ("REGISTER".equals(authType)) {
-                String email = (String) in.readObject();
-                User newUser = new User(receivedUsername, password, email);
-                success = userManager.registerUser(newUser);
-                responseMessage = success ? "Registration successful" : "Username already exists";
-            } else if ("LOGIN".equals(authType)) {
-                User user = userManager.authenticateUser(receivedUsername, password);
-                success = (user != null);
-                responseMessage = success ? "Login successful" : "Invalid credentials";
+    void onConnected() {
+        recordAdmitWait();
+        if (admitted) {
+            System.out.println("New client connected from: " + connection.getInetAddress());
+        }
+        // Also bounds how long a rejected client can take to say which protocol it speaks
+        HeartbeatMonitor.getInstance().watch(this);
+    }
+
+    boolean isAdmitted() {
+        return admitted;
+    }
+
+    private void recordAdmitWait() {
+        metrics.record("admission.wait.ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - acceptedNanos));
+    }
+
+    /**
+     * Decode what has arrived so far. Takes the read buffer in write mode and returns
+     * it (or a larger replacement) in write mode, with any partial frame kept.
+     * In NIO mode this runs on the event loop thread.
+     */
+    ByteBuffer decode(ByteBuffer readBuffer, List<Object> inbound) throws IOException {
+        lastInboundNanos = System.nanoTime();
+        readBuffer.flip();
+
+        if (protocol == null) {
+            protocol = ConnectionProtocol.detect(readBuffer);
+            if (protocol != null) {
+                writeLock.lock();
+                try {
+                    write(protocol.handshake());
+                } finally {
+                    writeLock.unlock();
+                }
+                if (!admitted && protocol.canRejectEarly()) {
+                    rejectBusy();
+                }
             }
+        }
+
+        long needed = 0;
+        if (protocol != null) {
+            protocol.decode(readBuffer, inbound);
+            needed = protocol.pendingSize(readBuffer);
+        }
+        readBuffer.compact();
+
+        long limit = authenticated ? MAX_INBOUND_FRAME_BYTES : MAX_PREAUTH_FRAME_BYTES;
+        if (needed > limit) {
+            throw new IOException("Inbound frame too large: " + needed + " bytes (limit " + limit + ")");
+        }
+        // Grow with the bytes that actually arrived, not with what the header claims
+        if (needed > readBuffer.capacity() && !readBuffer.hasRemaining()) {
+            ByteBuffer bigger = ByteBuffer.allocate((int) Math.min(needed, readBuffer.capacity() * 2L));
+            readBuffer.flip();
+            bigger.put(readBuffer);
+            readBuffer = bigger;
+        }
+        return readBuffer;
+    }
+
+    /**
+     * One decoded unit from the client: an {@link AuthRequest} first, then messages
+     * and directory requests. In NIO mode this runs on a worker thread, one at a time
+     * per connection.
+     */
+    void onInbound(Object item) throws IOException {
+        if (!running) {
+            return;
+        }
+
+        if (username == null) {
+            if (item instanceof UsernameCheck check) {
+                answerUsernameCheck(check);
+                return;
+            }
+            if (!(item instanceof AuthRequest request)) {
+                throw new IOException("Expected authentication, got " + item.getClass().getSimpleName());
+            }
+            if (!admitted) {
+                rejectBusy();
+                return;
+            }
+            // Before any hashing or lookup; resuming with a token is cheap and not limited
+            if (request.getType() != AuthRequest.Type.RESUME) {
+                long retryMs = loginLimiter.tryAcquire(remoteAddress(),
+                        request.getType() == AuthRequest.Type.LOGIN ? request.getUsername() : null);
+                if (retryMs > 0) {
+                    int seconds = (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(retryMs + 999));
+                    rejectBusy(seconds, "Too many login attempts, please retry in " + seconds + " s");
+                    return;
+                }
+            }
+            if (!admission.tryBeginAuth()) {
+                rejectBusy();
+                return;
+            }
+
+            holdsAuthSlot = true;
+            try {
+                authenticate(request);
+            } catch (RejectedExecutionException e) {
+                releaseAuthSlot();
+                rejectBusy(); // Auth queue is full
+            } catch (IOException | RuntimeException e) {
+                releaseAuthSlot();
+                throw e;
+            }
+            return;
+        }
+
+        if (item instanceof Message message) {
+            handleMessage(message);
+        } else if (item instanceof DirectorySync request) {
+            presence.sendDirectoryPage(this, request);
+        } else if (item instanceof PresenceSubscription subscription) {
+            presence.subscribe(this, subscription.getUsernames());
+        }
+    }
+
+    String getUsername() {
+        return username;
+    }
+
+    private InetAddress remoteAddress() {
+        return socket != null ? socket.getInetAddress() : connection.getInetAddress();
+    }
+
+    boolean supportsPresenceDeltas() {
+        return protocol != null && protocol.supportsPresenceDeltas();
+    }
+
+    boolean supportsPresenceSubscriptions() {
+        return protocol != null && protocol.supportsPresenceSubscriptions();
+    }
+
+    /** Last presence version sent on this connection, for subscribers (v6). */
+    long presenceVersion() {
+        return presenceVersion.get();
+    }
+
+    // Called under the presence tracker's lock, so versions are queued in order
+    long nextPresenceVersion() {
+        return presenceVersion.incrementAndGet();
+    }
+
+    private void rejectBusy() throws IOException {
+        rejectBusy(AdmissionControl.RETRY_AFTER_SECONDS, AdmissionControl.busyMessage());
+    }
+
+    private void rejectBusy(int retryAfterSeconds, String message) throws IOException {
+        if (busySent) {
+            return;
+        }
+        busySent = true;
+        writeLock.lock();
+        try {
+            write(protocol.encodeBusy(retryAfterSeconds, message));
+        } finally {
+            writeLock.unlock();
+        }
+        closeAfterReply();
+    }
+
+    // The reply is still queued; the connection closes once it has been written
+    private void closeAfterReply() {
+        running = false;
+        if (connection != null) {
+            connection.closeAfterFlush();
+        }
+    }
 
-            // Send response
-            out.writeObject(success);
-            out.writeObject(responseMessage);
-            out.flush();
+    void setHeartbeatTimeout(TimingWheel.Timeout timeout) {
+        heartbeat = timeout;
+    }
 
-            if (success) {
-                this.username = receivedUsername;
-                userManager.addOnlineUser(username, this);
-                System.out.println("User authenticated: " + username);
+    /**
+     * Runs on the heartbeat wheel thread: ping a quiet client, close a dead one.
+     *
+     * A client that only sends hears nothing back, and gives up on a server it has
+     * not heard from; one that only listens never answers. So either direction
+     * quiet for an interval earns a ping: it keeps the client's read alive, and its
+     * pong keeps ours.
+     *
+     * @return ms until the next check, or 0 to stop watching this connection
+     */
+    long checkHeartbeat(long intervalMs, long idleTimeoutMs) {
+        if (closing || (connection != null && connection.isClosed())) {
+            return 0;
+        }
+
+        long idleMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastInboundNanos);
+        if (idleMs >= idleTimeoutMs) {
+            String who = username != null ? username : "unauthenticated client";
+            System.out.println("💤 Reaping idle connection: " + who + " (nothing received for " + idleMs / 1000 + "s)");
+            metrics.noteEvent("heartbeat.reaped", who);
+
+            // From here on sends behave as for an evicted client: private messages go offline
+            writeLock.lock();
+            try {
+                evicted = true;
+            } finally {
+                writeLock.unlock();
+            }
+            reaped = true;
+            shutdown(); // Reader or event loop sees the close and runs cleanup()
+            return 0;
+        }
+
+        long sentIdleMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastOutboundNanos);
+        long nextMs = intervalMs;
+        if (username != null && (idleMs >= intervalMs || sentIdleMs >= intervalMs)) {
+            writeLock.lock();
+            try {
+                byte[] ping = protocol.encodePing();
+                if (ping == null) {
+                    // Legacy client, cannot answer; TCP keepalive is all it gets
+                    return 0;
+                }
+                write(ping);
+                metrics.increment("heartbeat.pings");
+            } catch (IOException e) {
+                System.err.println("Failed to ping " + username + ": " + e.getMessage());
+            } finally {
+                writeLock.unlock();
+            }
+        } else if (username != null) {
+            nextMs = intervalMs - sentIdleMs; // When we will have been quiet for a full interval
+        }
 
-                sendOnlineUsersList();
-                broadcastUserListToAll();
+        return Math.max(1, Math.min(nextMs, idleTimeoutMs - idleMs));
+    }
 
-                return true;
+    private void authenticate(AuthRequest request) throws IOException {
+        String name = request.getUsername();
+        boolean success = false;
+        Callable<Boolean> check = null;
+
+        // Names the directory already has (or lacks) are settled without BCrypt or the
+        // database; the rest go to the auth pool
+        if (request.getType() == AuthRequest.Type.REGISTER) {
+            User newUser = new User(request.getUsername(), request.getPassword(), request.getEmail());
+            if (userManager.getDirectoryUser(newUser.getUsername()) != null) {
+                metrics.increment("auth.register.taken");
+            } else {
+                check = () -> userManager.registerUser(newUser);
+            }
+        } else if (request.getType() == AuthRequest.Type.RESUME) {
+            // No hash: the token's signature is the proof. Deleted users cannot resume.
+            name = sessionTokens.verify(request.getToken());
+            success = name != null && userManager.getDirectoryUser(name) != null;
+            metrics.increment(success ? "auth.resumed" : "auth.resume.rejected");
+        } else {
+            if (userManager.getDirectoryUser(request.getUsername()) == null) {
+                metrics.increment("auth.unknown");
             } else {
-                System.out.println("Authentication failed for: " + receivedUsername);
-                return false;
+                check = () -> userManager.authenticateUser(request.getUsername(), request.getPassword()) != null;
             }
+        }
+
+        if (check == null) {
+            finishAuthentication(request, name, success);
+        } else if (connection == null) {
+            // This connection's own thread (a virtual one just parks) waits for the hash
+            finishAuthentication(request, name, authWorkers.call(check));
+        } else {
+            // An NIO worker is shared, so it does not wait: the connection's tasks stop
+            // here and pick up with the result once the auth pool posts it back
+            String checked = name;
+            connection.suspendTasks();
+            CompletableFuture<Boolean> result;
+            try {
+                result = authWorkers.submit(check);
+            } catch (RejectedExecutionException e) {
+                connection.resumeTasks(null);
+                throw e;
+            }
+            result.whenComplete((ok, error) -> connection.resumeTasks(() -> {
+                try {
+                    if (error != null) {
+                        throw new IOException("Authentication failed: " + error.getMessage(), error);
+                    }
+                    finishAuthentication(request, checked, ok);
+                } catch (IOException | RuntimeException e) {
+                    releaseAuthSlot();
+                    System.err.println("Connection error for user " + checked + ": " + e.getMessage());
+                    connection.close();
+                }
+            }));
+        }
+    }
+
+    // Reply to an auth request; runs on the connection's own thread or one of its tasks
+    private void finishAuthentication(AuthRequest request, String name, boolean success) throws IOException {
+        releaseAuthSlot();
+
+        String responseMessage = switch (request.getType()) {
+            case REGISTER -> success ? "Registration successful" : "Username already exists";
+            case RESUME -> success ? "Session resumed" : "Session expired, please log in";
+            default -> success ? "Login successful" : "Invalid credentials";
+        };
 
-        } catch (ClassNotFoundException e) {
-            System.err.println("Authentication error: " + e.getMessage());
-            return false;
+        // A fresh token on every success, so one in regular use never expires
+        String token = success && protocol.supportsSessionResumption() ? sessionTokens.issue(name) : null;
+
+        // Lifts the frame size limit before the client can know it logged in
+        authenticated = success;
+
+        // Send response
+        writeLock.lock();
+        try {
+            write(protocol.encodeAuthResult(new AuthResult(success, responseMessage, token)));
+        } finally {
+            writeLock.unlock();
+        }
+
+        if (success) {
+            this.username = name;
+            userManager.addOnlineUser(username, this);
+            System.out.println("User authenticated: " + username + " (" + protocol.name() + ")");
+            metrics.record("admission.login.ms",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - acceptedNanos));
+            onAuthenticated();
+        } else {
+            System.out.println("Authentication failed for: " + (name != null ? name : "session token"));
+            closeAfterReply();
         }
     }
 
+    private void releaseAuthSlot() {
+        if (holdsAuthSlot) {
+            holdsAuthSlot = false;
+            admission.endAuth();
+        }
+    }
+
+    // From the in-memory directory, so a registration form can ask on every pause in typing
+    private void answerUsernameCheck(UsernameCheck check) throws IOException {
+        if (!admitted) {
+            rejectBusy();
+            return;
+        }
+        long retryMs = loginLimiter.tryAcquireCheck(remoteAddress());
+        if (retryMs > 0) {
+            int seconds = (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(retryMs + 999));
+            rejectBusy(seconds, "Too many username checks, please retry in " + seconds + " s");
+            return;
+        }
+
+        boolean available = userManager.getDirectoryUser(check.getUsername()) == null;
+        metrics.increment("auth.username.checks");
+        writeLock.lock();
+        try {
+            write(protocol.encodeUsernameStatus(new UsernameStatus(check.getUsername(), available)));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void onAuthenticated() throws IOException {
+        // Send offline messages if any
+        sendOfflineMessages();
+
+        // Full directory once, deltas from here on. Paging clients ask for their own.
+        presence.register(this);
+        if (!protocol.supportsDirectorySync()) {
+            presence.sendSnapshot(this);
+        }
+
+        // Notify others about new user
+        broadcastUserJoined();
+    }
+
     private void handleMessage(Message message) throws IOException {
         System.out.println("Received message from " + message.getSender() +
                 " [" + message.getType() + "]: " +
@@ -124,7 +532,7 @@ public class ServerHandler implements Runnable {
         if (message.getType() == Message.MessageType.SYSTEM &&
                 "REQUEST_USERS".equals(message.getContent())) {
             System.out.println("📋 " + username + " requested user list");
-            sendOnlineUsersList();
+            presence.sendSnapshot(this);
             return;
         }
 
@@ -149,7 +557,7 @@ public class ServerHandler implements Runnable {
                 break;
 
             case TYPING:
-                userManager.broadcastMessage(message, username);
+                handleTyping(message);
                 break;
 
             default:
@@ -157,12 +565,35 @@ public class ServerHandler implements Runnable {
         }
     }
 
+    // Only the conversation peer cares, and only a few times a conversation. Typing in
+    // the broadcast room (no receiver) is not forwarded: it would go to everyone online.
+    private void handleTyping(Message message) throws IOException {
+        String receiver = message.getReceiver();
+        if (receiver == null || receiver.isEmpty() || receiver.equals(username)) {
+            metrics.increment("typing.dropped");
+            return;
+        }
+        boolean stopped = Message.TYPING_STOPPED.equals(message.getContent());
+        if (!typing.allow(receiver, stopped, System.currentTimeMillis())) {
+            metrics.increment("typing.throttled");
+            return;
+        }
+        ServerHandler receiverHandler = userManager.getOnlineUserHandler(receiver);
+        if (receiverHandler == null) {
+            metrics.increment("typing.dropped");
+            return;
+        }
+        message.setSender(username);
+        receiverHandler.sendMessage(message);
+        metrics.increment("typing.forwarded");
+    }
+
     private void handlePrivateMessage(Message message) throws IOException {
         String receiver = message.getReceiver();
 
 
-        messageDAO.saveToChatHistory(message);
-        System.out.println("💾 Saved private message to chat history");
+        // On local disk (journal) before delivery; the database catches up in the background
+        historyWriter.append(message);
 
         // Check if user is messaging themselves
         if (receiver.equals(username)) {
@@ -215,104 +646,310 @@ public class ServerHandler implements Runnable {
         }
     }
 
-    private void sendOnlineUsersList() throws IOException {
+    private void sendUserMessage(Message message) throws IOException {
+        sendMessage(message);
+    }
 
-        List<User> allUsers = userManager.getAllUsers();
+    // Presence and the join/leave notice go out with the next coalesced batch
+    private void broadcastUserJoined() {
+        presence.publish(username, User.Status.ONLINE);
+    }
+
+    private void broadcastUserLeft() {
+        presence.publish(username, User.Status.OFFLINE);
+    }
+
+    public void sendMessage(Message message) throws IOException {
+        sendPayload(OutboundPayload.of(message));
+    }
 
-        synchronized (out) {
-            out.writeObject("USERS_LIST");
-            out.writeObject(allUsers);
-            out.flush();
+    /**
+     * Send a payload that may be shared with other recipients. User lists and presence
+     * deltas are droppable, the client resyncs from a snapshot when it sees the gap.
+     */
+    void sendPayload(OutboundPayload payload) throws IOException {
+        Message message = payload.getMessage();
+        if (message == null) {
+            send(() -> payload.encodeFor(protocol), !payload.isSnapshot(), null);
+        } else {
+            send(() -> payload.encodeFor(protocol), isDroppable(message),
+                    canDeliverOffline(message) ? message : null);
         }
-        System.out.println("Sent user list to " + username + " (" + allUsers.size() + " users)");
     }
 
+    @FunctionalInterface
+    private interface FrameEncoder {
+        byte[] encode() throws IOException;
+    }
 
-    private void sendUserMessage(Message message) throws IOException {
-        synchronized (out) {
-            out.writeObject("MESSAGE");
-            out.writeObject(message);
-            out.flush();
+    /**
+     * Queue one frame, subject to {@link SlowConsumerPolicy}. Droppable frames are shed
+     * when the client falls behind; anything else evicts it, and a message addressed to
+     * this user goes to the offline queue instead.
+     */
+    private void send(FrameEncoder encoder, boolean droppable, Message offlineFallback) throws IOException {
+        // Encode outside the lock, so a large frame does not hold up other senders or
+        // the writer; only a client already evicted skips the work
+        byte[] frame = evicted ? null : encoder.encode();
+
+        SlowConsumerPolicy.Action action;
+        writeLock.lock();
+        try {
+            action = evicted ? SlowConsumerPolicy.Action.EVICT : SlowConsumerPolicy.check(outbound, droppable);
+            if (action == SlowConsumerPolicy.Action.ACCEPT) {
+                enqueue(frame, offlineFallback);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+
+        if (action == SlowConsumerPolicy.Action.SHED) {
+            metrics.increment("slowconsumer.shed");
+        } else if (action == SlowConsumerPolicy.Action.EVICT) {
+            evictSlowConsumer();
+            if (offlineFallback != null) {
+                deliverOffline(List.of(offlineFallback));
+            }
         }
     }
 
-    private void broadcastUserJoined() {
-        Message joinMessage = new Message(username,
-                username + " has joined the chat",
-                Message.MessageType.USER_JOIN);
-        userManager.broadcastMessage(joinMessage, username);
+    private static boolean isDroppable(Message message) {
+        return switch (message.getType()) {
+            case TYPING, USER_JOIN, USER_LEAVE -> true;
+            default -> false;
+        };
+    }
 
-        broadcastUserListToAll();
+    // Broadcasts have no receiver and cannot be stored for one user
+    private boolean canDeliverOffline(Message message) {
+        return username != null && username.equals(message.getReceiver())
+                && (message.getType() == Message.MessageType.PRIVATE
+                || message.getType() == Message.MessageType.TEXT
+                || message.getType() == Message.MessageType.FILE);
     }
 
-    private void broadcastUserListToAll() {
-        List<User> allUsers = userManager.getAllUsers();
+    private void evictSlowConsumer() {
+        List<Message> undelivered;
+        boolean stalled;
+        writeLock.lock();
+        try {
+            if (evicted) {
+                return;
+            }
+            evicted = true;
+            System.err.println("🐢 Evicting slow consumer " + username + ": " + SlowConsumerPolicy.describe(outbound));
 
-        // Get all online handlers
-        for (String user : userManager.getAllOnlineUsernames()) {
-            ServerHandler handler = userManager.getOnlineUserHandler(user);
-            if (handler != null) {
-                try {
-                    handler.sendUserListUpdate(allUsers);
-                } catch (IOException e) {
-                    System.err.println("Failed to send user list to: " + user);
-                }
+            stalled = outbound.stalledNanos() > EVICT_GRACE_NANOS;
+            undelivered = outbound.drain();
+
+            // Best effort, a client that is still reading learns why it was dropped
+            Message notice = new Message("SYSTEM",
+                    "Disconnected: your connection could not keep up. Undelivered private messages will arrive when you reconnect.",
+                    Message.MessageType.SYSTEM);
+            try {
+                enqueue(protocol.encodeMessage(notice), null);
+            } catch (IOException e) {
+                stalled = true;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+
+        metrics.noteEvent("slowconsumer.evicted", username);
+        deliverOffline(undelivered);
+
+        running = false;
+        if (connection != null) {
+            if (stalled) {
+                connection.close();
+            } else {
+                connection.closeAfterFlush();
+            }
+        } else {
+            closing = true;
+            if (stalled) {
+                closeSocket(); // Writer is stuck in a blocking write
+            } else {
+                scheduleWriter();
             }
         }
     }
 
-    private void sendUserListUpdate(List<User> users) throws IOException {
-        synchronized (out) {
-            out.writeObject("USERS_LIST");
-            out.writeObject(users);
-            out.flush();
+    private void deliverOffline(List<Message> messages) {
+        for (Message message : messages) {
+            userManager.addOfflineMessage(username, message);
+        }
+        if (!messages.isEmpty()) {
+            metrics.add("slowconsumer.offlined", messages.size());
         }
     }
 
-    private void broadcastUserLeft() {
-        Message leaveMessage = new Message(username,
-                username + " has left the chat",
-                Message.MessageType.USER_LEAVE);
-        userManager.broadcastMessage(leaveMessage, username);
+    // Caller holds writeLock. Handshake and auth replies go straight here, past the policy.
+    private void write(byte[] frame) {
+        enqueue(frame, null);
     }
 
-    public void sendMessage(Message message) throws IOException {
-        synchronized (out) {
-            out.writeObject("MESSAGE");
-            out.writeObject(message);
-            out.flush();
+    // Caller holds writeLock
+    private void enqueue(byte[] frame, Message offlineFallback) {
+        if (!outbound.offer(frame, offlineFallback)) {
+            // Not reached through send(), which checks capacity first
+            metrics.increment("outbound.rejected");
+            return;
         }
-    }
+        metrics.increment("outbound.queued");
 
-    private void cleanup() {
-        running = false;
+        if (connection != null) {
+            connection.requestWrite();
+        } else {
+            scheduleWriter();
+        }
+    }
 
-        if (username != null) {
-            userManager.setUserOffline(username);
+    // ==================== Outbound (threaded mode) ====================
+
+    private void scheduleWriter() {
+        if (writerScheduled.compareAndSet(false, true)) {
+            try {
+                writers.execute(this::drainOutbound);
+            } catch (RuntimeException e) {
+                // Writer pool is gone, the server is shutting down
+                writerScheduled.set(false);
+                outbound.clear();
+                closeSocket();
+            }
+        }
+    }
 
-            // Remove from online users map
-            userManager.removeOnlineUser(username);
+    private void drainOutbound() {
+        try {
+            while (!outbound.isEmpty()) {
+                writeBatch();
+            }
+        } catch (IOException e) {
+            // Reader side sees the closed socket and runs cleanup
+            outbound.clear();
+            closing = true;
+        } finally {
+            writerScheduled.set(false);
+        }
 
-            // Notify others
-            broadcastUserLeft();
-            broadcastUserListToAll();
+        if (closing) {
+            closeSocket();
+        } else if (!outbound.isEmpty()) {
+            scheduleWriter();
+        }
+    }
 
-            System.out.println("✅ User " + username + " set to OFFLINE in database");
+    // Everything pending goes out in one flush; under load, wait up to the budget for more
+    private void writeBatch() throws IOException {
+        long start = System.nanoTime();
+        boolean busy = start - lastFlushNanos < WRITE_COALESCE_NANOS;
+        int frames = 0;
+
+        while (true) {
+            byte[] frame = outbound.poll();
+            if (frame == null) {
+                if (busy && System.nanoTime() - start < WRITE_COALESCE_NANOS) {
+                    LockSupport.parkNanos(COALESCE_POLL_NANOS);
+                    continue;
+                }
+                break;
+            }
+            socketOut.write(frame); // BufferedOutputStream, reaches the socket on flush or when full
+            frames++;
+            if (frames > 1 && !busy) {
+                busy = true; // Queue kept filling while we wrote, treat as busy
+            }
         }
 
+        socketOut.flush();
+        lastFlushNanos = System.nanoTime();
+        lastOutboundNanos = lastFlushNanos;
+        outbound.markProgress();
+        metrics.add("outbound.written", frames);
+        metrics.record("write.batch.frames", frames);
+    }
+
+    private void closeSocket() {
         try {
-            if (in != null) in.close();
-            if (out != null) out.close();
-            if (socket != null) socket.close();
+            socket.close();
         } catch (IOException e) {
             System.err.println("Error closing connection: " + e.getMessage());
         }
+    }
+
+    /** Byte arrays polled by the NIO event loop. */
+    byte[] pollOutbound() {
+        return outbound.poll();
+    }
 
-        System.out.println("Client disconnected: " + (username != null ? username : "unknown"));
+    void markWriteProgress() {
+        lastOutboundNanos = System.nanoTime();
+        outbound.markProgress();
+    }
+
+    boolean hasOutbound() {
+        return !outbound.isEmpty();
+    }
+
+    int getOutboundDepth() {
+        return outbound.depth();
+    }
+
+    long getOutboundBytes() {
+        return outbound.bytes();
+    }
+
+    int getOutboundPeakDepth() {
+        return outbound.peakDepth();
+    }
+
+    void cleanup() {
+        running = false;
+        releaseAuthSlot();
+
+        TimingWheel.Timeout timeout = heartbeat;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        if (reaped) {
+            deliverOffline(outbound.drain()); // Never reached the dead socket
+        }
+        if (admitted) {
+            admission.sessionClosed();
+        }
+
+        if (username != null) {
+            presence.unregister(this);
+        }
+        // A newer login for the same user keeps it online
+        if (username != null && userManager.removeOnlineUser(username, this)) {
+            // Notify others
+            broadcastUserLeft();
+
+            System.out.println("✅ User " + username + " set to OFFLINE");
+        }
+
+        if (connection != null) {
+            connection.close();
+            outbound.clear();
+        } else {
+            // Let the writer send what is already queued (e.g. an auth failure), then close
+            closing = true;
+            scheduleWriter();
+        }
+
+        if (admitted) {
+            System.out.println("Client disconnected: " + (username != null ? username : "unknown"));
+        }
     }
 
     public void shutdown() {
         running = false;
+        if (connection != null) {
+            connection.close();
+            return;
+        }
         try {
             socket.close();
         } catch (IOException e) {
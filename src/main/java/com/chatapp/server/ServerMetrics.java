@@ -0,0 +1,183 @@
+package com.chatapp.server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Server-wide counters and gauges, printed every METRICS_INTERVAL_SECONDS.
+ *
+ * Counters are created on first use by name, e.g. {@code metrics.increment("outbound.rejected")}.
+ * Gauges and report sections are sampled only when the report is printed.
+ */
+public class ServerMetrics {
+    private static final int RECENT_EVENTS = 20;
+
+    private static ServerMetrics instance;
+
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private final List<Supplier<String>> sections = new CopyOnWriteArrayList<>();
+    private final Map<String, Deque<String>> recent = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private ScheduledExecutorService reporter;
+
+    private ServerMetrics() {
+    }
+
+    public static synchronized ServerMetrics getInstance() {
+        if (instance == null) {
+            instance = new ServerMetrics();
+        }
+        return instance;
+    }
+
+    public void increment(String name) {
+        counter(name).increment();
+    }
+
+    public void add(String name, long amount) {
+        counter(name).add(amount);
+    }
+
+    public long get(String name) {
+        LongAdder counter = counters.get(name);
+        return counter != null ? counter.sum() : 0;
+    }
+
+    private LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, k -> new LongAdder());
+    }
+
+    /** Count an event and remember its detail (e.g. a username) among the last few. */
+    public void noteEvent(String name, String detail) {
+        increment(name);
+        Deque<String> events = recent.computeIfAbsent(name, k -> new ArrayDeque<>());
+        synchronized (events) {
+            events.addLast(detail);
+            if (events.size() > RECENT_EVENTS) {
+                events.removeFirst();
+            }
+        }
+    }
+
+    public List<String> recentEvents(String name) {
+        Deque<String> events = recent.get(name);
+        if (events == null) {
+            return List.of();
+        }
+        synchronized (events) {
+            return new ArrayList<>(events);
+        }
+    }
+
+    /** Add a sample to a power-of-two bucketed histogram. */
+    public void record(String name, long value) {
+        histograms.computeIfAbsent(name, k -> new Histogram()).record(value);
+    }
+
+    public void registerGauge(String name, LongSupplier gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /** Extra lines for the periodic report; return null or "" to skip. */
+    public void addReportSection(Supplier<String> section) {
+        sections.add(section);
+    }
+
+    public synchronized void start(long intervalSeconds) {
+        if (intervalSeconds <= 0 || reporter != null) {
+            return;
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-reporter");
+            t.setDaemon(true);
+            return t;
+        });
+        reporter.scheduleAtFixedRate(this::printReport, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    /** Counters and gauges by name, sorted. */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+        return values;
+    }
+
+    public void printReport() {
+        try {
+            List<String> lines = new ArrayList<>();
+            snapshot().forEach((name, value) -> lines.add("   " + name + " = " + value));
+            new TreeMap<>(histograms).forEach((name, histogram) ->
+                    lines.add("   " + name + ": " + histogram));
+            new TreeMap<>(recent).keySet().forEach(name ->
+                    lines.add("   recent " + name + ": " + String.join(", ", recentEvents(name))));
+            for (Supplier<String> section : sections) {
+                String text = section.get();
+                if (text != null && !text.isEmpty()) {
+                    lines.add(text);
+                }
+            }
+            System.out.println("📊 Server metrics\n" + String.join("\n", lines));
+        } catch (RuntimeException e) {
+            System.err.println("⚠️  Error printing metrics: " + e.getMessage());
+        }
+    }
+
+    /** Buckets 1, 2, 4 ... 1024 and one for anything larger. */
+    static final class Histogram {
+        private static final int BUCKETS = 12;
+
+        private final LongAdder[] counts = new LongAdder[BUCKETS];
+        private final LongAdder total = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+
+        Histogram() {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = new LongAdder();
+            }
+        }
+
+        void record(long value) {
+            int bucket = value <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(value - 1);
+            counts[Math.min(bucket, BUCKETS - 1)].increment();
+            total.increment();
+            sum.add(value);
+        }
+
+        @Override
+        public String toString() {
+            long n = total.sum();
+            StringBuilder sb = new StringBuilder("n=").append(n);
+            if (n > 0) {
+                sb.append(String.format(" mean=%.1f", (double) sum.sum() / n));
+            }
+            for (int i = 0; i < BUCKETS; i++) {
+                long c = counts[i].sum();
+                if (c > 0) {
+                    sb.append(i == BUCKETS - 1 ? " >" + (1L << (i - 1)) : " <=" + (1L << i)).append(':').append(c);
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
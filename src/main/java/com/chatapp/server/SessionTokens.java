@@ -0,0 +1,148 @@
+package com.chatapp.server;
+
+import com.chatapp.database.SessionDAO;
+import com.chatapp.util.EnvConfig;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signed, expiring session tokens (protocol v7), so a client that lost its connection
+ * logs in again with an HMAC check of a few microseconds instead of BCrypt.
+ *
+ * A token is base64url("issuedAt|expiresAt|username") + "." + base64url(HMAC-SHA256).
+ * Nothing is stored per token. Revoking a user (session_revocations, written by the
+ * admin tool) rejects every token issued to them before that moment; servers reload
+ * revocations every SESSION_REVOCATION_REFRESH_SECONDS and check them from memory.
+ *
+ * Servers that should accept each other's tokens, or keep accepting them across a
+ * restart, need the same SESSION_TOKEN_SECRET. Without one, each start picks a random
+ * key and clients fall back to their password after a restart.
+ */
+class SessionTokens {
+    static final long TTL_SECONDS = EnvConfig.getLong("SESSION_TOKEN_TTL_SECONDS", TimeUnit.DAYS.toSeconds(7));
+    static final long REVOCATION_REFRESH_SECONDS = EnvConfig.getLong("SESSION_REVOCATION_REFRESH_SECONDS", 30);
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private static SessionTokens instance;
+
+    private final SecretKeySpec key;
+    private final SessionDAO sessionDAO = new SessionDAO();
+    private volatile Map<String, Long> revokedAt = new ConcurrentHashMap<>();
+    private ScheduledExecutorService refresher;
+
+    private SessionTokens() {
+        String secret = EnvConfig.get("SESSION_TOKEN_SECRET", null);
+        byte[] keyBytes;
+        if (secret != null && !secret.isEmpty()) {
+            keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        } else {
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+            System.out.println("⚠️  SESSION_TOKEN_SECRET not set, session tokens will not survive a restart");
+        }
+        key = new SecretKeySpec(keyBytes, ALGORITHM);
+    }
+
+    static synchronized SessionTokens getInstance() {
+        if (instance == null) {
+            instance = new SessionTokens();
+        }
+        return instance;
+    }
+
+    /** Create the revocations table, load it, and reload it in the background. */
+    synchronized void start() {
+        if (refresher != null) {
+            return;
+        }
+        sessionDAO.createTable();
+        refresh();
+
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-revocations");
+            t.setDaemon(true);
+            return t;
+        });
+        refresher.scheduleWithFixedDelay(this::refresh, REVOCATION_REFRESH_SECONDS, REVOCATION_REFRESH_SECONDS,
+                TimeUnit.SECONDS);
+    }
+
+    synchronized void stop() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+    }
+
+    private void refresh() {
+        Map<String, Long> loaded = sessionDAO.getRevocations();
+        if (loaded != null) {
+            revokedAt = new ConcurrentHashMap<>(loaded); // Keep the old set if the read failed
+        }
+    }
+
+    /** A new token for a user who just proved who they are. */
+    String issue(String username) {
+        long now = System.currentTimeMillis();
+        String payload = now + "|" + (now + TimeUnit.SECONDS.toMillis(TTL_SECONDS)) + "|" + username;
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        return ENCODER.encodeToString(bytes) + "." + ENCODER.encodeToString(sign(bytes));
+    }
+
+    /** @return the user the token was issued to, or null if it is forged, expired or revoked */
+    String verify(String token) {
+        int dot = token != null ? token.indexOf('.') : -1;
+        if (dot < 0) {
+            return null;
+        }
+        byte[] payload;
+        byte[] signature;
+        try {
+            payload = DECODER.decode(token.substring(0, dot));
+            signature = DECODER.decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (!MessageDigest.isEqual(sign(payload), signature)) {
+            return null;
+        }
+
+        // Signed by us, so well-formed
+        String[] fields = new String(payload, StandardCharsets.UTF_8).split("\\|", 3);
+        long issuedAt = Long.parseLong(fields[0]);
+        long expiresAt = Long.parseLong(fields[1]);
+        String username = fields[2];
+        if (System.currentTimeMillis() >= expiresAt) {
+            return null;
+        }
+        Long revoked = revokedAt.get(username);
+        if (revoked != null && issuedAt <= revoked) {
+            return null;
+        }
+        return username;
+    }
+
+    private byte[] sign(byte[] payload) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM); // Not thread-safe, and cheap to create
+            mac.init(key);
+            return mac.doFinal(payload);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " unavailable", e);
+        }
+    }
+}
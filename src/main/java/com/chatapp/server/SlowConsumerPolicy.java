@@ -0,0 +1,54 @@
+package com.chatapp.server;
+
+import com.chatapp.util.EnvConfig;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides what to do with a frame headed for a client that is not keeping up.
+ *
+ * Past half of either limit, droppable frames (typing and presence updates) are shed
+ * so the queue has room for real messages. Past the limit, or when the writer has made
+ * no progress for SLOW_CONSUMER_WRITE_TIMEOUT_MS, the client is evicted.
+ */
+final class SlowConsumerPolicy {
+    enum Action {
+        ACCEPT, SHED, EVICT
+    }
+
+    static final long MAX_BYTES = EnvConfig.getLong("SLOW_CONSUMER_MAX_BYTES", 32L * 1024 * 1024);
+    static final long WRITE_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(
+            EnvConfig.getLong("SLOW_CONSUMER_WRITE_TIMEOUT_MS", 30_000));
+
+    private SlowConsumerPolicy() {
+    }
+
+    /**
+     * Called under the handler's write lock, right before the already encoded frame
+     * would be queued, so the verdict and the enqueue see the same queue state.
+     */
+    static Action check(OutboundQueue queue, boolean droppable) {
+        if (queue.stalledNanos() > WRITE_TIMEOUT_NANOS) {
+            return Action.EVICT;
+        }
+
+        int depth = queue.depth();
+        long bytes = queue.bytes();
+        if (depth == 0) {
+            return Action.ACCEPT; // One frame always fits, even a file larger than the byte limit
+        }
+
+        if (depth + 1 > queue.capacity() || bytes >= MAX_BYTES) {
+            return droppable ? Action.SHED : Action.EVICT;
+        }
+        if (droppable && (depth > queue.capacity() / 2 || bytes > MAX_BYTES / 2)) {
+            return Action.SHED;
+        }
+        return Action.ACCEPT;
+    }
+
+    static String describe(OutboundQueue queue) {
+        return queue.depth() + " frames, " + queue.bytes() + " bytes queued, stalled "
+                + TimeUnit.NANOSECONDS.toMillis(queue.stalledNanos()) + " ms";
+    }
+}
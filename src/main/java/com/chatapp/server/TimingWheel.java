@@ -0,0 +1,126 @@
+package com.chatapp.server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timing wheel: one thread, O(1) schedule and cancel, and each tick only looks
+ * at the timeouts hashed to the current slot. Meant for many coarse timers (one idle
+ * check per connection), not for precise ones; timeouts fire up to one tick late.
+ *
+ * Tasks run on the wheel thread and must be quick.
+ */
+class TimingWheel {
+    private final long tickNanos;
+    private final List<Queue<Timeout>> slots;
+    private final int mask;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private volatile boolean running;
+
+    private final long startNanos; // tick 0; fixed so schedule() can read it from any thread
+    private long tick; // wheel thread only
+
+    final class Timeout {
+        private final Runnable task;
+        private final long deadlineTick;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        void cancel() {
+            cancelled = true; // Dropped when its slot comes around
+        }
+    }
+
+    TimingWheel(String name, long tickMillis, int wheelSize) {
+        int size = Integer.highestOneBit(Math.max(2, wheelSize - 1)) << 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        this.slots = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            slots.add(new ArrayDeque<>());
+        }
+        this.mask = size - 1;
+        this.startNanos = System.nanoTime();
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+    }
+
+    synchronized void start() {
+        if (!running) {
+            running = true;
+            worker.start();
+        }
+    }
+
+    void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    Timeout schedule(Runnable task, long delayMillis) {
+        long elapsedTicks = (System.nanoTime() - startNanos) / tickNanos;
+        long delayTicks = Math.max(1, TimeUnit.MILLISECONDS.toNanos(delayMillis) / tickNanos);
+        Timeout timeout = new Timeout(task, elapsedTicks + delayTicks);
+        pending.add(timeout);
+        return timeout;
+    }
+
+    private void run() {
+        while (running) {
+            long deadline = startNanos + (tick + 1) * tickNanos;
+            long sleep = deadline - System.nanoTime();
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        return;
+                    }
+                }
+                continue;
+            }
+
+            tick++;
+            transferPending();
+            expire(slots.get((int) (tick & mask)));
+        }
+    }
+
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (!timeout.cancelled) {
+                // Already overdue ones go in the current slot and fire this tick
+                slots.get((int) (Math.max(timeout.deadlineTick, tick) & mask)).add(timeout);
+            }
+        }
+    }
+
+    private void expire(Queue<Timeout> slot) {
+        Iterator<Timeout> it = slot.iterator();
+        while (it.hasNext()) {
+            Timeout timeout = it.next();
+            if (timeout.cancelled) {
+                it.remove();
+            } else if (timeout.deadlineTick <= tick) {
+                it.remove();
+                try {
+                    timeout.task.run();
+                } catch (RuntimeException e) {
+                    System.err.println("Error in timer task: " + e.getMessage());
+                    e.printStackTrace();
+                }
+            }
+            // Otherwise it is a later round of the wheel
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.chatapp.server;
+
+import com.chatapp.util.EnvConfig;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rate limit for one connection's typing indicators, per conversation: at most one
+ * "typing" every {@link #INTERVAL_MS}, and a "stopped" only after a "typing" that got
+ * through, so a peer never sees a stop it has no start for.
+ *
+ * A connection's inbound messages are handled one at a time, so no locking.
+ */
+class TypingThrottle {
+    static final long INTERVAL_MS = EnvConfig.getLong("TYPING_INTERVAL_MS", 2000);
+
+    // Conversations remembered per connection; the oldest is forgotten past this
+    private static final int MAX_CONVERSATIONS = 64;
+
+    // Peer -> when the last "typing" to them was forwarded; removed again on "stopped"
+    private final Map<String, Long> started = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_CONVERSATIONS;
+        }
+    };
+
+    /** @return true if the event should be forwarded to the peer */
+    boolean allow(String peer, boolean stopped, long nowMillis) {
+        if (stopped) {
+            return started.remove(peer) != null;
+        }
+        Long last = started.get(peer);
+        if (last != null && nowMillis - last < INTERVAL_MS) {
+            return false;
+        }
+        started.put(peer, nowMillis);
+        return true;
+    }
+}
@@ -0,0 +1,271 @@
+package com.chatapp.server;
+
+import com.chatapp.model.User;
+import com.chatapp.protocol.DirectoryPage;
+import com.chatapp.protocol.DirectorySync;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Every registered user and their presence, held in memory so user lists and
+ * snapshots never query MySQL.
+ *
+ * Loaded once from the users table at startup; after that {@link UserManager} keeps
+ * it current on registration and status changes, and {@link #reconcile} compares it
+ * with the table to pick up users added or deleted behind the server's back (e.g. by
+ * the admin tool). Registrations are owned by the users table; presence is owned by
+ * this directory and persisted by {@link PresenceWriter}.
+ *
+ * Entries are small immutable records (two string references, a status byte, a
+ * timestamp, a sequence number, a version; about 48 bytes plus the strings), replaced
+ * whole on change, so readers never lock. The list handed to callers is built at most
+ * once per change and shared until the next one.
+ *
+ * For paged sync (protocol v5) every entry carries the directory version it last
+ * changed at, and deletions leave a tombstone, so a client can ask for what changed
+ * since the version it has. Pages follow registration order; the cursor is a sequence
+ * number, so it stays valid while users come and go. Versions restart with the server,
+ * which is what the epoch is for. Writers are serialized so that once a version can be
+ * read, every entry stamped with it is visible.
+ */
+class UserDirectory {
+    private static final User.Status[] STATUSES = User.Status.values();
+
+    // Deletions remembered for "changed since"; a client older than that starts over
+    private static final int MAX_TOMBSTONES = 10_000;
+
+    private record Entry(String username, String email, byte status, long lastSeenMillis, int seq, long changed) {
+        Entry withStatus(User.Status newStatus, long now, long stamp) {
+            return new Entry(username, email, (byte) newStatus.ordinal(), now, seq, stamp);
+        }
+
+        User toUser() {
+            User user = new User(username, "", email);
+            user.setStatus(STATUSES[status]);
+            if (lastSeenMillis > 0) {
+                user.setLastSeen(LocalDateTime.ofInstant(Instant.ofEpochMilli(lastSeenMillis), ZoneId.systemDefault()));
+            }
+            return user;
+        }
+    }
+
+    private record Listing(long version, List<User> users) {
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Integer, String> bySeq = new ConcurrentSkipListMap<>();
+    private final AtomicInteger nextSeq = new AtomicInteger(); // keeps registration order
+    private final AtomicLong version = new AtomicLong();       // bumped after every change
+    private final Object writeLock = new Object();
+    private volatile Listing listing;
+
+    // Guarded by writeLock
+    private final LinkedHashMap<String, Long> tombstones = new LinkedHashMap<>();
+    private long tombstoneFloor; // deletions at or before this version are forgotten
+    private volatile long epoch = System.currentTimeMillis();
+
+    /**
+     * Replace the contents with rows read from the users table. Everyone starts
+     * OFFLINE: nobody is connected to a server that is only starting up.
+     */
+    void load(List<User> rows, Map<String, LocalDateTime> lastSeen) {
+        synchronized (writeLock) {
+            entries.clear();
+            bySeq.clear();
+            tombstones.clear();
+            long stamp = version.get() + 1;
+            for (User row : rows) {
+                LocalDateTime seen = lastSeen.get(row.getUsername());
+                put(row.getUsername(), row.getEmail(),
+                        seen != null ? seen.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : 0, stamp);
+            }
+            epoch = System.currentTimeMillis();
+            version.set(stamp);
+        }
+    }
+
+    void add(String username, String email) {
+        synchronized (writeLock) {
+            long stamp = version.get() + 1;
+            put(username, email, 0, stamp);
+            version.set(stamp);
+        }
+    }
+
+    // Caller holds writeLock
+    private void put(String username, String email, long lastSeenMillis, long stamp) {
+        int seq = nextSeq.getAndIncrement();
+        entries.put(username, new Entry(username, email, (byte) User.Status.OFFLINE.ordinal(),
+                lastSeenMillis, seq, stamp));
+        bySeq.put(seq, username);
+        tombstones.remove(username);
+    }
+
+    // Caller holds writeLock
+    private void remove(Entry entry, long stamp) {
+        if (!entries.remove(entry.username(), entry)) {
+            return;
+        }
+        bySeq.remove(entry.seq());
+        tombstones.put(entry.username(), stamp);
+        if (tombstones.size() > MAX_TOMBSTONES) {
+            Iterator<Map.Entry<String, Long>> oldest = tombstones.entrySet().iterator();
+            tombstoneFloor = oldest.next().getValue();
+            oldest.remove();
+        }
+    }
+
+    void setStatus(String username, User.Status status) {
+        long now = System.currentTimeMillis();
+        synchronized (writeLock) {
+            long stamp = version.get() + 1;
+            Entry updated = entries.computeIfPresent(username, (name, entry) -> entry.withStatus(status, now, stamp));
+            if (updated != null) {
+                version.set(stamp);
+            }
+        }
+    }
+
+    /** Everyone, in registration order. The list is shared, do not modify. */
+    List<User> getAllUsers() {
+        // Version first: a change that lands during the rebuild leaves this listing stale
+        long current = version.get();
+        Listing cached = listing;
+        if (cached != null && cached.version() == current) {
+            return cached.users();
+        }
+
+        List<Entry> sorted = new ArrayList<>(entries.values());
+        sorted.sort(Comparator.comparingInt(Entry::seq));
+        List<User> users = new ArrayList<>(sorted.size());
+        for (Entry entry : sorted) {
+            users.add(entry.toUser());
+        }
+        users = Collections.unmodifiableList(users);
+        listing = new Listing(current, users);
+        return users;
+    }
+
+    /** One user, or null if not registered. */
+    User find(String username) {
+        Entry entry = entries.get(username);
+        return entry != null ? entry.toUser() : null;
+    }
+
+    List<User> getOnlineUsers() {
+        List<User> online = new ArrayList<>();
+        for (User user : getAllUsers()) {
+            if (user.getStatus() == User.Status.ONLINE) {
+                online.add(user);
+            }
+        }
+        return online;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /** Take before reading the table for {@link #reconcile}. */
+    int mark() {
+        return nextSeq.get();
+    }
+
+    /**
+     * Compare with a fresh read of the users table and apply users added or deleted
+     * outside the server. Status is not compared: users.status is no longer written.
+     *
+     * @param mark {@link #mark()} from before the read; users added since are not
+     *             expected in the rows
+     * @return a description of every difference, empty if there were none
+     */
+    List<String> reconcile(List<User> rows, int mark) {
+        List<String> differences = new ArrayList<>();
+        Map<String, User> byName = new HashMap<>(rows.size() * 2);
+        for (User row : rows) {
+            byName.put(row.getUsername(), row);
+        }
+
+        synchronized (writeLock) {
+            long stamp = version.get() + 1;
+            for (User row : rows) {
+                Entry entry = entries.get(row.getUsername());
+                if (entry == null) {
+                    differences.add("missing " + row.getUsername());
+                    put(row.getUsername(), row.getEmail(), 0, stamp);
+                }
+            }
+            for (Entry entry : entries.values()) {
+                if (entry.seq() < mark && !byName.containsKey(entry.username())) {
+                    differences.add("deleted " + entry.username());
+                    remove(entry, stamp);
+                }
+            }
+
+            if (!differences.isEmpty()) {
+                version.set(stamp);
+            }
+        }
+        return differences;
+    }
+
+    /**
+     * One page of users in registration order, starting at the request's cursor:
+     * everyone if the request has no version, otherwise only those changed since.
+     * Deletions go with the first page.
+     */
+    DirectoryPage page(DirectorySync request, int limit, long presenceVersion) {
+        long current = version.get(); // Read first, like the listing: later changes are caught next sync
+        long currentEpoch = epoch;
+        long since = request.getSince();
+        int cursor = request.getCursor();
+
+        List<String> deleted = new ArrayList<>();
+        boolean reset;
+        synchronized (writeLock) {
+            boolean stale = request.getEpoch() != currentEpoch || (since > 0 && since < tombstoneFloor);
+            reset = stale && (since > 0 || cursor > 0);
+            if (reset) {
+                since = 0;
+                cursor = 0;
+            }
+            if (since > 0 && cursor == 0) {
+                for (Map.Entry<String, Long> tombstone : tombstones.entrySet()) {
+                    if (tombstone.getValue() > since) {
+                        deleted.add(tombstone.getKey());
+                    }
+                }
+            }
+        }
+
+        List<User> users = new ArrayList<>(limit);
+        int next = -1;
+        for (Map.Entry<Integer, String> slot : bySeq.tailMap(cursor, true).entrySet()) {
+            Entry entry = entries.get(slot.getValue());
+            if (entry == null || entry.seq() != slot.getKey() || entry.changed() <= since) {
+                continue;
+            }
+            if (users.size() == limit) {
+                next = entry.seq();
+                break;
+            }
+            users.add(entry.toUser());
+        }
+        return new DirectoryPage(currentEpoch, current, presenceVersion, reset, entries.size(),
+                users, deleted, next);
+    }
+}
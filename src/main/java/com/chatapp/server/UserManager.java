@@ -1,26 +1,78 @@
 package com.chatapp.server;
 
 import com.chatapp.database.MessageDAO;
+import com.chatapp.database.PresenceDAO;
 import com.chatapp.database.UserDAO;
 import com.chatapp.model.User;
 import com.chatapp.model.Message;
+import com.chatapp.protocol.DirectoryPage;
+import com.chatapp.protocol.DirectorySync;
 
 import java.io.*;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class UserManager {
     private static UserManager instance;
     private final Map<String, ServerHandler> onlineUsers; // username -> ServerHandler
 
+    // Registered users and their status, so user lists never hit the database.
+    // Status lives here; PresenceWriter persists it in the background.
+    private final UserDirectory directory = new UserDirectory();
+    private final PresenceWriter presenceWriter = PresenceWriter.getInstance();
+    private final MessageJournal journal = MessageJournal.getInstance();
+    private ScheduledExecutorService directoryChecker;
+
     // Database DAOs
     private final UserDAO userDAO;
     private final MessageDAO messageDAO;
 
+    // Orders updates for one user (online map + status write, offline queue) without
+    // making unrelated users wait: a login only contends with the few users that hash
+    // to the same stripe. Password checks take no lock at all. ReentrantLock rather
+    // than synchronized: holders do JDBC, which would pin a virtual thread's carrier.
+    static final int LOCK_STRIPES = 64;
+
+    // Most users a client gets in one directory page, whatever it asks for
+    static final int MAX_DIRECTORY_PAGE = 1000;
+
+    // How long a login waits for journaled offline messages to reach the database
+    private static final long OFFLINE_JOURNAL_WAIT_MS = 2000;
+    private final ReentrantLock[] stripes;
+
     private UserManager() {
+        this(new UserDAO(), new MessageDAO(), LOCK_STRIPES);
+    }
+
+    // For benchmarks: stand-in DAOs, and stripes = 1 for one global lock
+    UserManager(UserDAO userDAO, MessageDAO messageDAO, int stripeCount) {
         onlineUsers = new ConcurrentHashMap<>();
-        userDAO = new UserDAO();
-        messageDAO = new MessageDAO();
+        this.userDAO = userDAO;
+        this.messageDAO = messageDAO;
+        stripes = new ReentrantLock[Integer.highestOneBit(Math.max(1, stripeCount))];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    private ReentrantLock lockFor(String username) {
+        int h = username.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+    }
+
+    /**
+     * Make this the instance everyone gets, e.g. one with stand-in DAOs so a tool can
+     * run real connections without MySQL. Only before anything has asked for it.
+     */
+    static synchronized void installInstance(UserManager manager) {
+        if (instance != null) {
+            throw new IllegalStateException("UserManager already created");
+        }
+        instance = manager;
     }
 
     public static synchronized UserManager getInstance() {
@@ -31,40 +83,88 @@ public class UserManager {
     }
 
     // User Registration - NOW USES DATABASE
-    public synchronized boolean registerUser(User user) {
+    public boolean registerUser(User user) {
+        // BCrypt and the INSERT run unlocked: the unique key settles races between two
+        // registrations of one name
         boolean success = userDAO.createUser(
                 user.getUsername(),
                 user.getPassword(),
                 user.getEmail()
         );
-
-        if (success) {
-            System.out.println("✅ User registered in database: " + user.getUsername());
+        if (!success) {
+            return false;
         }
 
-        return success;
+        ReentrantLock lock = lockFor(user.getUsername());
+        lock.lock();
+        try {
+            directory.add(user.getUsername(), user.getEmail());
+        } finally {
+            lock.unlock();
+        }
+        System.out.println("✅ User registered in database: " + user.getUsername());
+        return true;
     }
 
     // User Authentication - NOW USES DATABASE
-    public synchronized User authenticateUser(String username, String password) {
+    public User authenticateUser(String username, String password) {
+        // Read-only and the slowest step of a login (BCrypt), so no lock
         return userDAO.authenticateUser(username, password);
     }
 
     // Online User Management (still in-memory for performance)
-    public synchronized void addOnlineUser(String username, ServerHandler handler) {
-        onlineUsers.put(username, handler);
-        userDAO.updateUserStatus(username, User.Status.ONLINE);
-        System.out.println("🟢 User online: " + username + " (Total online: " + onlineUsers.size() + ")");
+    public void addOnlineUser(String username, ServerHandler handler) {
+        ReentrantLock lock = lockFor(username);
+        lock.lock();
+        try {
+            onlineUsers.put(username, handler);
+            setStatus(username, User.Status.ONLINE);
+            System.out.println("🟢 User online: " + username + " (Total online: " + onlineUsers.size() + ")");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void removeOnlineUser(String username) {
+        ReentrantLock lock = lockFor(username);
+        lock.lock();
+        try {
+            onlineUsers.remove(username);
+            setStatus(username, User.Status.OFFLINE);
+            System.out.println("🔴 User offline: " + username + " (Total online: " + onlineUsers.size() + ")");
+        } finally {
+            lock.unlock();
+        }
     }
 
-    public synchronized void removeOnlineUser(String username) {
-        onlineUsers.remove(username);
-        userDAO.updateUserStatus(username, User.Status.OFFLINE);
-        System.out.println("🔴 User offline: " + username + " (Total online: " + onlineUsers.size() + ")");
+    /**
+     * Take one session offline. If the user has already logged in again on another
+     * connection, the newer session stays and nothing changes.
+     *
+     * @return true if the user went offline
+     */
+    public boolean removeOnlineUser(String username, ServerHandler handler) {
+        ReentrantLock lock = lockFor(username);
+        lock.lock();
+        try {
+            if (!onlineUsers.remove(username, handler)) {
+                return false;
+            }
+            setStatus(username, User.Status.OFFLINE);
+            System.out.println("🔴 User offline: " + username + " (Total online: " + onlineUsers.size() + ")");
+            return true;
+        } finally {
+            lock.unlock();
+        }
     }
     public void setUserOffline(String username) {
-        userDAO.updateUserStatus(username, User.Status.OFFLINE);
-        System.out.println("📴 Set user OFFLINE in database: " + username);
+        setStatus(username, User.Status.OFFLINE);
+        System.out.println("📴 Set user OFFLINE: " + username);
+    }
+
+    private void setStatus(String username, User.Status status) {
+        directory.setStatus(username, status);
+        presenceWriter.record(username, status);
     }
     public boolean isUserOnline(String username) {
         return onlineUsers.containsKey(username);
@@ -75,26 +175,111 @@ public class UserManager {
     }
 
     public List<User> getOnlineUsers() {
-        return userDAO.getOnlineUsers();
+        return directory.getOnlineUsers();
     }
 
+    /** Served from memory; the list is shared, do not modify it. */
     public List<User> getAllUsers() {
-        return userDAO.getAllUsers();
+        return directory.getAllUsers();
+    }
+
+    /** A registered user with their current status, or null. */
+    User getDirectoryUser(String username) {
+        return directory.find(username);
     }
 
+    /** One page of a paged directory sync, see {@link DirectorySync}. */
+    DirectoryPage getDirectoryPage(DirectorySync request, long presenceVersion) {
+        int limit = Math.max(1, Math.min(request.getLimit(), MAX_DIRECTORY_PAGE));
+        return directory.page(request, limit, presenceVersion);
+    }
+
+    // ==================== User directory ====================
+
+    /** Read the users table into memory. Call once at startup, after stale statuses are reset. */
+    public void loadDirectory() {
+        long start = System.nanoTime();
+        directory.load(userDAO.getAllUsers(), new PresenceDAO().getLastSeen());
+        System.out.println("📇 Loaded " + directory.size() + " users into the directory in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        ServerMetrics.getInstance().registerGauge("directory.users", directory::size);
+    }
+
+    /** Compare the directory with the users table and apply rows added or deleted elsewhere. */
+    public int checkDirectory() {
+        int mark = directory.mark();
+        List<User> rows = userDAO.getAllUsers();
+        if (rows.isEmpty() && directory.size() > 0) {
+            // The DAO returns an empty list on errors too; never wipe the directory on that
+            System.err.println("⚠️  Directory check skipped: users table read returned nothing");
+            return 0;
+        }
+
+        List<String> differences = directory.reconcile(rows, mark);
+        if (!differences.isEmpty()) {
+            System.err.println("⚠️  Directory differs from users table in " + differences.size() + " places");
+            differences.stream().limit(10).forEach(d -> System.err.println("   " + d));
+            ServerMetrics.getInstance().add("directory.mismatches", differences.size());
+            ServerMetrics.getInstance().noteEvent("directory.mismatch", differences.get(0));
+        }
+        return differences.size();
+    }
+
+    public synchronized void startDirectoryChecks(long intervalSeconds) {
+        if (intervalSeconds <= 0 || directoryChecker != null) {
+            return;
+        }
+        directoryChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "directory-check");
+            t.setDaemon(true);
+            return t;
+        });
+        directoryChecker.scheduleWithFixedDelay(() -> {
+            try {
+                checkDirectory();
+            } catch (RuntimeException e) {
+                System.err.println("❌ Directory check failed: " + e.getMessage());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+
+    public Collection<ServerHandler> getOnlineHandlers() {
+        return Collections.unmodifiableCollection(onlineUsers.values());
+    }
 
     public Set<String> getAllOnlineUsernames() {
         return new HashSet<>(onlineUsers.keySet());
     }
 
-    // Offline Message Queue - NOW USES DATABASE
-    public synchronized void addOfflineMessage(String username, Message message) {
-        messageDAO.saveOfflineMessage(message);
-        System.out.println("Offline message saved to database for: " + username);
+    // Offline Message Queue - NOW USES DATABASE, through the journal when it runs
+    public void addOfflineMessage(String username, Message message) {
+        if (journal.append(MessageJournal.Kind.OFFLINE, message)) {
+            return;
+        }
+        ReentrantLock lock = lockFor(username);
+        lock.lock();
+        try {
+            messageDAO.saveOfflineMessage(message);
+            System.out.println("Offline message saved to database for: " + username);
+        } finally {
+            lock.unlock();
+        }
     }
 
-    public synchronized List<Message> getOfflineMessages(String username) {
-        return messageDAO.getOfflineMessages(username);
+    public List<Message> getOfflineMessages(String username) {
+        // Messages still in the journal are not in offline_messages yet
+        if (!journal.awaitOfflineApplied(username, OFFLINE_JOURNAL_WAIT_MS)) {
+            System.err.println("⚠️  Journal behind the database, recent offline messages for " + username
+                    + " may arrive next login");
+        }
+        ReentrantLock lock = lockFor(username);
+        lock.lock();
+        try {
+            return messageDAO.getOfflineMessages(username);
+        } finally {
+            lock.unlock();
+        }
     }
 
     // Broadcast to all online users
@@ -102,11 +287,14 @@ public class UserManager {
         // Save to history
         //messageDAO.saveToChatHistory(message);
 
+        // Encoded once per wire format, shared by every recipient
+        OutboundPayload payload = OutboundPayload.of(message);
+
         // Broadcast to online users
         for (Map.Entry<String, ServerHandler> entry : onlineUsers.entrySet()) {
             if (!entry.getKey().equals(excludeUsername)) {
                 try {
-                    entry.getValue().sendMessage(message);
+                    entry.getValue().sendPayload(payload);
                 } catch (IOException e) {
                     System.err.println("Failed to send message to: " + entry.getKey());
                 }
@@ -118,8 +306,15 @@ public class UserManager {
 
         System.out.println("📴 Setting all users to OFFLINE...");
 
+        synchronized (this) {
+            if (directoryChecker != null) {
+                directoryChecker.shutdownNow();
+                directoryChecker = null;
+            }
+        }
+
         for (String username : onlineUsers.keySet()) {
-            userDAO.updateUserStatus(username, User.Status.OFFLINE);
+            setStatus(username, User.Status.OFFLINE);
             System.out.println("   📴 " + username + " → OFFLINE");
         }
 
@@ -53,25 +53,56 @@ public class EnvConfig {
 
 
     public static String get(String key) {
-        // First try .env file
-        if (envVars.containsKey(key)) {
-            return envVars.get(key);
+        String value = lookup(key);
+        if (value == null) {
+            System.err.println("⚠️  Environment variable not found: " + key);
         }
+        return value;
+    }
 
-        // Fallback to system environment variables
-        String value = System.getenv(key);
-        if (value != null) {
-            return value;
+
+    public static String get(String key, String defaultValue) {
+        String value = lookup(key);
+        return value != null ? value : defaultValue;
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        String value = lookup(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("⚠️  Invalid number for " + key + ": " + value + " (using " + defaultValue + ")");
+            return defaultValue;
         }
+    }
 
-        System.err.println("⚠️  Environment variable not found: " + key);
-        return null;
+    public static long getLong(String key, long defaultValue) {
+        String value = lookup(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("⚠️  Invalid number for " + key + ": " + value + " (using " + defaultValue + ")");
+            return defaultValue;
+        }
     }
 
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = lookup(key);
+        return value != null ? Boolean.parseBoolean(value.trim()) : defaultValue;
+    }
 
-    public static String get(String key, String defaultValue) {
-        String value = get(key);
-        return value != null ? value : defaultValue;
+    // .env file first, then system environment variables
+    private static String lookup(String key) {
+        if (envVars.containsKey(key)) {
+            return envVars.get(key);
+        }
+        return System.getenv(key);
     }
 
     public static Map<String, String> getAll() {
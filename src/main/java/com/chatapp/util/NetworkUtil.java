@@ -23,11 +23,16 @@ public class NetworkUtil {
     public static void sendMessage(ObjectOutputStream out, Message message) throws IOException {
         String json = gson.toJson(message);
         out.writeObject(json);
+        out.reset(); // Otherwise the stream keeps every JSON string it ever wrote
         out.flush();
     }
 
     public static Message receiveMessage(ObjectInputStream in) throws IOException, ClassNotFoundException {
         String json = (String) in.readObject();
+        return parseMessage(json);
+    }
+
+    public static Message parseMessage(String json) {
         return gson.fromJson(json, Message.class);
     }
 
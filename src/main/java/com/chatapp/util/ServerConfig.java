@@ -143,6 +143,30 @@ public class ServerConfig {
         }
     }
 
+    /**
+     * Give up on the server after this long without a frame (it pings regularly); 0 = never
+     */
+    public static int getHeartbeatTimeout() {
+        String timeoutStr = properties.getProperty("heartbeat.timeout", "120000");
+        try {
+            return Integer.parseInt(timeoutStr);
+        } catch (NumberFormatException e) {
+            return 120000;
+        }
+    }
+
+    /**
+     * Wire protocol: auto (binary, falling back to legacy), binary or legacy
+     */
+    public static String getProtocol() {
+        String protocol = properties.getProperty("protocol", "auto").trim().toLowerCase();
+        if (!protocol.equals("auto") && !protocol.equals("binary") && !protocol.equals("legacy")) {
+            System.err.println("⚠️  Unknown protocol '" + protocol + "', using auto");
+            return "auto";
+        }
+        return protocol;
+    }
+
     /**
      * Force re-detection of best server
      */
@@ -10,6 +10,7 @@ module com.chatapp.chatapplication {
     requires com.zaxxer.hikari;
     requires jbcrypt;
     requires org.slf4j;
+    requires jdk.jfr;
 
     // Open packages for Reflection (Required for FXML and Gson)
     opens com.chatapp to javafx.fxml, javafx.graphics;
@@ -21,5 +22,6 @@ module com.chatapp.chatapplication {
     exports com.chatapp.client;
     exports com.chatapp.client.controller;
     exports com.chatapp.model;
+    exports com.chatapp.protocol;
     exports com.chatapp.server;
 }
\ No newline at end of file